@@ -1,9 +1,14 @@
 package com.smilesmile1973.authenticatoroauth2;
 
+import com.smilesmile1973.authenticatoroauth2.config.XmlConfigurationRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(XmlConfigurationRuntimeHints.class)
 public class AuthenticatorOauth2Application {
     public static void main(String[] args) {
         SpringApplication.run(AuthenticatorOauth2Application.class, args);
@@ -0,0 +1,156 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.security.crypto.scrypt.SCryptPasswordEncoder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Password encoder running the hash computations on a dedicated bounded pool, used for the user
+ * passwords of {@code users.xml} and the client secrets of {@code clients.xml}.
+ *
+ * <p>Passwords are stored with a {@code {id}} prefix selecting the algorithm: {@code {bcrypt}},
+ * {@code {argon2}}, {@code {pbkdf2}}, {@code {scrypt}}, and {@code {noop}} for legacy plain text
+ * entries. New hashes, including the re-hash of a legacy entry after a successful login, use
+ * the algorithm configured by {@code users.password.encoder}.</p>
+ *
+ * <p>A deliberately slow hash must not be computed on the request threads: a login storm would
+ * pin every Tomcat thread. Hashes run on {@code users.password.hashing-threads} threads, with at
+ * most {@code users.password.hashing-queue} waiting computations. Beyond that the verification
+ * is shed immediately with an {@link AuthenticationServiceException}, so the login fails fast
+ * instead of queueing without bound. {@code {noop}} entries are compared on the calling thread.</p>
+ *
+ * <p>The following metrics are published:</p>
+ * <ul>
+ *   <li>{@code oauth2.password.hashing.queue}: number of hash computations waiting for a thread</li>
+ *   <li>{@code oauth2.password.hashing.rejected}: number of hash computations shed</li>
+ * </ul>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+    private static final Logger LOG = LoggerFactory.getLogger(BoundedPasswordEncoder.class);
+    private static final String NOOP_PREFIX = "{noop}";
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejected;
+
+    /**
+     * @param encodingId    the algorithm of new hashes: {@code bcrypt}, {@code argon2}, {@code pbkdf2} or {@code scrypt}
+     * @param threads       the number of hashing threads
+     * @param queueCapacity the maximum number of hash computations waiting for a thread
+     * @param meterRegistry the registry of the published metrics
+     */
+    public BoundedPasswordEncoder(String encodingId, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        this.delegate = createDelegatingPasswordEncoder(encodingId);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rejected = Counter.builder("oauth2.password.hashing.rejected")
+                .description("Number of password hash computations shed because the hashing queue was full")
+                .register(meterRegistry);
+        Gauge.builder("oauth2.password.hashing.queue", executor, pool -> pool.getQueue().size())
+                .description("Number of password hash computations waiting for a hashing thread")
+                .register(meterRegistry);
+        LOG.info("Password hashing with {} on {} threads, queue capacity {}", encodingId, threads, queueCapacity);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (encodedPassword != null && encodedPassword.startsWith(NOOP_PREFIX)) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+        return submit(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Stops the hashing threads, called by Spring when the context closes.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T submit(Callable<T> computation) {
+        Future<T> future;
+        try {
+            future = executor.submit(computation);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new AuthenticationServiceException("Too many concurrent password verifications, try again later");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while verifying the password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new AuthenticationServiceException("Unable to verify the password", e.getCause());
+        }
+    }
+
+    /**
+     * Creates the encoder of every supported {@code {id}} prefix. The ids match the ones of
+     * {@code PasswordEncoderFactories}, so hashes produced by the Spring tooling are accepted.
+     *
+     * @param encodingId the algorithm of new hashes
+     * @return the delegating encoder
+     */
+    private static PasswordEncoder createDelegatingPasswordEncoder(String encodingId) {
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put("bcrypt", new BCryptPasswordEncoder());
+        encoders.put("noop", NoOpPasswordEncoder.getInstance());
+        encoders.put("pbkdf2", Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_5());
+        encoders.put("pbkdf2@SpringSecurity_v5_8", Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        encoders.put("scrypt", SCryptPasswordEncoder.defaultsForSpringSecurity_v4_1());
+        encoders.put("scrypt@SpringSecurity_v5_8", SCryptPasswordEncoder.defaultsForSpringSecurity_v5_8());
+        encoders.put("argon2", Argon2PasswordEncoder.defaultsForSpringSecurity_v5_2());
+        encoders.put("argon2@SpringSecurity_v5_8", Argon2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        String idForEncode = switch (encodingId) {
+            case "bcrypt" -> "bcrypt";
+            case "argon2", "pbkdf2", "scrypt" -> encodingId + "@SpringSecurity_v5_8";
+            default -> throw new IllegalStateException("Unsupported password encoder " + encodingId
+                    + ", expected bcrypt, argon2, pbkdf2 or scrypt");
+        };
+        return new DelegatingPasswordEncoder(idForEncode, encoders);
+    }
+}
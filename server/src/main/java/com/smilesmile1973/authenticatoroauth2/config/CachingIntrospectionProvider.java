@@ -0,0 +1,74 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.smilesmile1973.authenticatoroauth2.service.IntrospectionCache;
+import com.smilesmile1973.authenticatoroauth2.util.TokenDigest;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2ClientAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2TokenIntrospectionAuthenticationToken;
+
+import java.util.List;
+
+/**
+ * Introspection provider answering from the {@link IntrospectionCache}, and filling it from the
+ * providers it wraps (the default provider of the authorization server and
+ * {@link StatelessAccessTokenIntrospectionProvider}) on a miss.
+ *
+ * <p>The cache entry is returned as the details of the authentication, so that
+ * {@link CachingIntrospectionResponseHandler} can write its pre-encoded body.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public class CachingIntrospectionProvider implements AuthenticationProvider {
+    private final List<AuthenticationProvider> delegates;
+    private final IntrospectionCache introspectionCache;
+
+    /**
+     * @param delegates          the providers computing the introspection result on a miss, in order
+     * @param introspectionCache the cache
+     */
+    public CachingIntrospectionProvider(List<AuthenticationProvider> delegates, IntrospectionCache introspectionCache) {
+        this.delegates = List.copyOf(delegates);
+        this.introspectionCache = introspectionCache;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) {
+        OAuth2TokenIntrospectionAuthenticationToken introspection =
+                (OAuth2TokenIntrospectionAuthenticationToken) authentication;
+        TokenDigest digest = TokenDigest.of(introspection.getToken());
+        IntrospectionCache.Entry entry = introspectionCache.get(digest);
+        if (entry != null && introspection.getPrincipal() instanceof OAuth2ClientAuthenticationToken clientPrincipal
+                && clientPrincipal.isAuthenticated()) {
+            return withDetails(new OAuth2TokenIntrospectionAuthenticationToken(
+                    introspection.getToken(), clientPrincipal, entry.getTokenClaims()), entry);
+        }
+        long stamp = introspectionCache.stamp(digest);
+        for (AuthenticationProvider delegate : delegates) {
+            if (!delegate.supports(authentication.getClass())) {
+                continue;
+            }
+            Authentication result = delegate.authenticate(authentication);
+            if (result instanceof OAuth2TokenIntrospectionAuthenticationToken introspected) {
+                IntrospectionCache.Entry filled = introspectionCache.put(digest, introspected.getTokenClaims(), stamp);
+                return filled != null ? withDetails(introspected, filled) : introspected;
+            }
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return OAuth2TokenIntrospectionAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+
+    private static OAuth2TokenIntrospectionAuthenticationToken withDetails(
+            OAuth2TokenIntrospectionAuthenticationToken introspection, IntrospectionCache.Entry entry) {
+        introspection.setDetails(entry);
+        return introspection;
+    }
+}
@@ -0,0 +1,72 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.smilesmile1973.authenticatoroauth2.service.IntrospectionCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenIntrospection;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2TokenIntrospectionAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.http.converter.OAuth2TokenIntrospectionHttpMessageConverter;
+import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the token introspection response, encoding each cached result only once.
+ *
+ * <p>The body is produced by the same converter as the default response handler of the
+ * authorization server. When the result comes from the {@link IntrospectionCache} (see
+ * {@link CachingIntrospectionProvider}), the encoded body is kept in the cache entry and written
+ * as is for the following requests.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public class CachingIntrospectionResponseHandler implements AuthenticationSuccessHandler {
+    private final OAuth2TokenIntrospectionHttpMessageConverter converter = new OAuth2TokenIntrospectionHttpMessageConverter();
+
+    @Override
+    public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response,
+                                        Authentication authentication) throws IOException {
+        OAuth2TokenIntrospectionAuthenticationToken introspection =
+                (OAuth2TokenIntrospectionAuthenticationToken) authentication;
+        byte[] body;
+        if (introspection.getDetails() instanceof IntrospectionCache.Entry entry) {
+            body = entry.getBody();
+            if (body == null) {
+                // Concurrent first responses may both encode the entry, with the same result.
+                body = encode(entry.getTokenClaims());
+                entry.setBody(body);
+            }
+        } else {
+            body = encode(introspection.getTokenClaims());
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private byte[] encode(OAuth2TokenIntrospection tokenClaims) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+        converter.write(tokenClaims, MediaType.APPLICATION_JSON, new HttpOutputMessage() {
+            private final HttpHeaders headers = new HttpHeaders();
+
+            @Override
+            public OutputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        });
+        return body.toByteArray();
+    }
+}
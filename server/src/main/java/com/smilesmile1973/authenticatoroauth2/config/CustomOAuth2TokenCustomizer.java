@@ -1,78 +1,65 @@
 package com.smilesmile1973.authenticatoroauth2.config;
 
-import java.time.Duration;
-import java.time.Instant;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import com.nimbusds.jose.jwk.JWK;
+import com.smilesmile1973.authenticatoroauth2.service.ClaimTemplate;
+import com.smilesmile1973.authenticatoroauth2.service.ClaimTemplateRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.security.oauth2.server.authorization.token.JwtEncodingContext;
 import org.springframework.security.oauth2.server.authorization.token.OAuth2TokenCustomizer;
 import org.springframework.stereotype.Component;
 
 /**
- * Custom OAuth2 token customizer that synchronizes ID token expiration with access token TTL.
+ * Custom OAuth2 token customizer that applies the precompiled claim template of the client to
+ * every JWT.
  *
- * <p>This component implements {@link OAuth2TokenCustomizer} to modify JWT encoding context
- * specifically for OIDC ID tokens. It ensures that ID tokens have the same time-to-live (TTL)
- * as access tokens by reading the access token TTL from the registered client's token settings
- * and applying it to the ID token claims.</p>
+ * <p>This component implements {@link OAuth2TokenCustomizer} to modify the JWT encoding context.
+ * The claims depending only on the client (static claims, role mappings and the ID token
+ * time-to-live, which is the access token TTL of the client) are compiled once into a
+ * {@link ClaimTemplate} when the client is loaded, so each token only fills in its dynamic
+ * fields.</p>
  *
- * <p>The customizer only processes ID tokens and leaves other token types unchanged.
- * This helps maintain consistent token lifetimes across the OAuth2/OIDC flow.</p>
+ * <p>For every JWT, the JWS header is set to the algorithm and key id of the current signing
+ * key of {@link JwkKeyManager}, so that the encoder picks that key even while several keys are
+ * published during a rotation.</p>
  *
  * @author smilesmile1973
  * @see OAuth2TokenCustomizer
  * @see JwtEncodingContext
- * @see OidcIdToken
+ * @see ClaimTemplate
  * @since 1.0
  */
 @Component
 public class CustomOAuth2TokenCustomizer implements OAuth2TokenCustomizer<JwtEncodingContext> {
-    private static final Logger LOG = LoggerFactory.getLogger(CustomOAuth2TokenCustomizer.class);
+    @Autowired
+    private JwkKeyManager jwkKeyManager;
+    @Autowired
+    private ClaimTemplateRegistry claimTemplateRegistry;
 
     /**
-     * Customizes the JWT encoding context for ID tokens by synchronizing their expiration
-     * time with the access token TTL.
+     * Customizes the JWT encoding context.
      *
      * <p>This method performs the following operations:</p>
      * <ul>
-     *   <li>Checks if the current token being processed is an ID token</li>
-     *   <li>Retrieves the access token TTL from the registered client's token settings</li>
-     *   <li>Sets the ID token's issued-at time to the current instant</li>
-     *   <li>Sets the ID token's expiration time based on the access token TTL</li>
-     *   <li>Logs the customization details for monitoring purposes</li>
+     *   <li>Sets the algorithm and key id of the JWS header from the current signing key</li>
+     *   <li>Adds the static claims and the mapped roles of the user defined by the client template</li>
+     *   <li>For ID tokens, sets the issued-at time to the current instant and the expiration time
+     *   based on the access token TTL of the client</li>
      * </ul>
      *
-     * <p>If the token being processed is not an ID token, this method performs no operations
-     * and returns immediately.</p>
-     *
      * @param context the JWT encoding context containing token information, registered client
      *                details, and claims builder. Must not be {@code null}.
-     * @throws NullPointerException  if context is null
-     * @throws IllegalStateException if the registered client or its token settings are not properly configured
+     * @throws NullPointerException if context is null
      * @see JwtEncodingContext#getTokenType()
      * @see JwtEncodingContext#getRegisteredClient()
      * @see JwtEncodingContext#getClaims()
      */
     @Override
     public void customize(JwtEncodingContext context) {
-        // Check if this is an ID Token
-        if (OidcIdToken.class.isAssignableFrom(context.getTokenType().getValue().getClass()) ||
-                context.getTokenType().getValue().equals("id_token")) {
-            // Get the access token TTL from the RegisteredClient's TokenSettings
-            Duration accessTokenTTL = context.getRegisteredClient()
-                    .getTokenSettings()
-                    .getAccessTokenTimeToLive();
-            // Set the ID Token to have the same TTL as the Access Token
-            Instant issuedAt = Instant.now();
-            Instant expiresAt = issuedAt.plus(accessTokenTTL);
-            context.getClaims()
-                    .issuedAt(issuedAt)
-                    .expiresAt(expiresAt);
-            LOG.info("ID Token customized for client: {} with TTL: {} seconds",
-                    context.getRegisteredClient().getClientId(),
-                    accessTokenTTL.getSeconds());
-        }
+        JWK signingKey = jwkKeyManager.getSigningKey();
+        context.getJwsHeader()
+                .algorithm(SignatureAlgorithm.from(signingKey.getAlgorithm().getName()))
+                .keyId(signingKey.getKeyID());
+        claimTemplateRegistry.get(context.getRegisteredClient()).apply(context);
     }
-}
\ No newline at end of file
+}
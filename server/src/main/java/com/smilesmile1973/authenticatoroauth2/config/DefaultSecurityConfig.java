@@ -1,41 +1,105 @@
 package com.smilesmile1973.authenticatoroauth2.config;
 
 import com.smilesmile1973.authenticatoroauth2.repository.CustomInMemoryRegisteredClientRepository;
+import com.smilesmile1973.authenticatoroauth2.repository.RegisteredClientStore;
+import com.smilesmile1973.authenticatoroauth2.service.AccessTokenRevocationRegistry;
+import com.smilesmile1973.authenticatoroauth2.service.ClaimTemplateRegistry;
+import com.smilesmile1973.authenticatoroauth2.service.IntrospectionCache;
 import com.smilesmile1973.authenticatoroauth2.service.RegisteredClientLoader;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
-import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
 import org.springframework.security.oauth2.server.authorization.config.annotation.web.configuration.OAuth2AuthorizationServerConfiguration;
 import org.springframework.security.oauth2.server.authorization.config.annotation.web.configurers.OAuth2AuthorizationServerConfigurer;
+import org.springframework.security.oauth2.server.authorization.settings.AuthorizationServerSettings;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
 
 import static org.springframework.security.config.Customizer.withDefaults;
 
 @Configuration
 //@EnableWebSecurity(debug = true)
-public class DefaultSecurityConfig {
-    @Value("${clients.config.path:clients.xml}")
-    private String clientsConfigPath;
+// Enforces the @PreAuthorize checks of the administration controllers.
+@EnableMethodSecurity
+public class DefaultSecurityConfig implements SmartInitializingSingleton {
+    @Value("${metadata.cache.enabled:true}")
+    private boolean metadataCacheEnabled;
+    @Value("${metadata.cache.max-age:PT5M}")
+    private Duration metadataMaxAge;
     private static final Logger LOG = LoggerFactory.getLogger(DefaultSecurityConfig.class);
     @Autowired
-    private RegisteredClientLoader registeredClientLoader;
+    private StartupPipeline startupPipeline;
+    @Autowired
+    private JwkKeyManager jwkKeyManager;
+    @Autowired
+    private RegisteredClientStore registeredClientStore;
+    @Autowired
+    private ClaimTemplateRegistry claimTemplateRegistry;
+    @Value("${clients.repository.shards:16}")
+    private int clientShards;
 
     @Bean
     @Order(1)
-    SecurityFilterChain authorizationServerSecurityFilterChain(HttpSecurity http) throws Exception {
+    SecurityFilterChain authorizationServerSecurityFilterChain(HttpSecurity http,
+                                                               AuthorizationServerSettings authorizationServerSettings,
+                                                               OAuth2AuthorizationService authorizationService,
+                                                               AccessTokenRevocationRegistry accessTokenRevocationRegistry,
+                                                               IntrospectionCache introspectionCache)
+            throws Exception {
         LOG.info("Initializing OAuth2 Authorization Server filter chain");
         OAuth2AuthorizationServerConfiguration.applyDefaultSecurity(http);
+        if (metadataCacheEnabled) {
+            http.addFilterBefore(new MetadataResponseCacheFilter(Set.of(
+                            authorizationServerSettings.getJwkSetEndpoint(),
+                            "/.well-known/openid-configuration",
+                            "/.well-known/oauth-authorization-server"), jwkKeyManager, metadataMaxAge,
+                            authorizationServerSettings.getIssuer() != null),
+                    SecurityContextHolderFilter.class);
+        }
         http.getConfigurer(OAuth2AuthorizationServerConfigurer.class)
-                .oidc(withDefaults());
+                // Stateless access tokens have no stored authorization: resolve them before the default providers.
+                .tokenRevocationEndpoint(revocation -> revocation.authenticationProviders(providers ->
+                        providers.add(0, new StatelessAccessTokenRevocationProvider(
+                                authorizationService, accessTokenRevocationRegistry))))
+                .tokenIntrospectionEndpoint(introspection -> introspection
+                        .authenticationProviders(providers -> {
+                            providers.add(0, new StatelessAccessTokenIntrospectionProvider(
+                                    authorizationService, accessTokenRevocationRegistry));
+                            // Every introspection goes through the cache, which falls back to the providers above.
+                            CachingIntrospectionProvider cachingProvider =
+                                    new CachingIntrospectionProvider(providers, introspectionCache);
+                            providers.clear();
+                            providers.add(cachingProvider);
+                        })
+                        .introspectionResponseHandler(new CachingIntrospectionResponseHandler()))
+                .oidc(oidc -> oidc
+                        .providerConfigurationEndpoint(providerConfiguration ->
+                                providerConfiguration.providerConfigurationCustomizer(configuration ->
+                                        configuration.idTokenSigningAlgorithms(algorithms -> {
+                                            algorithms.clear();
+                                            algorithms.add(jwkKeyManager.getSigningAlgorithm().getName());
+                                        })))
+                        // Dynamic client registration (RFC 7591, OIDC profile) at /connect/register,
+                        // with an initial access token holding the client.create scope.
+                        .clientRegistrationEndpoint(withDefaults()));
+        // Bearer tokens of the registration and user info endpoints.
+        http.oauth2ResourceServer(resourceServer -> resourceServer.jwt(withDefaults()));
         return http.formLogin(withDefaults()).build();
     }
 
@@ -45,18 +109,74 @@ public class DefaultSecurityConfig {
         LOG.info("Initializing default security filter chain for non-OAuth2 endpoints");
         http.authorizeHttpRequests(
                         authorizeRequests -> authorizeRequests
+                                // Polled by the resource servers, public like the JWK Set.
+                                .requestMatchers("/revocations").permitAll()
+                                // Available to any authenticated user, every other administration endpoint
+                                // requires the ADMIN role whatever the annotations of its controller.
+                                .requestMatchers("/admin/current-user", "/admin/logout").authenticated()
+                                .requestMatchers("/admin/**").hasRole("ADMIN")
                                 .anyRequest().authenticated())
                 .formLogin(withDefaults());
         return http.build();
     }
 
+    /**
+     * Source of the JWK signing keys, backed by the persisted and rotated keys of {@link JwkKeyManager}
+     * instead of a key generated at every start.
+     *
+     * @return the JWK source used to sign tokens and to publish the JWK Set
+     */
+    @Bean
+    public JWKSource<SecurityContext> jwkSource() {
+        return (jwkSelector, securityContext) -> jwkSelector.select(jwkKeyManager.getJwkSet());
+    }
+
+    /**
+     * Encoder of the user passwords and client secrets, hashing on a bounded pool of its own.
+     *
+     * @return the password encoder, also used by the authorization server for client secrets
+     */
     @Bean
-    public RegisteredClientRepository registeredClientRepository() throws Exception {
-        LOG.info("Loading RegisteredClients from XML file");
-        List<RegisteredClient> clients = registeredClientLoader.loadClientsFromXml(clientsConfigPath);
-        if (clients.isEmpty()) {
+    public BoundedPasswordEncoder passwordEncoder(@Value("${users.password.encoder:bcrypt}") String encodingId,
+                                                  @Value("${users.password.hashing-threads:0}") int threads,
+                                                  @Value("${users.password.hashing-queue:64}") int queueCapacity,
+                                                  MeterRegistry meterRegistry) {
+        int hashingThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(encodingId, hashingThreads, queueCapacity, meterRegistry);
+    }
+
+    /**
+     * Registered clients, empty until the clients loaded by the {@link StartupPipeline} are
+     * installed by {@link #afterSingletonsInstantiated()}. Clients registered at runtime are
+     * persisted to the {@link RegisteredClientStore}.
+     *
+     * @return the registered client repository
+     */
+    @Bean
+    public CustomInMemoryRegisteredClientRepository registeredClientRepository() {
+        return new CustomInMemoryRegisteredClientRepository(List.of(), registeredClientStore, clientShards);
+    }
+
+    /**
+     * Installs the clients loaded from the XML file and the clients registered at runtime once
+     * every singleton has been created, so that they load while the rest of the application
+     * context starts.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        RegisteredClientLoader.ClientConfiguration clients;
+        List<RegisteredClient> registeredClients;
+        try {
+            clients = startupPipeline.clients();
+            registeredClients = startupPipeline.registeredClients();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to load the registered clients", e);
+        }
+        if (clients.clients().isEmpty() && registeredClients.isEmpty()) {
             LOG.warn("No clients loaded from XML, repository will be empty");
         }
-        return new CustomInMemoryRegisteredClientRepository(clients);
+        registeredClientRepository().replaceAll(clients.clients());
+        claimTemplateRegistry.registerAll(clients.claimTemplates());
+        registeredClientRepository().restore(registeredClients);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,253 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.JWKGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Owner of the JWK signing keys of the authorization server.
+ *
+ * <p>Keys are persisted in {@code jwk.store.path}/{@value #KEYS_FILE}, so that a restart keeps
+ * signing with the same key and tokens issued before the restart stay valid. Each key carries
+ * its creation time ({@code iat}) and the instant from which it signs tokens ({@code nbf}).
+ * The signing key is the most recent key whose {@code nbf} has passed.</p>
+ *
+ * <p>Rotation works with two overlap windows:</p>
+ * <ul>
+ *   <li>a new key is generated and published in the JWK Set {@code jwk.publish-ahead} before it
+ *   starts signing, so that resource servers refreshing their JWKS cache already know it when
+ *   the first token signed with it arrives;</li>
+ *   <li>a superseded key stays published for {@code jwk.retention} after its successor started
+ *   signing, so that the tokens it signed can still be verified until they expire.</li>
+ * </ul>
+ *
+ * <p>Supported algorithms are {@code RS256} and {@code ES256}. {@code ES256} signs with much
+ * smaller keys and is considerably faster than {@code RS256}. {@code EdDSA} is rejected:
+ * the JWT encoder of Spring Security cannot select an OKP signing key, and Nimbus needs an
+ * additional crypto provider (Tink) to sign with Ed25519.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class JwkKeyManager {
+    private static final Logger LOG = LoggerFactory.getLogger(JwkKeyManager.class);
+    static final String KEYS_FILE = "jwks.json";
+
+    private static final Comparator<JWK> ACTIVATION_ORDER = Comparator.comparing(JWK::getNotBeforeTime);
+
+    private final Path directory;
+    private final JWSAlgorithm algorithm;
+    private final Duration rotationInterval;
+    private final Duration publishAhead;
+    private final Duration retention;
+    /**
+     * Current keys ordered by activation, replaced as a whole on every change.
+     */
+    private volatile List<JWK> keys = List.of();
+    /**
+     * Serializes the key changes, which write the keys file while holding it; a lock rather than
+     * {@code synchronized} so that a scheduled rotation on a virtual thread does not pin its carrier.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile JWKSet jwkSet = new JWKSet();
+
+    public JwkKeyManager(@Value("${jwk.store.path:./data/keys}") String path,
+                         @Value("${jwk.algorithm:RS256}") String algorithm,
+                         @Value("${jwk.rotation-interval:P30D}") Duration rotationInterval,
+                         @Value("${jwk.publish-ahead:PT24H}") Duration publishAhead,
+                         @Value("${jwk.retention:P7D}") Duration retention) {
+        this.directory = Paths.get(path);
+        this.algorithm = JWSAlgorithm.parse(algorithm);
+        if (!JWSAlgorithm.RS256.equals(this.algorithm) && !JWSAlgorithm.ES256.equals(this.algorithm)) {
+            throw new IllegalStateException("Unsupported JWK algorithm " + algorithm + ", expected RS256 or ES256");
+        }
+        this.rotationInterval = rotationInterval;
+        this.publishAhead = publishAhead;
+        this.retention = retention;
+    }
+
+    /**
+     * Loads the persisted keys and generates the signing key when there is none yet. Called once
+     * by {@link StartupPipeline}, concurrently with the loading of the users and clients; the keys
+     * are ready before the server accepts requests.
+     *
+     * @throws IOException if the persisted keys cannot be read
+     */
+    public void initialize() throws IOException {
+        lock.lock();
+        try {
+            load();
+            rotate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the keys currently published, including the private parts
+     */
+    public JWKSet getJwkSet() {
+        return jwkSet;
+    }
+
+    /**
+     * Returns the key to sign tokens with: the most recent key whose activation instant has passed.
+     *
+     * @return the signing key
+     */
+    public JWK getSigningKey() {
+        List<JWK> current = keys;
+        Date now = new Date();
+        for (int i = current.size() - 1; i >= 0; i--) {
+            JWK key = current.get(i);
+            if (!key.getNotBeforeTime().after(now)) {
+                return key;
+            }
+        }
+        // Only reachable if the clock went backwards: sign with the oldest key.
+        return current.get(0);
+    }
+
+    /**
+     * @return the signature algorithm of the signing key, as expected in a JWS header
+     */
+    public SignatureAlgorithm getSigningAlgorithm() {
+        return SignatureAlgorithm.from(getSigningKey().getAlgorithm().getName());
+    }
+
+    /**
+     * Generates the next key when it is due for pre-publication, and drops the keys that are
+     * no longer needed to verify tokens.
+     */
+    @Scheduled(fixedDelayString = "${jwk.rotation-check-interval:PT1H}",
+            initialDelayString = "${jwk.rotation-check-interval:PT1H}")
+    public void rotate() {
+        lock.lock();
+        try {
+            Instant now = Instant.now();
+            List<JWK> updated = new ArrayList<>(keys);
+            boolean changed = false;
+            JWK newest = updated.isEmpty() ? null : updated.get(updated.size() - 1);
+            if (newest == null || !algorithm.equals(newest.getAlgorithm())) {
+                // First start or change of algorithm by the operator: the new key signs immediately.
+                updated.add(generate(now));
+                changed = true;
+            } else {
+                Instant nextActivation = newest.getNotBeforeTime().toInstant().plus(rotationInterval);
+                if (!now.isBefore(nextActivation.minus(publishAhead))) {
+                    Instant earliest = now.plus(publishAhead);
+                    updated.add(generate(nextActivation.isBefore(earliest) ? earliest : nextActivation));
+                    changed = true;
+                }
+            }
+            // A key can be dropped once its successor has signed for longer than the retention period.
+            while (updated.size() > 1 && !updated.get(1).getNotBeforeTime().toInstant().plus(retention).isAfter(now)) {
+                LOG.info("Retiring JWK {}", updated.get(0).getKeyID());
+                updated.remove(0);
+                changed = true;
+            }
+            if (changed) {
+                publish(updated);
+                try {
+                    store(updated);
+                } catch (IOException e) {
+                    LOG.error("Unable to persist the JWK signing keys in {}", directory, e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private JWK generate(Instant activatesAt) {
+        JWKGenerator<? extends JWK> generator = JWSAlgorithm.ES256.equals(algorithm)
+                ? new ECKeyGenerator(Curve.P_256)
+                : new RSAKeyGenerator(RSAKeyGenerator.MIN_KEY_SIZE_BITS);
+        try {
+            JWK key = generator.keyUse(KeyUse.SIGNATURE)
+                    .algorithm(algorithm)
+                    .keyIDFromThumbprint(true)
+                    .issueTime(new Date())
+                    .notBeforeTime(Date.from(activatesAt))
+                    .generate();
+            LOG.info("Generated {} JWK {} signing from {}", algorithm, key.getKeyID(), activatesAt);
+            return key;
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Unable to generate a " + algorithm + " JWK", e);
+        }
+    }
+
+    private void publish(List<JWK> updated) {
+        updated.sort(ACTIVATION_ORDER);
+        this.keys = List.copyOf(updated);
+        this.jwkSet = new JWKSet(this.keys);
+    }
+
+    private void load() throws IOException {
+        Path file = directory.resolve(KEYS_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            List<JWK> loaded = new ArrayList<>();
+            for (JWK key : JWKSet.parse(Files.readString(file, StandardCharsets.UTF_8)).getKeys()) {
+                if (key.isPrivate() && key.getNotBeforeTime() != null && key.getAlgorithm() != null) {
+                    loaded.add(key);
+                } else {
+                    LOG.warn("Ignoring incomplete JWK {} in {}", key.getKeyID(), file);
+                }
+            }
+            publish(loaded);
+            LOG.info("Loaded {} JWK signing keys from {}", loaded.size(), file);
+        } catch (ParseException e) {
+            throw new IOException("Unable to parse the JWK signing keys in " + file, e);
+        }
+    }
+
+    private void store(List<JWK> updated) throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = directory.resolve(KEYS_FILE + ".tmp");
+        // Created owner-only before the private keys are written, never readable by others.
+        Files.deleteIfExists(temporary);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(temporary, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        Files.writeString(temporary, new JWKSet(updated).toString(false), StandardCharsets.UTF_8);
+        try {
+            Files.move(temporary, directory.resolve(KEYS_FILE), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, directory.resolve(KEYS_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
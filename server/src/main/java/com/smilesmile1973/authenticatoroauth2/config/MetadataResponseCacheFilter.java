@@ -0,0 +1,227 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jose.jwk.JWKSet;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Set;
+
+/**
+ * Serves the public metadata endpoints of the authorization server (JWK Set and discovery
+ * documents) from pre-encoded byte arrays.
+ *
+ * <p>The first request for an endpoint goes through the regular endpoint filter of the
+ * authorization server and its response body is captured, so the cached document is exactly
+ * the one the server produces. Later requests are answered from the cache with a strong
+ * {@code ETag}, {@code 304 Not Modified} when {@code If-None-Match} matches, and a
+ * {@code Cache-Control} max-age. A cached document is regenerated when the JWK signing keys
+ * change (the discovery documents advertise the signing algorithm). When the issuer is
+ * configured, documents are cached per path. Otherwise the issuer is resolved from the request,
+ * whose {@code Host} header is client-controlled: documents are cached per issuer, for at most
+ * {@value #MAX_ISSUERS} issuers, least recently used first out.</p>
+ *
+ * <p>The max-age should stay well below {@code jwk.publish-ahead}, so that clients refresh the
+ * JWK Set before a pre-published key starts signing.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public class MetadataResponseCacheFilter extends OncePerRequestFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataResponseCacheFilter.class);
+    /**
+     * Maximum number of issuers resolved from the request whose documents are cached.
+     */
+    static final int MAX_ISSUERS = 8;
+
+    private final Set<String> paths;
+    private final JwkKeyManager jwkKeyManager;
+    private final String cacheControl;
+    private final boolean issuerConfigured;
+    private final Cache<String, CachedResponse> cache;
+
+    /**
+     * @param paths            the endpoint paths whose responses are cached
+     * @param jwkKeyManager    the key manager, whose key changes invalidate the cache
+     * @param maxAge           the max-age advertised in {@code Cache-Control}
+     * @param issuerConfigured whether the issuer is configured rather than resolved from the request
+     */
+    public MetadataResponseCacheFilter(Set<String> paths, JwkKeyManager jwkKeyManager, Duration maxAge,
+                                       boolean issuerConfigured) {
+        this.paths = Set.copyOf(paths);
+        this.jwkKeyManager = jwkKeyManager;
+        this.cacheControl = "public, max-age=" + maxAge.toSeconds();
+        this.issuerConfigured = issuerConfigured;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize((long) this.paths.size() * (issuerConfigured ? 1 : MAX_ISSUERS))
+                .build();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod())
+                || !paths.contains(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        JWKSet keys = jwkKeyManager.getJwkSet();
+        String cacheKey = cacheKey(request);
+        CachedResponse cached = cache.getIfPresent(cacheKey);
+        if (cached == null || cached.keys() != keys) {
+            cached = render(request, response, filterChain, keys);
+            if (cached == null) {
+                return;
+            }
+            cache.put(cacheKey, cached);
+        }
+        response.setHeader(HttpHeaders.ETAG, cached.etag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), cached.etag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(cached.contentType());
+        response.setContentLength(cached.body().length);
+        response.getOutputStream().write(cached.body());
+    }
+
+    /**
+     * Lets the endpoint filter of the authorization server produce the document and captures it.
+     *
+     * @return the captured document, or {@code null} if the endpoint did not answer with 200, in
+     * which case its response has been forwarded as is
+     */
+    private CachedResponse render(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                                  JWKSet keys) throws ServletException, IOException {
+        DetachedResponse capture = new DetachedResponse(response);
+        filterChain.doFilter(request, capture);
+        if (capture.getStatus() != HttpServletResponse.SC_OK || capture.getContentType() == null) {
+            response.setStatus(capture.getStatus());
+            if (capture.getContentType() != null) {
+                response.setContentType(capture.getContentType());
+            }
+            capture.copyBodyToResponse();
+            return null;
+        }
+        byte[] body = capture.getContentAsByteArray();
+        LOG.debug("Cached {} bytes for {}", body.length, request.getRequestURI());
+        return new CachedResponse(keys, body, capture.getContentType(), etag(body));
+    }
+
+    private String cacheKey(HttpServletRequest request) {
+        if (issuerConfigured) {
+            return request.getRequestURI();
+        }
+        return request.getScheme() + "://" + request.getServerName() + ":" + request.getServerPort()
+                + request.getRequestURI();
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Response capturing the body, status and content type of the endpoint without passing
+     * anything to the client, so that the headers of the cached document are only set from the
+     * cache (the default no-cache headers of Spring Security would otherwise leak through).
+     */
+    private static final class DetachedResponse extends ContentCachingResponseWrapper {
+        private int status = HttpServletResponse.SC_OK;
+        private String contentType;
+
+        private DetachedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void setContentType(String contentType) {
+            this.contentType = contentType;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+                setContentType(value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            setHeader(name, value);
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+        }
+
+        @Override
+        public void addDateHeader(String name, long date) {
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+        }
+    }
+
+    /**
+     * Pre-encoded document with the keys it was rendered with.
+     */
+    private record CachedResponse(JWKSet keys, byte[] body, String contentType, String etag) {
+    }
+}
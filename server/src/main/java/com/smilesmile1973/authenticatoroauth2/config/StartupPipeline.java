@@ -0,0 +1,189 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.smilesmile1973.authenticatoroauth2.model.UserXml;
+import com.smilesmile1973.authenticatoroauth2.repository.RegisteredClientStore;
+import com.smilesmile1973.authenticatoroauth2.service.RegisteredClientLoader;
+import com.smilesmile1973.authenticatoroauth2.service.RegisteredUserLoader;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the slow startup phases concurrently: loading the users, loading the clients of the XML
+ * configuration, loading the clients registered at runtime and preparing the JWK signing keys.
+ *
+ * <p>The four phases start on dedicated threads as soon as the first bean depending on this
+ * pipeline is created, and run while the rest of the application context starts. Their results
+ * are only awaited once every singleton has been created, before the server accepts requests:
+ * the users by {@link com.smilesmile1973.authenticatoroauth2.service.CustomUserDetailsService},
+ * both kinds of clients by {@link DefaultSecurityConfig} and the signing keys by this pipeline. A failing
+ * phase fails the startup, as before.</p>
+ *
+ * <p>When the application is ready, a timeline reports the start offset, duration and thread of
+ * each phase, in milliseconds since the JVM started, followed by the time to ready and the kind
+ * of threads serving the requests ({@code spring.threads.virtual.enabled}).</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class StartupPipeline implements SmartInitializingSingleton {
+    private static final Logger LOG = LoggerFactory.getLogger(StartupPipeline.class);
+
+    @Value("${users.config.path:users.xml}")
+    private String usersConfigPath;
+    @Value("${clients.config.path:clients.xml}")
+    private String clientsConfigPath;
+    @Autowired
+    private RegisteredUserLoader registeredUserLoader;
+    @Autowired
+    private RegisteredClientLoader registeredClientLoader;
+    @Autowired
+    private RegisteredClientStore registeredClientStore;
+    @Autowired
+    private JwkKeyManager jwkKeyManager;
+    @Autowired
+    private Environment environment;
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final ConcurrentLinkedQueue<Phase> timeline = new ConcurrentLinkedQueue<>();
+    private ExecutorService executor;
+    private CompletableFuture<Map<String, UserXml>> users;
+    private CompletableFuture<RegisteredClientLoader.ClientConfiguration> clients;
+    private CompletableFuture<List<RegisteredClient>> registeredClients;
+    private CompletableFuture<Void> signingKeys;
+
+    @PostConstruct
+    private void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "startup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        users = phase("users", () -> registeredUserLoader.loadUsersFromXML(usersConfigPath));
+        clients = phase("clients", () -> registeredClientLoader.loadClientsFromXml(clientsConfigPath));
+        registeredClients = phase("registrations", registeredClientStore::load);
+        signingKeys = phase("signing keys", () -> {
+            jwkKeyManager.initialize();
+            return null;
+        });
+    }
+
+    /**
+     * Waits for the users phase.
+     *
+     * @return the users loaded from {@code users.config.path}
+     * @throws Exception if the users cannot be loaded
+     */
+    public Map<String, UserXml> users() throws Exception {
+        return await(users);
+    }
+
+    /**
+     * Waits for the clients phase.
+     *
+     * @return the clients loaded from {@code clients.config.path}, with their claim templates
+     * @throws Exception if the clients cannot be loaded
+     */
+    public RegisteredClientLoader.ClientConfiguration clients() throws Exception {
+        return await(clients);
+    }
+
+    /**
+     * Waits for the registered clients phase.
+     *
+     * @return the clients registered at runtime, read back from {@code clients.store.path}
+     * @throws Exception if the registered clients cannot be loaded
+     */
+    public List<RegisteredClient> registeredClients() throws Exception {
+        return await(registeredClients);
+    }
+
+    /**
+     * Waits for the signing keys once every singleton is created, so that no request can be
+     * served without them.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            await(signingKeys);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to prepare the JWK signing keys", e);
+        }
+        executor.shutdown();
+    }
+
+    @PreDestroy
+    private void stop() {
+        executor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportTimeline() {
+        StringBuilder report = new StringBuilder("Startup timeline (ms since JVM start):");
+        timeline.stream()
+                .sorted((a, b) -> Long.compare(a.start(), b.start()))
+                .forEach(phase -> report.append(String.format("%n  %-13s start %6d  duration %6d  [%s]",
+                        phase.name(), phase.start() - jvmStartMillis, phase.end() - phase.start(), phase.thread())));
+        report.append(String.format("%n  %-13s at    %6d", "ready", System.currentTimeMillis() - jvmStartMillis));
+        boolean virtualThreads = Threading.VIRTUAL.isActive(environment);
+        report.append(String.format("%n  requests on %s threads", virtualThreads ? "virtual" : "platform"));
+        LOG.info(report.toString());
+        if (!virtualThreads && environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            LOG.warn("spring.threads.virtual.enabled requires Java 21 or later, requests run on platform threads");
+        }
+    }
+
+    private <T> CompletableFuture<T> phase(String name, Callable<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                return work.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                timeline.add(new Phase(name, start, System.currentTimeMillis(), Thread.currentThread().getName()));
+            }
+        }, executor);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Startup phase of the timeline, instants in milliseconds since the epoch.
+     */
+    private record Phase(String name, long start, long end, String thread) {
+    }
+}
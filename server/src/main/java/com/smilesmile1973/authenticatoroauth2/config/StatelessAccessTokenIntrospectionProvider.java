@@ -0,0 +1,60 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.smilesmile1973.authenticatoroauth2.service.AccessTokenRevocationRegistry;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenIntrospection;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2ClientAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2TokenIntrospectionAuthenticationToken;
+
+/**
+ * Handles the introspection endpoint ({@code /oauth2/introspect}) for stateless access tokens,
+ * which have no stored authorization: the token is active when its signature and expiry are
+ * valid and it is not in the {@link AccessTokenRevocationRegistry}.
+ *
+ * <p>Registered before the default provider of the authorization server, to which it defers
+ * (by returning {@code null}) for every stored token and for any value that is not a stateless
+ * access token; the default provider then answers {@code active=false}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public class StatelessAccessTokenIntrospectionProvider implements AuthenticationProvider {
+    private final OAuth2AuthorizationService authorizationService;
+    private final AccessTokenRevocationRegistry accessTokenRevocationRegistry;
+
+    public StatelessAccessTokenIntrospectionProvider(OAuth2AuthorizationService authorizationService,
+                                                     AccessTokenRevocationRegistry accessTokenRevocationRegistry) {
+        this.authorizationService = authorizationService;
+        this.accessTokenRevocationRegistry = accessTokenRevocationRegistry;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) {
+        OAuth2TokenIntrospectionAuthenticationToken introspection =
+                (OAuth2TokenIntrospectionAuthenticationToken) authentication;
+        if (!(introspection.getPrincipal() instanceof OAuth2ClientAuthenticationToken clientPrincipal)
+                || !clientPrincipal.isAuthenticated()
+                || authorizationService.findByToken(introspection.getToken(), null) != null) {
+            return null;
+        }
+        Jwt jwt = accessTokenRevocationRegistry.resolve(introspection.getToken());
+        if (jwt == null || accessTokenRevocationRegistry.isRevoked(jwt.getId())) {
+            return null;
+        }
+        OAuth2TokenIntrospection tokenClaims = OAuth2TokenIntrospection.withClaims(jwt.getClaims())
+                .active(true)
+                .clientId(jwt.getAudience().get(0))
+                .tokenType(OAuth2AccessToken.TokenType.BEARER.getValue())
+                .build();
+        return new OAuth2TokenIntrospectionAuthenticationToken(introspection.getToken(), clientPrincipal, tokenClaims);
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return OAuth2TokenIntrospectionAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+}
@@ -0,0 +1,59 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.smilesmile1973.authenticatoroauth2.service.AccessTokenRevocationRegistry;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2ClientAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.authentication.OAuth2TokenRevocationAuthenticationToken;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+
+/**
+ * Handles the revocation endpoint ({@code /oauth2/revoke}) for stateless access tokens, which
+ * have no stored authorization: the token is added to the {@link AccessTokenRevocationRegistry}.
+ *
+ * <p>Registered before the default provider of the authorization server, to which it defers
+ * (by returning {@code null}) for every stored token and for any client not issuing stateless
+ * access tokens. A client can only revoke the tokens issued to itself.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public class StatelessAccessTokenRevocationProvider implements AuthenticationProvider {
+    private final OAuth2AuthorizationService authorizationService;
+    private final AccessTokenRevocationRegistry accessTokenRevocationRegistry;
+
+    public StatelessAccessTokenRevocationProvider(OAuth2AuthorizationService authorizationService,
+                                                  AccessTokenRevocationRegistry accessTokenRevocationRegistry) {
+        this.authorizationService = authorizationService;
+        this.accessTokenRevocationRegistry = accessTokenRevocationRegistry;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) {
+        OAuth2TokenRevocationAuthenticationToken revocation = (OAuth2TokenRevocationAuthenticationToken) authentication;
+        if (!(revocation.getPrincipal() instanceof OAuth2ClientAuthenticationToken clientPrincipal)
+                || !clientPrincipal.isAuthenticated()) {
+            return null;
+        }
+        RegisteredClient registeredClient = clientPrincipal.getRegisteredClient();
+        if (!AccessTokenRevocationRegistry.isStateless(registeredClient)
+                || authorizationService.findByToken(revocation.getToken(), null) != null) {
+            return null;
+        }
+        Jwt jwt = accessTokenRevocationRegistry.revoke(revocation.getToken(), registeredClient.getClientId());
+        if (jwt == null) {
+            return null;
+        }
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                jwt.getTokenValue(), jwt.getIssuedAt(), jwt.getExpiresAt());
+        return new OAuth2TokenRevocationAuthenticationToken(accessToken, clientPrincipal);
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return OAuth2TokenRevocationAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+}
@@ -0,0 +1,40 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.smilesmile1973.authenticatoroauth2.model.ClaimXml;
+import com.smilesmile1973.authenticatoroauth2.model.ClientXml;
+import com.smilesmile1973.authenticatoroauth2.model.ClientsXml;
+import com.smilesmile1973.authenticatoroauth2.model.UserXml;
+import com.smilesmile1973.authenticatoroauth2.model.UsersXml;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.List;
+
+/**
+ * Runtime hints of the XML configuration, contributed to the Spring AOT build ({@code -Pcds}).
+ *
+ * <p>The JAXB models of {@code users.xml} and {@code clients.xml} are only reached through
+ * reflection by the JAXB runtime, and the default configuration files are classpath resources:
+ * neither is visible to the AOT analysis of the bean definitions.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public class XmlConfigurationRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.reflection().registerTypes(List.of(
+                        TypeReference.of(UsersXml.class),
+                        TypeReference.of(UserXml.class),
+                        TypeReference.of(ClientsXml.class),
+                        TypeReference.of(ClientXml.class),
+                        TypeReference.of(ClaimXml.class)),
+                hint -> hint.withMembers(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                        MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.DECLARED_FIELDS));
+        hints.resources().registerPattern("users.xml");
+        hints.resources().registerPattern("clients.xml");
+    }
+}
@@ -1,28 +1,51 @@
 package com.smilesmile1973.authenticatoroauth2.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smilesmile1973.authenticatoroauth2.model.CursorPageDTO;
+import com.smilesmile1973.authenticatoroauth2.model.PrincipalSessionsDTO;
+import com.smilesmile1973.authenticatoroauth2.model.SessionDTO;
 import com.smilesmile1973.authenticatoroauth2.model.UserSessionDTO;
 import com.smilesmile1973.authenticatoroauth2.model.UserXml;
 import com.smilesmile1973.authenticatoroauth2.service.CustomOAuth2AuthorizationService;
 import com.smilesmile1973.authenticatoroauth2.service.CustomUserDetailsService;
+import com.smilesmile1973.authenticatoroauth2.service.SessionEventPublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 
 @RestController
 @RequestMapping("/auth")
 public class CustomOAuth2AuthorizationController {
     private static final Logger LOG = LoggerFactory.getLogger(CustomOAuth2AuthorizationController.class);
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
     @Autowired
     private CustomUserDetailsService customUserDetailsService;
     @Autowired
     private CustomOAuth2AuthorizationService customOAuth2AuthorizationService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private SessionEventPublisher sessionEventPublisher;
 
     @GetMapping("/list")
     public ResponseEntity<List<UserXml>> getUsers() {
@@ -36,6 +59,97 @@ public class CustomOAuth2AuthorizationController {
         return ResponseEntity.ok(results);
     }
 
+    /**
+     * Returns one page of the principals holding at least one session.
+     *
+     * @param cursor the cursor returned with the previous page, absent for the first page
+     * @param limit  the maximum number of principals in the page, capped at 1000
+     * @return the page of principals with their sessions
+     */
+    @GetMapping("/users-session/page")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPageDTO<PrincipalSessionsDTO>> listUsersWithActiveSessionsPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(this.customOAuth2AuthorizationService.getUsersSessionPage(cursor, pageSize));
+    }
+
+    /**
+     * Streams every principal holding at least one session as newline-delimited JSON, one
+     * principal per line, without building the whole result in memory.
+     *
+     * @return the streaming response body
+     */
+    @GetMapping("/users-session/stream")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> streamUsersWithActiveSessions() {
+        StreamingResponseBody body = outputStream -> {
+            int[] count = new int[1];
+            this.customOAuth2AuthorizationService.forEachUserSession(principalSessions -> {
+                writeLine(outputStream, principalSessions);
+                count[0]++;
+            });
+            outputStream.flush();
+            LOG.debug("Streamed sessions of {} principals", count[0]);
+        };
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Returns one page of the active sessions matching every given filter.
+     *
+     * @param clientId      the registered client id, absent for any client
+     * @param scope         an authorized scope, absent for any scope
+     * @param expiresWithin the window in which the sessions expire as an ISO-8601 duration (for example {@code PT10M}),
+     *                      absent for any expiry
+     * @param cursor        the cursor returned with the previous page, absent for the first page
+     * @param limit         the maximum number of sessions in the page, capped at 1000
+     * @return the page of sessions, or bad request if the cursor is malformed
+     */
+    @GetMapping("/sessions/query")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPageDTO<SessionDTO>> querySessions(
+            @RequestParam(required = false) String clientId,
+            @RequestParam(required = false) String scope,
+            @RequestParam(required = false) Duration expiresWithin,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        try {
+            return ResponseEntity.ok(this.customOAuth2AuthorizationService.querySessions(
+                    clientId, scope, expiresWithin, cursor, pageSize));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Session query rejected: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Subscribes to the live session change feed (Server-Sent Events): session created,
+     * refreshed, revoked and expired events, plus overflow events when this subscriber falls behind.
+     *
+     * @return the event stream, or 503 if the maximum number of subscribers is reached
+     */
+    @GetMapping(value = "/sessions/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<SseEmitter> subscribeToSessionEvents() {
+        SseEmitter emitter = this.sessionEventPublisher.subscribe();
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    private void writeLine(OutputStream outputStream, Object value) {
+        try {
+            outputStream.write(this.objectMapper.writeValueAsBytes(value));
+            outputStream.write(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @GetMapping("/user-session/{userName}")
     public ResponseEntity<UserSessionDTO> getActiveSession(@PathVariable String userName) {
         UserSessionDTO result = this.customOAuth2AuthorizationService.getUserSession(userName);
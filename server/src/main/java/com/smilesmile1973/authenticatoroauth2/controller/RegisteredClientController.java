@@ -0,0 +1,88 @@
+package com.smilesmile1973.authenticatoroauth2.controller;
+
+import com.smilesmile1973.authenticatoroauth2.model.ClientSummaryDTO;
+import com.smilesmile1973.authenticatoroauth2.model.CursorPageDTO;
+import com.smilesmile1973.authenticatoroauth2.repository.CustomInMemoryRegisteredClientRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * REST controller listing the OAuth2 clients: those of the XML configuration and those
+ * registered at runtime through the client registration endpoint ({@code /connect/register}).
+ *
+ * <p>Client secrets are never returned. All operations require ADMIN role authorization.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@RestController
+@RequestMapping("/admin/clients")
+public class RegisteredClientController {
+    private static final int MAX_PAGE_SIZE = 1000;
+    @Autowired
+    private CustomInMemoryRegisteredClientRepository registeredClientRepository;
+
+    /**
+     * Returns one page of the clients, in client ID order.
+     *
+     * @param cursor the cursor returned with the previous page, absent for the first page
+     * @param limit  the maximum number of clients in the page, capped at 1000
+     * @return the page of clients
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPageDTO<ClientSummaryDTO>> listClients(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        CursorPageDTO<RegisteredClient> clients = registeredClientRepository.findAll(cursor, pageSize);
+        CursorPageDTO<ClientSummaryDTO> page = new CursorPageDTO<>();
+        for (RegisteredClient client : clients.getItems()) {
+            page.getItems().add(toClientSummaryDTO(client));
+        }
+        page.setNextCursor(clients.getNextCursor());
+        return ResponseEntity.ok(page);
+    }
+
+    /**
+     * @param clientId the OAuth2 client ID
+     * @return the client, or not found
+     */
+    @GetMapping("/{clientId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ClientSummaryDTO> getClient(@PathVariable String clientId) {
+        RegisteredClient client = registeredClientRepository.findByClientId(clientId);
+        if (client == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(toClientSummaryDTO(client));
+    }
+
+    private ClientSummaryDTO toClientSummaryDTO(RegisteredClient client) {
+        ClientSummaryDTO dto = new ClientSummaryDTO();
+        dto.setId(client.getId());
+        dto.setClientId(client.getClientId());
+        dto.setClientName(client.getClientName());
+        dto.setClientIdIssuedAt(client.getClientIdIssuedAt());
+        dto.setConfigured(registeredClientRepository.isConfigured(client.getId()));
+        dto.setAuthenticationMethods(client.getClientAuthenticationMethods().stream()
+                .map(ClientAuthenticationMethod::getValue).collect(Collectors.toSet()));
+        dto.setGrantTypes(client.getAuthorizationGrantTypes().stream()
+                .map(AuthorizationGrantType::getValue).collect(Collectors.toSet()));
+        dto.setRedirectUris(Set.copyOf(client.getRedirectUris()));
+        dto.setScopes(Set.copyOf(client.getScopes()));
+        return dto;
+    }
+}
@@ -0,0 +1,59 @@
+package com.smilesmile1973.authenticatoroauth2.controller;
+
+import com.smilesmile1973.authenticatoroauth2.model.RevocationListDTO;
+import com.smilesmile1973.authenticatoroauth2.service.AccessTokenRevocationRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Publishes the revocation list of the JWT access tokens to the resource servers, which
+ * validate access tokens locally and cannot see a revocation otherwise.
+ *
+ * <p>A resource server polls {@code GET /revocations?epoch=&since=} with the epoch and version
+ * of its last response and merges the returned entries into its copy, or replaces its copy when
+ * the response is {@code full}. A token is rejected when the digest of its {@code jti} (first
+ * 128 bits of SHA-256, in hexadecimal) is in the copy; entries can be dropped after their
+ * {@code exp}. Polling without change is answered with {@code 304 Not Modified} when the
+ * {@code ETag} of the previous response is sent back in {@code If-None-Match}.</p>
+ *
+ * <p>The endpoint is public, like the JWK Set: the entries only carry digests of random token
+ * identifiers and expiry instants.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@RestController
+public class RevocationListController {
+    @Autowired
+    private AccessTokenRevocationRegistry accessTokenRevocationRegistry;
+
+    /**
+     * @param epoch       the epoch of the last response received, absent on the first poll
+     * @param since       the version of the last response received, absent on the first poll
+     * @param ifNoneMatch the {@code ETag} of the last response received, if any
+     * @return the revocations since {@code since}, or the whole list
+     */
+    @GetMapping("/revocations")
+    public ResponseEntity<RevocationListDTO> getRevocations(
+            @RequestParam(required = false) String epoch,
+            @RequestParam(defaultValue = "0") long since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = "\"" + accessTokenRevocationRegistry.getEpoch() + "-"
+                + accessTokenRevocationRegistry.getVersion() + "\"";
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
+        RevocationListDTO revocations = accessTokenRevocationRegistry.getRevocations(epoch, since);
+        return ResponseEntity.ok()
+                .eTag("\"" + revocations.getEpoch() + "-" + revocations.getVersion() + "\"")
+                .cacheControl(CacheControl.noCache())
+                .body(revocations);
+    }
+}
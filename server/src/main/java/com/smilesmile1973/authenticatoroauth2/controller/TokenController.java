@@ -10,7 +10,6 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
-import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -18,14 +17,21 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import com.smilesmile1973.authenticatoroauth2.model.BulkRevocationResponseDTO;
+import com.smilesmile1973.authenticatoroauth2.model.RevocationResultDTO;
+import com.smilesmile1973.authenticatoroauth2.model.SessionCountsDTO;
+import com.smilesmile1973.authenticatoroauth2.service.AccessTokenRevocationRegistry;
 import com.smilesmile1973.authenticatoroauth2.service.CustomOAuth2AuthorizationService;
+import com.smilesmile1973.authenticatoroauth2.service.SessionCounters;
 import jakarta.servlet.http.HttpServletRequest;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * REST controller for managing OAuth2 tokens and user authentication.
@@ -43,14 +49,21 @@ import java.util.Map;
 public class TokenController {
     private static final Logger LOG = LoggerFactory.getLogger(TokenController.class);
     @Autowired
-    private OAuth2AuthorizationService customOAuth2AuthorizationService;
+    private CustomOAuth2AuthorizationService customOAuth2AuthorizationService;
+    @Autowired
+    private SessionCounters sessionCounters;
+    @Autowired
+    private AccessTokenRevocationRegistry accessTokenRevocationRegistry;
 
     /**
      * Revokes an OAuth2 token (access or refresh token).
      *
      * <p>This endpoint allows administrators to revoke tokens by providing
-     * the token value in the request body. The method will search for both
-     * access and refresh tokens and remove the associated authorization.</p>
+     * the token value in the request body. The token is resolved whatever its
+     * type (access or refresh token) with a single lookup and the associated
+     * authorization is removed. Its JWT access token, or a stateless access token which
+     * has no authorization, is added to the revocation list published to the resource
+     * servers.</p>
      *
      * @param request a map containing the token to be revoked with key "token"
      * @return ResponseEntity with success message if token is revoked,
@@ -67,10 +80,7 @@ public class TokenController {
             LOG.warn("Revocation request missing token");
             return ResponseEntity.badRequest().body("Token is required");
         }
-        OAuth2Authorization authorization = customOAuth2AuthorizationService.findByToken(token, OAuth2TokenType.ACCESS_TOKEN);
-        if (authorization == null) {
-            authorization = customOAuth2AuthorizationService.findByToken(token, OAuth2TokenType.REFRESH_TOKEN);
-        }
+        OAuth2Authorization authorization = customOAuth2AuthorizationService.findByToken(token, null);
         if (authorization != null) {
             customOAuth2AuthorizationService.remove(authorization);
             if (!CollectionUtils.isEmpty(authorization.getAttributes())) {
@@ -80,12 +90,100 @@ public class TokenController {
                 }
             }
             return ResponseEntity.ok("Token revoked successfully");
+        } else if (accessTokenRevocationRegistry.revoke(token, null) != null) {
+            return ResponseEntity.ok("Token revoked successfully");
         } else {
             LOG.warn("No authorization found for token");
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Token not found or already revoked");
         }
     }
 
+    /**
+     * Revokes every authorization of a principal, for example when offboarding a user.
+     *
+     * @param principalName the principal name
+     * @return the outcome for each authorization of the principal and the overall timing
+     */
+    @PostMapping("/revoke-principal/{principalName}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BulkRevocationResponseDTO> revokePrincipal(@PathVariable String principalName) {
+        long start = System.nanoTime();
+        List<RevocationResultDTO> results = customOAuth2AuthorizationService.revokeByPrincipalName(principalName);
+        LOG.info("Authorizations revoked for principal: {}", principalName);
+        return ResponseEntity.ok(toBulkRevocationResponse(results, start));
+    }
+
+    /**
+     * Revokes every authorization granted to a registered client, for example when rotating a
+     * compromised client.
+     *
+     * @param registeredClientId the registered client id (not the OAuth2 client id)
+     * @return the outcome for each authorization of the client and the overall timing
+     */
+    @PostMapping("/revoke-client/{registeredClientId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BulkRevocationResponseDTO> revokeClient(@PathVariable String registeredClientId) {
+        long start = System.nanoTime();
+        List<RevocationResultDTO> results = customOAuth2AuthorizationService.revokeByRegisteredClientId(registeredClientId);
+        LOG.info("Authorizations revoked for registered client: {}", registeredClientId);
+        return ResponseEntity.ok(toBulkRevocationResponse(results, start));
+    }
+
+    /**
+     * Revokes a batch of tokens (access, refresh or any other token type) in one call.
+     *
+     * @param request a map containing the token values to be revoked with key "tokens"
+     * @return the outcome for each token, in the submitted order, and the overall timing,
+     * or bad request if no token is submitted
+     */
+    @PostMapping("/revoke-tokens")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BulkRevocationResponseDTO> revokeTokens(@RequestBody Map<String, List<String>> request) {
+        List<String> tokens = request.get("tokens");
+        if (CollectionUtils.isEmpty(tokens)) {
+            LOG.warn("Bulk revocation request missing tokens");
+            return ResponseEntity.badRequest().build();
+        }
+        long start = System.nanoTime();
+        List<RevocationResultDTO> results = customOAuth2AuthorizationService.revokeTokens(tokens);
+        return ResponseEntity.ok(toBulkRevocationResponse(results, start));
+    }
+
+    /**
+     * Returns the live session counts: the total, the count per registered client and, if
+     * requested, the count of one principal. Counts are read from counters maintained on every
+     * save, removal and expiry, so this endpoint never touches the authorization store.
+     *
+     * @param principal the principal whose count is requested, absent for none
+     * @return the session counts
+     */
+    @GetMapping("/session-counts")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<SessionCountsDTO> getSessionCounts(@RequestParam(required = false) String principal) {
+        SessionCountsDTO response = new SessionCountsDTO();
+        response.setTotal(sessionCounters.total());
+        response.setClients(sessionCounters.clientCounts());
+        if (principal != null) {
+            response.setPrincipalName(principal);
+            response.setPrincipalCount(sessionCounters.principalCount(principal));
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    private static BulkRevocationResponseDTO toBulkRevocationResponse(List<RevocationResultDTO> results, long start) {
+        BulkRevocationResponseDTO response = new BulkRevocationResponseDTO();
+        response.getResults().addAll(results);
+        for (RevocationResultDTO result : results) {
+            if (result.getStatus() == RevocationResultDTO.Status.REVOKED) {
+                response.setRevoked(response.getRevoked() + 1);
+            } else {
+                response.setNotFound(response.getNotFound() + 1);
+            }
+        }
+        response.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return response;
+    }
+
     /**
      * Retrieves information about the currently authenticated user.
      *
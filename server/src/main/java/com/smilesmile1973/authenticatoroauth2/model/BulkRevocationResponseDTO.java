@@ -0,0 +1,43 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response of a bulk revocation: the outcome of every item and the overall timing.
+ */
+public class BulkRevocationResponseDTO {
+
+    private final List<RevocationResultDTO> results = new ArrayList<>();
+    private int revoked;
+    private int notFound;
+    private long durationMillis;
+
+    public List<RevocationResultDTO> getResults() {
+        return results;
+    }
+
+    public int getRevoked() {
+        return revoked;
+    }
+
+    public void setRevoked(int revoked) {
+        this.revoked = revoked;
+    }
+
+    public int getNotFound() {
+        return notFound;
+    }
+
+    public void setNotFound(int notFound) {
+        this.notFound = notFound;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+}
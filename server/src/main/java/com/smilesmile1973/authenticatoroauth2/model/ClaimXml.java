@@ -0,0 +1,30 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+import jakarta.xml.bind.annotation.XmlAttribute;
+import jakarta.xml.bind.annotation.XmlValue;
+
+/**
+ * Static claim added to every JWT issued to a client, e.g. {@code <claim name="tenant">acme</claim>}.
+ */
+public class ClaimXml {
+    private String name;
+    private String value;
+
+    @XmlAttribute(name = "name")
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @XmlValue
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+}
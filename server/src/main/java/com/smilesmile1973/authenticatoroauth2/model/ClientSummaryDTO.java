@@ -0,0 +1,96 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Projection of a registered client for the administration endpoints, without its secret.
+ */
+public class ClientSummaryDTO {
+
+    private String id;
+    private String clientId;
+    private String clientName;
+    private Instant clientIdIssuedAt;
+    private boolean configured;
+    private Set<String> authenticationMethods;
+    private Set<String> grantTypes;
+    private Set<String> redirectUris;
+    private Set<String> scopes;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public void setClientName(String clientName) {
+        this.clientName = clientName;
+    }
+
+    public Instant getClientIdIssuedAt() {
+        return clientIdIssuedAt;
+    }
+
+    public void setClientIdIssuedAt(Instant clientIdIssuedAt) {
+        this.clientIdIssuedAt = clientIdIssuedAt;
+    }
+
+    /**
+     * @return {@code true} for a client of the XML configuration, {@code false} for a client
+     * registered at runtime through the client registration endpoint
+     */
+    public boolean isConfigured() {
+        return configured;
+    }
+
+    public void setConfigured(boolean configured) {
+        this.configured = configured;
+    }
+
+    public Set<String> getAuthenticationMethods() {
+        return authenticationMethods;
+    }
+
+    public void setAuthenticationMethods(Set<String> authenticationMethods) {
+        this.authenticationMethods = authenticationMethods;
+    }
+
+    public Set<String> getGrantTypes() {
+        return grantTypes;
+    }
+
+    public void setGrantTypes(Set<String> grantTypes) {
+        this.grantTypes = grantTypes;
+    }
+
+    public Set<String> getRedirectUris() {
+        return redirectUris;
+    }
+
+    public void setRedirectUris(Set<String> redirectUris) {
+        this.redirectUris = redirectUris;
+    }
+
+    public Set<String> getScopes() {
+        return scopes;
+    }
+
+    public void setScopes(Set<String> scopes) {
+        this.scopes = scopes;
+    }
+}
@@ -1,6 +1,9 @@
 package com.smilesmile1973.authenticatoroauth2.model;
 
+import java.util.List;
+
 import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlElementWrapper;
 import jakarta.xml.bind.annotation.XmlRootElement;
 
 @XmlRootElement(name = "client")
@@ -16,6 +19,10 @@ public class ClientXml {
     private String scopes;
     private Integer accessTokenDuration;
     private Integer refreshTokenDuration;
+    private List<ClaimXml> claims;
+    private String rolesClaim;
+    private String roleMappings;
+    private Boolean statelessAccessTokens;
 
     @XmlElement(name = "id")
     public String getId() {
@@ -106,4 +113,50 @@ public class ClientXml {
     public void setRefreshTokenDuration(Integer refreshTokenDuration) {
         this.refreshTokenDuration = refreshTokenDuration;
     }
-}
\ No newline at end of file
+
+    @XmlElementWrapper(name = "claims")
+    @XmlElement(name = "claim")
+    public List<ClaimXml> getClaims() {
+        return claims;
+    }
+
+    public void setClaims(List<ClaimXml> claims) {
+        this.claims = claims;
+    }
+
+    /**
+     * @return the name of the claim receiving the roles of the user, or {@code null} to omit the roles
+     */
+    @XmlElement(name = "rolesClaim")
+    public String getRolesClaim() {
+        return rolesClaim;
+    }
+
+    public void setRolesClaim(String rolesClaim) {
+        this.rolesClaim = rolesClaim;
+    }
+
+    /**
+     * @return comma-separated {@code ROLE=value} mappings applied to the roles claim, e.g. {@code ADMIN=admin,USER=reader}
+     */
+    @XmlElement(name = "roleMappings")
+    public String getRoleMappings() {
+        return roleMappings;
+    }
+
+    public void setRoleMappings(String roleMappings) {
+        this.roleMappings = roleMappings;
+    }
+
+    /**
+     * @return {@code true} to issue access tokens without persisting an authorization when no refresh token is issued
+     */
+    @XmlElement(name = "statelessAccessTokens")
+    public Boolean getStatelessAccessTokens() {
+        return statelessAccessTokens;
+    }
+
+    public void setStatelessAccessTokens(Boolean statelessAccessTokens) {
+        this.statelessAccessTokens = statelessAccessTokens;
+    }
+}
@@ -0,0 +1,30 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page of results with an opaque cursor to request the next page.
+ *
+ * @param <T> the type of the items
+ */
+public class CursorPageDTO<T> {
+
+    private final List<T> items = new ArrayList<>();
+    private String nextCursor;
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the cursor of the next page, or {@code null} if this page is the last one
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
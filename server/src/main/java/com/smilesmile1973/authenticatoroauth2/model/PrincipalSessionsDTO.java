@@ -0,0 +1,25 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Active sessions of one principal, projected as {@link SessionDTO}.
+ */
+public class PrincipalSessionsDTO {
+
+    private String principalName;
+    private final List<SessionDTO> sessions = new ArrayList<>();
+
+    public String getPrincipalName() {
+        return principalName;
+    }
+
+    public void setPrincipalName(String principalName) {
+        this.principalName = principalName;
+    }
+
+    public List<SessionDTO> getSessions() {
+        return sessions;
+    }
+}
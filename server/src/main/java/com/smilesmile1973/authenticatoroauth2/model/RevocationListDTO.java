@@ -0,0 +1,57 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+import java.util.List;
+
+/**
+ * Revocation list, or the delta of the revocation list since a version known by the caller.
+ */
+public class RevocationListDTO {
+
+    private String epoch;
+    private long version;
+    private boolean full;
+    private List<RevokedTokenDTO> entries;
+
+    /**
+     * @return the identifier of the list, which changes when the server restarts and the
+     * versions start over
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(String epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * @return the version of the list, to send back as {@code since} with the next poll
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return {@code true} if the entries are the whole list and replace the copy of the caller,
+     * {@code false} if they are only the revocations since the requested version
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    public List<RevokedTokenDTO> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<RevokedTokenDTO> entries) {
+        this.entries = entries;
+    }
+}
@@ -0,0 +1,64 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+/**
+ * Outcome of the revocation of one item of a bulk revocation request.
+ */
+public class RevocationResultDTO {
+
+    /**
+     * Revocation outcome of an item.
+     */
+    public enum Status {
+        REVOKED,
+        NOT_FOUND
+    }
+
+    private Integer position;
+    private String authorizationId;
+    private String principalName;
+    private String registeredClientId;
+    private Status status;
+
+    /**
+     * @return the position of the token in the submitted batch, or {@code null} when revoking by principal or client
+     */
+    public Integer getPosition() {
+        return position;
+    }
+
+    public void setPosition(Integer position) {
+        this.position = position;
+    }
+
+    public String getAuthorizationId() {
+        return authorizationId;
+    }
+
+    public void setAuthorizationId(String authorizationId) {
+        this.authorizationId = authorizationId;
+    }
+
+    public String getPrincipalName() {
+        return principalName;
+    }
+
+    public void setPrincipalName(String principalName) {
+        this.principalName = principalName;
+    }
+
+    public String getRegisteredClientId() {
+        return registeredClientId;
+    }
+
+    public void setRegisteredClientId(String registeredClientId) {
+        this.registeredClientId = registeredClientId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+}
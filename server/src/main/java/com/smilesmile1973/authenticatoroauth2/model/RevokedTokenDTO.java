@@ -0,0 +1,33 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+/**
+ * Entry of the revocation list: a revoked access token, identified by the digest of its
+ * {@code jti} claim, with its own expiry after which the entry can be dropped.
+ */
+public class RevokedTokenDTO {
+
+    private String jti;
+    private long exp;
+
+    /**
+     * @return the first 128 bits of the SHA-256 hash of the {@code jti} claim, in hexadecimal
+     */
+    public String getJti() {
+        return jti;
+    }
+
+    public void setJti(String jti) {
+        this.jti = jti;
+    }
+
+    /**
+     * @return the expiry of the token, in seconds since the epoch
+     */
+    public long getExp() {
+        return exp;
+    }
+
+    public void setExp(long exp) {
+        this.exp = exp;
+    }
+}
@@ -0,0 +1,52 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+import java.util.Map;
+
+/**
+ * Live session counts, read from counters without touching the authorization store.
+ */
+public class SessionCountsDTO {
+
+    private long total;
+    private Map<String, Long> clients;
+    private String principalName;
+    private Long principalCount;
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    /**
+     * @return the number of active sessions by registered client id
+     */
+    public Map<String, Long> getClients() {
+        return clients;
+    }
+
+    public void setClients(Map<String, Long> clients) {
+        this.clients = clients;
+    }
+
+    public String getPrincipalName() {
+        return principalName;
+    }
+
+    public void setPrincipalName(String principalName) {
+        this.principalName = principalName;
+    }
+
+    /**
+     * @return the number of active sessions of the requested principal, or {@code null} if none was requested
+     */
+    public Long getPrincipalCount() {
+        return principalCount;
+    }
+
+    public void setPrincipalCount(Long principalCount) {
+        this.principalCount = principalCount;
+    }
+}
@@ -1,9 +1,20 @@
 package com.smilesmile1973.authenticatoroauth2.model;
 
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Lightweight projection of a stored OAuth2 authorization, without any token value.
+ */
 public class SessionDTO {
 
     private String authorizationId;
     private String grandType;
+    private String principalName;
+    private String registeredClientId;
+    private Set<String> authorizedScopes;
+    private Instant accessTokenExpiresAt;
+    private Instant refreshTokenExpiresAt;
 
     public String getAuthorizationId() {
         return authorizationId;
@@ -20,4 +31,44 @@ public class SessionDTO {
     public void setGrandType(String grandType) {
         this.grandType = grandType;
     }
+
+    public String getPrincipalName() {
+        return principalName;
+    }
+
+    public void setPrincipalName(String principalName) {
+        this.principalName = principalName;
+    }
+
+    public String getRegisteredClientId() {
+        return registeredClientId;
+    }
+
+    public void setRegisteredClientId(String registeredClientId) {
+        this.registeredClientId = registeredClientId;
+    }
+
+    public Set<String> getAuthorizedScopes() {
+        return authorizedScopes;
+    }
+
+    public void setAuthorizedScopes(Set<String> authorizedScopes) {
+        this.authorizedScopes = authorizedScopes;
+    }
+
+    public Instant getAccessTokenExpiresAt() {
+        return accessTokenExpiresAt;
+    }
+
+    public void setAccessTokenExpiresAt(Instant accessTokenExpiresAt) {
+        this.accessTokenExpiresAt = accessTokenExpiresAt;
+    }
+
+    public Instant getRefreshTokenExpiresAt() {
+        return refreshTokenExpiresAt;
+    }
+
+    public void setRefreshTokenExpiresAt(Instant refreshTokenExpiresAt) {
+        this.refreshTokenExpiresAt = refreshTokenExpiresAt;
+    }
 }
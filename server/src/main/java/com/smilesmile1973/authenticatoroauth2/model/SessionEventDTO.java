@@ -0,0 +1,67 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+import java.time.Instant;
+
+/**
+ * Incremental session change pushed to the session event feed.
+ */
+public class SessionEventDTO {
+
+    private SessionEventType type;
+    private String authorizationId;
+    private String principalName;
+    private String registeredClientId;
+    private Instant timestamp;
+    private long dropped;
+
+    public SessionEventType getType() {
+        return type;
+    }
+
+    public void setType(SessionEventType type) {
+        this.type = type;
+    }
+
+    public String getAuthorizationId() {
+        return authorizationId;
+    }
+
+    public void setAuthorizationId(String authorizationId) {
+        this.authorizationId = authorizationId;
+    }
+
+    public String getPrincipalName() {
+        return principalName;
+    }
+
+    public void setPrincipalName(String principalName) {
+        this.principalName = principalName;
+    }
+
+    public String getRegisteredClientId() {
+        return registeredClientId;
+    }
+
+    public void setRegisteredClientId(String registeredClientId) {
+        this.registeredClientId = registeredClientId;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return for {@link SessionEventType#OVERFLOW} events, the number of events dropped since the previous delivery
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void setDropped(long dropped) {
+        this.dropped = dropped;
+    }
+}
@@ -0,0 +1,27 @@
+package com.smilesmile1973.authenticatoroauth2.model;
+
+/**
+ * Kinds of session change pushed to the session event feed.
+ */
+public enum SessionEventType {
+    /**
+     * An access token has been issued for a new session.
+     */
+    CREATED,
+    /**
+     * The access token of an existing session has been renewed.
+     */
+    REFRESHED,
+    /**
+     * The session has been revoked or removed.
+     */
+    REVOKED,
+    /**
+     * The session has been evicted because all its tokens expired.
+     */
+    EXPIRED,
+    /**
+     * Events have been dropped because the subscriber did not keep up.
+     */
+    OVERFLOW
+}
@@ -0,0 +1,523 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only journal of the OAuth2 authorizations held by
+ * {@link com.smilesmile1973.authenticatoroauth2.service.CustomOAuth2AuthorizationService}.
+ *
+ * <p>Enabled with {@code authorization.store.mode=file}. Every save or removal appends the
+ * identifier of the changed authorization to a queue. A single writer thread drains the queue,
+ * resolves the <em>current</em> state of each authorization, encodes it and appends the whole
+ * batch to the active log segment with one {@link FileChannel} write and at most one
+ * {@code force} (group commit). Because the state is resolved at write time, the last record
+ * written for an authorization always reflects its latest in-memory state.</p>
+ *
+ * <p>Log segments are rotated when they exceed {@code authorization.store.segment-size}.
+ * Periodically a compacted snapshot of all live authorizations is written and the segments
+ * it covers are deleted. Recovery loads the snapshot and replays the remaining segments,
+ * stopping at the first torn or corrupted record.</p>
+ *
+ * <p>File layout of the store directory:</p>
+ * <ul>
+ *   <li>{@code snapshot.dat}: magic, first segment not covered by the snapshot, then records</li>
+ *   <li>{@code wal-<segment>.log}: records</li>
+ * </ul>
+ * <p>A record is {@code [int length][int crc32][byte type][payload]}, where the CRC covers the
+ * type and the payload. Authorizations are encoded with {@link OAuth2AuthorizationCodec}; each
+ * file (snapshot or segment) starts with an empty codec dictionary so it can be decoded on its
+ * own once older files have been compacted away.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+@ConditionalOnProperty(name = "authorization.store.mode", havingValue = "file")
+public class AuthorizationJournal {
+
+    /**
+     * View of the authorization store used by the journal to resolve and snapshot authorizations.
+     */
+    public interface Source {
+
+        /**
+         * @param id the authorization identifier
+         * @return the current state of the authorization, or {@code null} if it was removed
+         */
+        OAuth2Authorization findById(String id);
+
+        /**
+         * Visits every stored authorization.
+         *
+         * @param action the visitor
+         */
+        void forEach(Consumer<OAuth2Authorization> action);
+    }
+
+    /**
+     * Receiver of the records replayed during recovery.
+     */
+    public interface RecoveryHandler {
+
+        void restore(OAuth2Authorization authorization);
+
+        void restoreRemoval(String authorizationId);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuthorizationJournal.class);
+    private static final int SNAPSHOT_MAGIC = 0x4F415353;
+    /**
+     * Java-serialized authorization, written by the first version of the journal.
+     */
+    private static final byte TYPE_PUT_SERIALIZED = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final byte TYPE_PUT = 3;
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int batchSize;
+    private final boolean fsync;
+    private final boolean awaitCommit;
+    private final Duration commitTimeout;
+    private final LinkedBlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    /**
+     * Encoder of the active segment, only used by the writer thread.
+     */
+    private final OAuth2AuthorizationCodec.Encoder segmentEncoder = new OAuth2AuthorizationCodec.Encoder();
+
+    private Source source;
+    private Thread writer;
+    private volatile boolean running;
+    private FileChannel segmentChannel;
+    private long segmentNumber;
+
+    private enum Kind { APPEND, ROTATE, STOP }
+
+    private record PendingWrite(Kind kind, String authorizationId, CompletableFuture<Long> committed) {
+    }
+
+    public AuthorizationJournal(@Value("${authorization.store.path:./data/authorizations}") String path,
+                                @Value("${authorization.store.segment-size:67108864}") long segmentSize,
+                                @Value("${authorization.store.batch-size:512}") int batchSize,
+                                @Value("${authorization.store.fsync:true}") boolean fsync,
+                                @Value("${authorization.store.await-commit:true}") boolean awaitCommit,
+                                @Value("${authorization.store.commit-timeout:PT5S}") Duration commitTimeout) {
+        this.directory = Paths.get(path);
+        this.segmentSize = segmentSize;
+        this.batchSize = batchSize;
+        this.fsync = fsync;
+        this.awaitCommit = awaitCommit;
+        this.commitTimeout = commitTimeout;
+    }
+
+    /**
+     * Replays the snapshot and the log segments, then opens a fresh segment and starts the
+     * writer thread.
+     *
+     * @param source  the store the journal resolves authorizations from once started
+     * @param handler the receiver of the replayed records
+     * @throws IOException if the store directory cannot be read or written
+     */
+    public synchronized void open(Source source, RecoveryHandler handler) throws IOException {
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        long[] counters = new long[2];
+        long firstSegment = 1;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            firstSegment = readSnapshot(snapshot, handler, counters);
+        }
+        List<Long> segments = listSegments();
+        long lastSegment = firstSegment - 1;
+        for (long segment : segments) {
+            if (segment >= firstSegment) {
+                replaySegment(segmentPath(segment), handler, counters);
+            }
+            lastSegment = Math.max(lastSegment, segment);
+        }
+        LOG.info("Recovered {} authorizations from snapshot and {} journal records in {} ms",
+                counters[0], counters[1], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        this.source = source;
+        openSegment(lastSegment + 1);
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "authorization-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Records that an authorization has been saved or removed. Depending on
+     * {@code authorization.store.await-commit}, waits until the record is durable.
+     *
+     * @param authorizationId the identifier of the changed authorization
+     */
+    public void append(String authorizationId) {
+        PendingWrite write = new PendingWrite(Kind.APPEND, authorizationId, new CompletableFuture<>());
+        queue.add(write);
+        if (awaitCommit) {
+            await(write.committed());
+        }
+    }
+
+    /**
+     * Records that several authorizations have been saved or removed. The records are queued
+     * together so that they share group commits, and only the last one is awaited: commits
+     * complete in queue order.
+     *
+     * @param authorizationIds the identifiers of the changed authorizations
+     */
+    public void appendAll(Collection<String> authorizationIds) {
+        PendingWrite last = null;
+        for (String authorizationId : authorizationIds) {
+            last = new PendingWrite(Kind.APPEND, authorizationId, new CompletableFuture<>());
+            queue.add(last);
+        }
+        if (awaitCommit && last != null) {
+            await(last.committed());
+        }
+    }
+
+    /**
+     * Writes a compacted snapshot of all live authorizations and deletes the log segments it covers.
+     */
+    @Scheduled(fixedDelayString = "${authorization.store.snapshot-interval:PT10M}",
+            initialDelayString = "${authorization.store.snapshot-interval:PT10M}")
+    public void snapshot() {
+        if (!running) {
+            return;
+        }
+        long start = System.nanoTime();
+        PendingWrite rotation = new PendingWrite(Kind.ROTATE, null, new CompletableFuture<>());
+        queue.add(rotation);
+        long firstUncovered = await(rotation.committed());
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        long[] count = new long[1];
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(12).putInt(SNAPSHOT_MAGIC).putLong(firstUncovered).flip();
+            writeFully(channel, header);
+            ByteArrayOutputStream batch = new ByteArrayOutputStream(1 << 16);
+            OAuth2AuthorizationCodec.Encoder encoder = new OAuth2AuthorizationCodec.Encoder();
+            source.forEach(authorization -> {
+                appendRecord(batch, TYPE_PUT, encoder.encode(authorization));
+                count[0]++;
+                if (batch.size() >= 1 << 20) {
+                    writeFully(channel, ByteBuffer.wrap(batch.toByteArray()));
+                    batch.reset();
+                }
+            });
+            writeFully(channel, ByteBuffer.wrap(batch.toByteArray()));
+            channel.force(true);
+        } catch (IOException e) {
+            LOG.error("Unable to write authorization snapshot", e);
+            return;
+        }
+        try {
+            Files.move(temporary, directory.resolve(SNAPSHOT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (long segment : listSegments()) {
+                if (segment < firstUncovered) {
+                    Files.deleteIfExists(segmentPath(segment));
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to install authorization snapshot", e);
+            return;
+        }
+        LOG.info("Authorization snapshot written with {} authorizations in {} ms",
+                count[0], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Flushes pending records and stops the writer thread.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        queue.add(new PendingWrite(Kind.STOP, null, new CompletableFuture<>()));
+        try {
+            writer.join(commitTimeout.toMillis());
+            segmentChannel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.warn("Unable to close authorization journal segment", e);
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                stopped = writeBatch(batch, buffer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            } catch (RuntimeException | IOException e) {
+                LOG.error("Unable to append to the authorization journal", e);
+                batch.forEach(write -> write.committed().completeExceptionally(e));
+            }
+            batch.clear();
+            buffer.reset();
+        }
+    }
+
+    private boolean writeBatch(List<PendingWrite> batch, ByteArrayOutputStream buffer) throws IOException {
+        List<PendingWrite> committed = new ArrayList<>(batch.size());
+        boolean stopped = false;
+        for (PendingWrite write : batch) {
+            if (write.kind() == Kind.STOP) {
+                stopped = true;
+                continue;
+            }
+            if (write.kind() == Kind.ROTATE) {
+                flush(buffer, committed);
+                openSegment(segmentNumber + 1);
+                write.committed().complete(segmentNumber);
+                continue;
+            }
+            OAuth2Authorization authorization = source.findById(write.authorizationId());
+            if (authorization != null) {
+                byte[] payload;
+                try {
+                    payload = segmentEncoder.encode(authorization);
+                } catch (RuntimeException e) {
+                    // Only this record fails: the encoder forgot what it interned for it.
+                    LOG.error("Unable to encode authorization {}, not journaled", write.authorizationId(), e);
+                    write.committed().completeExceptionally(e);
+                    continue;
+                }
+                appendRecord(buffer, TYPE_PUT, payload);
+            } else {
+                appendRecord(buffer, TYPE_REMOVE, write.authorizationId().getBytes(StandardCharsets.UTF_8));
+            }
+            committed.add(write);
+        }
+        flush(buffer, committed);
+        if (segmentChannel.size() >= segmentSize) {
+            openSegment(segmentNumber + 1);
+        }
+        return stopped;
+    }
+
+    private void flush(ByteArrayOutputStream buffer, List<PendingWrite> committed) throws IOException {
+        if (buffer.size() > 0) {
+            long position = segmentChannel.size();
+            try {
+                writeFully(segmentChannel, ByteBuffer.wrap(buffer.toByteArray()));
+                if (fsync) {
+                    segmentChannel.force(false);
+                }
+            } catch (IOException | UncheckedIOException e) {
+                discardFailedWrite(position);
+                throw e;
+            }
+            buffer.reset();
+        }
+        committed.forEach(write -> write.committed().complete(segmentNumber));
+        committed.clear();
+    }
+
+    /**
+     * Cuts a failed write off the active segment and continues in a fresh segment: the records
+     * of the failed write interned strings that the records written next would reference, and
+     * torn bytes left in the segment would hide every record appended after them from recovery.
+     *
+     * @param position the size of the segment before the failed write
+     */
+    private void discardFailedWrite(long position) {
+        try {
+            segmentChannel.truncate(position);
+        } catch (IOException e) {
+            LOG.warn("Unable to truncate authorization journal segment {} after a failed write", segmentNumber, e);
+        }
+        try {
+            openSegment(segmentNumber + 1);
+        } catch (IOException e) {
+            LOG.error("Unable to open a new authorization journal segment after a failed write", e);
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.close();
+        }
+        segmentNumber = number;
+        segmentEncoder.reset();
+        segmentChannel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private long readSnapshot(Path snapshot, RecoveryHandler handler, long[] counters) throws IOException {
+        try (DataInputStream in = openStream(snapshot)) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Invalid authorization snapshot: " + snapshot);
+            }
+            long firstUncovered = in.readLong();
+            counters[0] += replay(in, handler, snapshot);
+            return firstUncovered;
+        }
+    }
+
+    private void replaySegment(Path segment, RecoveryHandler handler, long[] counters) throws IOException {
+        try (DataInputStream in = openStream(segment)) {
+            counters[1] += replay(in, handler, segment);
+        }
+    }
+
+    private long replay(DataInputStream in, RecoveryHandler handler, Path file) throws IOException {
+        long count = 0;
+        CRC32 crc = new CRC32();
+        OAuth2AuthorizationCodec.Decoder decoder = new OAuth2AuthorizationCodec.Decoder();
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return count;
+            }
+            if (length < 0 || length > MAX_RECORD_SIZE) {
+                LOG.warn("Corrupted record length in {}, ignoring the remainder of the file", file);
+                return count;
+            }
+            try {
+                int checksum = in.readInt();
+                byte type = in.readByte();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(type);
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    LOG.warn("Corrupted record in {}, ignoring the remainder of the file", file);
+                    return count;
+                }
+                if (type == TYPE_REMOVE) {
+                    handler.restoreRemoval(new String(payload, StandardCharsets.UTF_8));
+                    count++;
+                    continue;
+                }
+                OAuth2Authorization authorization;
+                try {
+                    authorization = type == TYPE_PUT ? decoder.decode(payload) : deserialize(payload);
+                } catch (RuntimeException | IOException e) {
+                    // Later records of the file may reference strings interned by this one.
+                    LOG.warn("Undecodable record in {}, ignoring the remainder of the file", file, e);
+                    return count;
+                }
+                handler.restore(authorization);
+                count++;
+            } catch (EOFException e) {
+                LOG.warn("Torn record at the end of {}, ignoring it", file);
+                return count;
+            }
+        }
+    }
+
+    private static void appendRecord(ByteArrayOutputStream buffer, byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(9)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(type);
+        buffer.write(header.array(), 0, header.capacity());
+        buffer.write(payload, 0, payload.length);
+    }
+
+    private static OAuth2Authorization deserialize(byte[] payload) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return (OAuth2Authorization) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to decode authorization", e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static DataInputStream openStream(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+    }
+
+    private long await(CompletableFuture<Long> future) {
+        try {
+            return future.get(commitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the authorization journal", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Authorization journal write failed", e);
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+}
@@ -1,24 +1,44 @@
 package com.smilesmile1973.authenticatoroauth2.repository;
 
-import org.springframework.security.oauth2.server.authorization.client.InMemoryRegisteredClientRepository;
+import com.smilesmile1973.authenticatoroauth2.model.CursorPageDTO;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.util.Assert;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Custom implementation of RegisteredClientRepository using composition for in-memory storage.
- * This allows adding custom methods like findAll() without extending the final InMemoryRegisteredClientRepository.
+ * Custom in-memory implementation of RegisteredClientRepository.
+ * This allows adding custom methods like findAll() and replacing the whole client configuration,
+ * which the final InMemoryRegisteredClientRepository does not support.
  *
- * <p>This implementation provides thread-safe, read-only access to OAuth2 registered clients
- * with optimized O(1) lookup performance for both ID and client ID searches.</p>
+ * <p>This implementation provides thread-safe access to OAuth2 registered clients
+ * with O(1) lookup performance for both ID and client ID searches. It holds two kinds of clients:</p>
+ * <ul>
+ *   <li>The <em>configured</em> clients of the XML configuration: a copy-on-write snapshot,
+ *   replaced as a whole by {@link #replaceAll}; they are never persisted by this repository.</li>
+ *   <li>The <em>registered</em> clients, saved at runtime by the client registration endpoint:
+ *   spread over shards by ID, each shard written under its own lock, and persisted to the
+ *   {@link RegisteredClientStore} before they become visible.</li>
+ * </ul>
  *
  * <p><strong>Key Features:</strong></p>
  * <ul>
- *   <li>Dual indexing for efficient lookups by ID and client ID</li>
- *   <li>Thread-safe concurrent access using ConcurrentHashMap</li>
- *   <li>Immutable client list to prevent external modifications</li>
- *   <li>Static configuration with validation during initialization</li>
+ *   <li>Lock-free reads: lookups never block, whatever the number of clients</li>
+ *   <li>Consistent lookups: a client found by client ID is the very instance found by its ID,
+ *   and a lookup never returns a client whose client ID no longer matches</li>
+ *   <li>Unique IDs and client IDs across configured and registered clients</li>
+ *   <li>Pages of clients in client ID order, see {@link #findAll(String, int)}</li>
  * </ul>
  *
  * @author smilesmile1973
@@ -26,38 +46,181 @@ import java.util.List;
  */
 public class CustomInMemoryRegisteredClientRepository implements RegisteredClientRepository {
     /**
-     * Immutable list of all registered clients for bulk operations
+     * Current configured clients, replaced as a whole by {@link #replaceAll} and by the save of a
+     * configured client.
+     */
+    private volatile Snapshot snapshot;
+    /**
+     * Registered clients by ID, one shard per write lock.
+     */
+    private final Shard[] shards;
+    /**
+     * ID of each registered client by client ID; resolved through the shards so that both
+     * lookups return the same instance.
+     */
+    private final ConcurrentHashMap<String, String> registeredIdsByClientId = new ConcurrentHashMap<>();
+    /**
+     * Client IDs of the registered clients, in order, for the pages of {@link #findAll(String, int)}.
+     */
+    private final ConcurrentSkipListSet<String> registeredClientIds = new ConcurrentSkipListSet<>();
+    /**
+     * Durable store of the registered clients, or {@code null} to keep them in memory only.
      */
-    private final List<RegisteredClient> registeredClients;
-    private final InMemoryRegisteredClientRepository inMemoryRegisteredClientRepository;
+    private final RegisteredClientStore store;
+
+    /**
+     * Constructs a new CustomInMemoryRegisteredClientRepository with the provided client
+     * registrations, whose runtime registrations are kept in memory only.
+     *
+     * @param registrations the list of configured OAuth2 client registrations to store
+     * @throws IllegalArgumentException if any registration has a duplicate ID or client ID
+     * @throws NullPointerException     if registrations is null or contains null elements
+     */
+    public CustomInMemoryRegisteredClientRepository(List<RegisteredClient> registrations) {
+        this(registrations, null, 16);
+    }
 
     /**
-     * Constructs a new CustomInMemoryRegisteredClientRepository with the provided client registrations.
+     * Constructs a new CustomInMemoryRegisteredClientRepository with the provided client
+     * registrations.
      *
      * <p>Validates that all client registrations have unique IDs and client IDs, then creates
      * optimized lookup structures for efficient retrieval operations.</p>
      *
-     * @param registrations the list of OAuth2 client registrations to store
+     * @param registrations the list of configured OAuth2 client registrations to store
+     * @param store         the durable store of the registered clients, or {@code null}
+     * @param shardCount    the number of shards of the registered clients, rounded up to a power of two
      * @throws IllegalArgumentException if any registration has a duplicate ID or client ID
      * @throws NullPointerException     if registrations is null or contains null elements
      */
-    public CustomInMemoryRegisteredClientRepository(List<RegisteredClient> registrations) {
-        inMemoryRegisteredClientRepository = new InMemoryRegisteredClientRepository(registrations);
-        this.registeredClients = List.copyOf(registrations);
+    public CustomInMemoryRegisteredClientRepository(List<RegisteredClient> registrations,
+                                                    RegisteredClientStore store, int shardCount) {
+        Assert.isTrue(shardCount > 0 && shardCount <= 1 << 16, "shardCount must be between 1 and 65536");
+        int size = 1;
+        while (size < shardCount) {
+            size <<= 1;
+        }
+        this.shards = new Shard[size];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        this.store = store;
+        this.snapshot = Snapshot.of(registrations);
     }
 
     /**
-     * Saves a registered client to the repository.
+     * Saves a registered client to the repository, replacing the client with the same ID.
      *
-     * <p><strong>Note:</strong> This implementation does not support save operations
-     * as it is designed for static, read-only client configurations.</p>
+     * <p>Used by the authorization server to register a client and to upgrade the encoding of a
+     * client secret. A registered client is persisted before it becomes visible. The change of a
+     * configured client is kept in memory only: a reload of the configuration file restores the
+     * stored secret.</p>
      *
      * @param registeredClient the client registration to save
-     * @throws UnsupportedOperationException always, as save operations are not supported
+     * @throws IllegalArgumentException if another client has the same client ID
+     * @throws java.io.UncheckedIOException if a registered client cannot be persisted, in which
+     *                                      case nothing changes in memory and the record is cut
+     *                                      off the store (see {@link RegisteredClientStore})
      */
     @Override
     public void save(RegisteredClient registeredClient) {
-        inMemoryRegisteredClientRepository.save(registeredClient);
+        Assert.notNull(registeredClient, "registeredClient cannot be null");
+        Shard shard = shard(registeredClient.getId());
+        shard.lock.lock();
+        try {
+            if (!snapshot.byId().containsKey(registeredClient.getId())) {
+                saveRegistered(shard, registeredClient);
+                return;
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+        saveConfigured(registeredClient);
+    }
+
+    private void saveRegistered(Shard shard, RegisteredClient registeredClient) {
+        String id = registeredClient.getId();
+        String clientId = registeredClient.getClientId();
+        Assert.isTrue(!snapshot.byClientId().containsKey(clientId),
+                () -> "Registered client must be unique. Found duplicate client identifier: " + clientId);
+        String owner = registeredIdsByClientId.putIfAbsent(clientId, id);
+        Assert.isTrue(owner == null || owner.equals(id),
+                () -> "Registered client must be unique. Found duplicate client identifier: " + clientId);
+        RegisteredClient previous = shard.byId.get(id);
+        try {
+            if (store != null) {
+                store.append(registeredClient);
+            }
+        } catch (RuntimeException e) {
+            if (owner == null) {
+                registeredIdsByClientId.remove(clientId, id);
+            }
+            throw e;
+        }
+        shard.byId.put(id, registeredClient);
+        registeredClientIds.add(clientId);
+        if (previous != null && !previous.getClientId().equals(clientId)) {
+            registeredIdsByClientId.remove(previous.getClientId(), id);
+            registeredClientIds.remove(previous.getClientId());
+        }
+    }
+
+    private void saveConfigured(RegisteredClient registeredClient) {
+        lockAll();
+        try {
+            List<RegisteredClient> updated = new ArrayList<>(snapshot.clients().size());
+            for (RegisteredClient client : snapshot.clients()) {
+                updated.add(client.getId().equals(registeredClient.getId()) ? registeredClient : client);
+            }
+            this.snapshot = checkedSnapshot(updated);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Replaces every configured client at once, for example after the configuration file changed.
+     * The new clients are validated before they are published; readers see either the previous
+     * or the new configured clients, never a mix. The registered clients are kept.
+     *
+     * @param registrations the new configured client registrations
+     * @throws IllegalArgumentException if any registration has a duplicate ID or client ID, or the
+     *                                  ID or client ID of a registered client, in which case the
+     *                                  current clients are kept
+     */
+    public void replaceAll(List<RegisteredClient> registrations) {
+        lockAll();
+        try {
+            this.snapshot = checkedSnapshot(registrations);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Installs the registered clients read back from the {@link RegisteredClientStore} at
+     * startup, without persisting them again.
+     *
+     * @param registrations the registered clients
+     * @throws IllegalArgumentException if any registration has the ID or client ID of another client
+     */
+    public void restore(List<RegisteredClient> registrations) {
+        lockAll();
+        try {
+            for (RegisteredClient registration : registrations) {
+                Assert.notNull(registration, "registration cannot be null");
+                Assert.isTrue(findById(registration.getId()) == null,
+                        () -> "Registered client must be unique. Found duplicate identifier: " + registration.getId());
+                Assert.isTrue(findByClientId(registration.getClientId()) == null,
+                        () -> "Registered client must be unique. Found duplicate client identifier: "
+                                + registration.getClientId());
+                registeredIdsByClientId.put(registration.getClientId(), registration.getId());
+                shard(registration.getId()).byId.put(registration.getId(), registration);
+                registeredClientIds.add(registration.getClientId());
+            }
+        } finally {
+            unlockAll();
+        }
     }
 
     /**
@@ -68,7 +231,11 @@ public class CustomInMemoryRegisteredClientRepository implements RegisteredClien
      */
     @Override
     public RegisteredClient findById(String id) {
-        return this.inMemoryRegisteredClientRepository.findById(id);
+        RegisteredClient client = this.snapshot.byId().get(id);
+        if (client == null && id != null) {
+            client = shard(id).byId.get(id);
+        }
+        return client;
     }
 
     /**
@@ -79,17 +246,175 @@ public class CustomInMemoryRegisteredClientRepository implements RegisteredClien
      */
     @Override
     public RegisteredClient findByClientId(String clientId) {
-        return this.inMemoryRegisteredClientRepository.findByClientId(clientId);
+        RegisteredClient client = this.snapshot.byClientId().get(clientId);
+        if (client == null && clientId != null) {
+            String id = registeredIdsByClientId.get(clientId);
+            if (id != null) {
+                client = shard(id).byId.get(id);
+                if (client != null && !clientId.equals(client.getClientId())) {
+                    // The client ID is being renamed.
+                    client = null;
+                }
+            }
+        }
+        return client;
     }
 
     /**
-     * Retrieves all registered clients in the repository.
+     * Retrieves all configured clients, those of the XML configuration.
      *
      * <p>Returns an immutable list to prevent external modifications to the client collection.</p>
      *
-     * @return an immutable list containing all registered clients
+     * @return an immutable list containing all configured clients
+     */
+    public List<RegisteredClient> findAllConfigured() {
+        return this.snapshot.clients();
+    }
+
+    /**
+     * Retrieves all clients in the repository, configured and registered, in client ID order.
+     * With many registered clients, prefer the pages of {@link #findAll(String, int)}.
+     *
+     * @return an immutable list containing all clients
      */
     public List<RegisteredClient> findAll() {
-        return this.registeredClients;
+        List<RegisteredClient> clients = new ArrayList<>();
+        String cursor = null;
+        CursorPageDTO<RegisteredClient> page;
+        do {
+            page = findAll(cursor, 1000);
+            clients.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return Collections.unmodifiableList(clients);
+    }
+
+    /**
+     * Returns one page of the clients, configured and registered, in client ID order. Each page
+     * is read without blocking the writers: a client saved concurrently may or may not appear.
+     *
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of clients in the page
+     * @return the page, whose next cursor is {@code null} on the last page
+     */
+    public CursorPageDTO<RegisteredClient> findAll(String cursor, int limit) {
+        Assert.isTrue(limit > 0, "limit must be positive");
+        NavigableMap<String, RegisteredClient> configured = this.snapshot.sortedByClientId();
+        Iterator<RegisteredClient> configuredClients = (cursor == null ? configured
+                : configured.tailMap(cursor, false)).values().iterator();
+        Iterator<String> registeredIds = (cursor == null ? registeredClientIds
+                : registeredClientIds.tailSet(cursor, false)).iterator();
+        RegisteredClient nextConfigured = configuredClients.hasNext() ? configuredClients.next() : null;
+        RegisteredClient nextRegistered = nextRegistered(registeredIds);
+        CursorPageDTO<RegisteredClient> page = new CursorPageDTO<>();
+        while (nextConfigured != null || nextRegistered != null) {
+            if (page.getItems().size() == limit) {
+                page.setNextCursor(page.getItems().get(limit - 1).getClientId());
+                break;
+            }
+            if (nextRegistered == null || nextConfigured != null
+                    && nextConfigured.getClientId().compareTo(nextRegistered.getClientId()) < 0) {
+                page.getItems().add(nextConfigured);
+                nextConfigured = configuredClients.hasNext() ? configuredClients.next() : null;
+            } else {
+                page.getItems().add(nextRegistered);
+                nextRegistered = nextRegistered(registeredIds);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @param id the internal registration ID
+     * @return {@code true} if the client comes from the XML configuration rather than from a
+     * registration at runtime
+     */
+    public boolean isConfigured(String id) {
+        return this.snapshot.byId().containsKey(id);
+    }
+
+    /**
+     * @return the number of registered clients, excluding the configured ones
+     */
+    public int registeredCount() {
+        return registeredIdsByClientId.size();
+    }
+
+    private RegisteredClient nextRegistered(Iterator<String> clientIds) {
+        while (clientIds.hasNext()) {
+            String clientId = clientIds.next();
+            String id = registeredIdsByClientId.get(clientId);
+            RegisteredClient client = id != null ? shard(id).byId.get(id) : null;
+            if (client != null && clientId.equals(client.getClientId())) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds a snapshot of configured clients whose IDs and client IDs are not used by a
+     * registered client. Called with every shard locked.
+     */
+    private Snapshot checkedSnapshot(List<RegisteredClient> registrations) {
+        Snapshot checked = Snapshot.of(registrations);
+        for (RegisteredClient registration : checked.clients()) {
+            Assert.isTrue(shard(registration.getId()).byId.get(registration.getId()) == null,
+                    () -> "Registered client must be unique. Found duplicate identifier: " + registration.getId());
+            Assert.isTrue(!registeredIdsByClientId.containsKey(registration.getClientId()),
+                    () -> "Registered client must be unique. Found duplicate client identifier: "
+                            + registration.getClientId());
+        }
+        return checked;
+    }
+
+    private Shard shard(String id) {
+        int hash = id.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    private void lockAll() {
+        for (Shard shard : shards) {
+            shard.lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = shards.length - 1; i >= 0; i--) {
+            shards[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Registered clients whose ID hashes to the shard. Written under its lock, read without it.
+     */
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ConcurrentHashMap<String, RegisteredClient> byId = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Immutable set of configured clients with its lookup maps.
+     */
+    private record Snapshot(List<RegisteredClient> clients, Map<String, RegisteredClient> byId,
+                            Map<String, RegisteredClient> byClientId,
+                            NavigableMap<String, RegisteredClient> sortedByClientId) {
+
+        private static Snapshot of(List<RegisteredClient> registrations) {
+            Map<String, RegisteredClient> byId = new HashMap<>();
+            Map<String, RegisteredClient> byClientId = new HashMap<>();
+            for (RegisteredClient registration : registrations) {
+                Assert.notNull(registration, "registration cannot be null");
+                Assert.isTrue(byId.put(registration.getId(), registration) == null,
+                        () -> "Registered client must be unique. Found duplicate identifier: " + registration.getId());
+                Assert.isTrue(byClientId.put(registration.getClientId(), registration) == null,
+                        () -> "Registered client must be unique. Found duplicate client identifier: "
+                                + registration.getClientId());
+            }
+            // Unmodifiable views rather than Map.copyOf, whose lookups reject null keys.
+            return new Snapshot(List.copyOf(registrations), Collections.unmodifiableMap(byId),
+                    Collections.unmodifiableMap(byClientId),
+                    Collections.unmodifiableNavigableMap(new TreeMap<>(byClientId)));
+        }
     }
 }
@@ -0,0 +1,753 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2DeviceCode;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.core.OAuth2UserCode;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+/**
+ * Compact binary codec for {@link OAuth2Authorization}, its tokens, attributes and metadata.
+ *
+ * <p>Integers are written as variable-length quantities, instants as epoch seconds plus
+ * nanoseconds, and recurring strings (registered client ids, grant types, scopes, token types,
+ * map keys) are interned through a dictionary. The dictionary lives in the {@link Encoder} and
+ * {@link Decoder} instances: the first occurrence of a string defines its code inline and later
+ * occurrences only write the code. A stream encoded with one encoder must therefore be decoded,
+ * in the same order, with one decoder. Values of attribute, metadata and claim maps that are not
+ * natively supported fall back to Java serialization, so every authorization round-trips
+ * losslessly. The authorization request and the authenticated user stored as attributes by the
+ * authorization code flow are encoded natively.</p>
+ *
+ * <p>Record layout: {@code [format][id][registeredClientId][principalName][grantType]
+ * [scopes][tokens][attributes]}, each token being {@code [kind][value][issuedAt][expiresAt]
+ * [kind-specific fields][metadata]}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public final class OAuth2AuthorizationCodec {
+
+    private static final int FORMAT = 1;
+    private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    private static final int TOKEN_ACCESS = 1;
+    private static final int TOKEN_REFRESH = 2;
+    private static final int TOKEN_AUTHORIZATION_CODE = 3;
+    private static final int TOKEN_ID = 4;
+    private static final int TOKEN_SERIALIZED = 5;
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_TRUE = 2;
+    private static final int VALUE_FALSE = 3;
+    private static final int VALUE_INT = 4;
+    private static final int VALUE_LONG = 5;
+    private static final int VALUE_INSTANT = 6;
+    private static final int VALUE_LIST = 7;
+    private static final int VALUE_SET = 8;
+    private static final int VALUE_MAP = 9;
+    private static final int VALUE_AUTHORIZATION_REQUEST = 10;
+    private static final int VALUE_SERIALIZED = 11;
+    private static final int VALUE_USER_AUTHENTICATION = 12;
+
+    /**
+     * Token types without a dedicated encoding, kept through Java serialization.
+     */
+    private static final List<Class<? extends OAuth2Token>> OTHER_TOKEN_TYPES = List.of(
+            OAuth2DeviceCode.class, OAuth2UserCode.class);
+
+    private OAuth2AuthorizationCodec() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Encodes a single authorization with a fresh dictionary.
+     *
+     * @param authorization the authorization to encode
+     * @return the encoded bytes
+     */
+    public static byte[] encode(OAuth2Authorization authorization) {
+        return new Encoder().encode(authorization);
+    }
+
+    /**
+     * Decodes a single authorization encoded by {@link #encode(OAuth2Authorization)}.
+     *
+     * @param bytes the encoded bytes
+     * @return the decoded authorization
+     */
+    public static OAuth2Authorization decode(byte[] bytes) {
+        return new Decoder().decode(bytes);
+    }
+
+    /**
+     * Stateful encoder; not thread-safe.
+     */
+    public static final class Encoder {
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        /**
+         * Interned strings by code, to forget those of an authorization that fails to encode.
+         */
+        private final List<String> interned = new ArrayList<>();
+        private final Output out = new Output();
+
+        /**
+         * Forgets every interned string, starting a new, independently decodable stream.
+         */
+        public void reset() {
+            dictionary.clear();
+            interned.clear();
+        }
+
+        /**
+         * Encodes an authorization, interning its recurring strings in this encoder's dictionary.
+         * If the authorization cannot be encoded, the strings it interned are forgotten: the
+         * dictionary stays in step with the records actually written.
+         *
+         * @param authorization the authorization to encode
+         * @return the encoded bytes
+         * @throws UncheckedIOException if a value falling back to Java serialization is not serializable
+         */
+        public byte[] encode(OAuth2Authorization authorization) {
+            int mark = interned.size();
+            try {
+                return encodeRecord(authorization);
+            } catch (RuntimeException e) {
+                while (interned.size() > mark) {
+                    dictionary.remove(interned.remove(interned.size() - 1));
+                }
+                throw e;
+            }
+        }
+
+        private byte[] encodeRecord(OAuth2Authorization authorization) {
+            out.reset();
+            out.writeVarInt(FORMAT);
+            out.writeString(authorization.getId());
+            writeInterned(authorization.getRegisteredClientId());
+            out.writeString(authorization.getPrincipalName());
+            writeInterned(authorization.getAuthorizationGrantType().getValue());
+            writeInternedCollection(authorization.getAuthorizedScopes());
+            List<OAuth2Authorization.Token<?>> tokens = tokensOf(authorization);
+            out.writeVarInt(tokens.size());
+            for (OAuth2Authorization.Token<?> token : tokens) {
+                writeToken(token);
+            }
+            writeMap(authorization.getAttributes());
+            return out.toByteArray();
+        }
+
+        private List<OAuth2Authorization.Token<?>> tokensOf(OAuth2Authorization authorization) {
+            // OAuth2Authorization does not expose its token map; the built-in token types are
+            // looked up directly and any other token type is kept through the serialized form.
+            List<OAuth2Authorization.Token<?>> tokens = new ArrayList<>(4);
+            addToken(tokens, authorization.getToken(OAuth2AuthorizationCode.class));
+            addToken(tokens, authorization.getToken(OAuth2AccessToken.class));
+            addToken(tokens, authorization.getToken(OAuth2RefreshToken.class));
+            addToken(tokens, authorization.getToken(OidcIdToken.class));
+            for (Class<? extends OAuth2Token> otherType : OTHER_TOKEN_TYPES) {
+                addToken(tokens, authorization.getToken(otherType));
+            }
+            return tokens;
+        }
+
+        private void addToken(List<OAuth2Authorization.Token<?>> tokens, OAuth2Authorization.Token<?> token) {
+            if (token != null) {
+                tokens.add(token);
+            }
+        }
+
+        private void writeToken(OAuth2Authorization.Token<?> token) {
+            OAuth2Token value = token.getToken();
+            if (value instanceof OAuth2AccessToken accessToken) {
+                out.writeVarInt(TOKEN_ACCESS);
+                writeTokenBase(value);
+                writeInterned(accessToken.getTokenType().getValue());
+                writeInternedCollection(accessToken.getScopes());
+            } else if (value instanceof OAuth2RefreshToken) {
+                out.writeVarInt(TOKEN_REFRESH);
+                writeTokenBase(value);
+            } else if (value instanceof OAuth2AuthorizationCode) {
+                out.writeVarInt(TOKEN_AUTHORIZATION_CODE);
+                writeTokenBase(value);
+            } else if (value instanceof OidcIdToken idToken) {
+                out.writeVarInt(TOKEN_ID);
+                writeTokenBase(value);
+                writeMap(idToken.getClaims());
+            } else {
+                out.writeVarInt(TOKEN_SERIALIZED);
+                out.writeBytes(serialize(value));
+            }
+            writeMap(token.getMetadata());
+        }
+
+        private void writeTokenBase(OAuth2Token token) {
+            out.writeString(token.getTokenValue());
+            writeInstant(token.getIssuedAt());
+            writeInstant(token.getExpiresAt());
+        }
+
+        private void writeInstant(Instant instant) {
+            if (instant == null) {
+                out.writeVarInt(0);
+                return;
+            }
+            out.writeVarInt(1);
+            out.writeVarLong(zigZag(instant.getEpochSecond()));
+            out.writeVarInt(instant.getNano());
+        }
+
+        private void writeInterned(String value) {
+            if (value == null) {
+                out.writeVarInt(0);
+                return;
+            }
+            Integer code = dictionary.get(value);
+            if (code != null) {
+                out.writeVarInt(2 * code + 3);
+            } else if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                code = dictionary.size();
+                dictionary.put(value, code);
+                interned.add(value);
+                out.writeVarInt(2 * code + 2);
+                out.writeString(value);
+            } else {
+                out.writeVarInt(1);
+                out.writeString(value);
+            }
+        }
+
+        private void writeInternedCollection(Collection<String> values) {
+            out.writeVarInt(values.size());
+            for (String value : values) {
+                writeInterned(value);
+            }
+        }
+
+        private void writeMap(Map<String, ?> map) {
+            out.writeVarInt(map.size());
+            for (Map.Entry<String, ?> entry : map.entrySet()) {
+                writeInterned(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void writeValue(Object value) {
+            if (value == null) {
+                out.writeVarInt(VALUE_NULL);
+            } else if (value instanceof String string) {
+                out.writeVarInt(VALUE_STRING);
+                writeInterned(string);
+            } else if (value instanceof Boolean bool) {
+                out.writeVarInt(bool ? VALUE_TRUE : VALUE_FALSE);
+            } else if (value instanceof Integer integer) {
+                out.writeVarInt(VALUE_INT);
+                out.writeVarLong(zigZag(integer));
+            } else if (value instanceof Long number) {
+                out.writeVarInt(VALUE_LONG);
+                out.writeVarLong(zigZag(number));
+            } else if (value instanceof Instant instant) {
+                out.writeVarInt(VALUE_INSTANT);
+                writeInstant(instant);
+            } else if (value instanceof Map<?, ?> map && isStringKeyed(map)) {
+                out.writeVarInt(VALUE_MAP);
+                writeMap((Map<String, ?>) map);
+            } else if (value instanceof Set<?> set && isPlainCollection(set)) {
+                out.writeVarInt(VALUE_SET);
+                writeValues(set);
+            } else if (value instanceof List<?> list && isPlainCollection(list)) {
+                out.writeVarInt(VALUE_LIST);
+                writeValues(list);
+            } else if (value instanceof OAuth2AuthorizationRequest request) {
+                out.writeVarInt(VALUE_AUTHORIZATION_REQUEST);
+                writeAuthorizationRequest(request);
+            } else if (value instanceof UsernamePasswordAuthenticationToken authentication
+                    && isPlainUserAuthentication(authentication)) {
+                out.writeVarInt(VALUE_USER_AUTHENTICATION);
+                writeUserAuthentication(authentication);
+            } else {
+                out.writeVarInt(VALUE_SERIALIZED);
+                out.writeBytes(serialize(value));
+            }
+        }
+
+        private void writeValues(Collection<?> values) {
+            out.writeVarInt(values.size());
+            for (Object element : values) {
+                writeValue(element);
+            }
+        }
+
+        private void writeAuthorizationRequest(OAuth2AuthorizationRequest request) {
+            writeInterned(request.getAuthorizationUri());
+            writeInterned(request.getClientId());
+            writeInterned(request.getRedirectUri());
+            writeInternedCollection(request.getScopes());
+            out.writeString(request.getState());
+            writeMap(request.getAdditionalParameters());
+            writeMap(request.getAttributes());
+            out.writeString(request.getAuthorizationRequestUri());
+        }
+
+        private void writeUserAuthentication(UsernamePasswordAuthenticationToken authentication) {
+            User user = (User) authentication.getPrincipal();
+            out.writeString(user.getUsername());
+            out.writeString(user.getPassword());
+            out.writeVarInt((user.isEnabled() ? 1 : 0)
+                    | (user.isAccountNonExpired() ? 2 : 0)
+                    | (user.isCredentialsNonExpired() ? 4 : 0)
+                    | (user.isAccountNonLocked() ? 8 : 0)
+                    | (authentication.isAuthenticated() ? 16 : 0));
+            writeAuthorities(user.getAuthorities());
+            writeAuthorities(authentication.getAuthorities());
+            out.writeString((String) authentication.getCredentials());
+            if (authentication.getDetails() instanceof WebAuthenticationDetails details) {
+                out.writeVarInt(1);
+                out.writeString(details.getRemoteAddress());
+                out.writeString(details.getSessionId());
+            } else {
+                out.writeVarInt(0);
+            }
+        }
+
+        private void writeAuthorities(Collection<? extends GrantedAuthority> authorities) {
+            out.writeVarInt(authorities.size());
+            for (GrantedAuthority authority : authorities) {
+                writeInterned(authority.getAuthority());
+            }
+        }
+    }
+
+    /**
+     * Stateful decoder; not thread-safe.
+     */
+    public static final class Decoder {
+        private final List<String> dictionary = new ArrayList<>();
+        /**
+         * Registered clients are only referenced by id in an authorization; decoding needs a
+         * {@link RegisteredClient} to start the builder, so a minimal one is kept per id for the
+         * lifetime of the stream, and dropped with its dictionary.
+         */
+        private final Map<String, RegisteredClient> clientReferences = new HashMap<>();
+        private Input in;
+
+        /**
+         * Forgets every interned string and client reference, ready to decode a new stream.
+         */
+        public void reset() {
+            dictionary.clear();
+            clientReferences.clear();
+        }
+
+        /**
+         * Decodes an authorization, resolving interned strings through this decoder's dictionary.
+         *
+         * @param bytes the encoded bytes
+         * @return the decoded authorization
+         */
+        public OAuth2Authorization decode(byte[] bytes) {
+            in = new Input(bytes);
+            int format = in.readVarInt();
+            if (format != FORMAT) {
+                throw new IllegalArgumentException("Unsupported authorization format: " + format);
+            }
+            String id = in.readString();
+            String registeredClientId = readInterned();
+            OAuth2Authorization.Builder builder = OAuth2Authorization
+                    .withRegisteredClient(clientReference(registeredClientId))
+                    .id(id)
+                    .principalName(in.readString())
+                    .authorizationGrantType(new AuthorizationGrantType(readInterned()))
+                    .authorizedScopes(readInternedSet());
+            int tokenCount = in.readVarInt();
+            for (int i = 0; i < tokenCount; i++) {
+                OAuth2Token token = readToken();
+                Map<String, Object> metadata = readMap();
+                builder.token(token, current -> current.putAll(metadata));
+            }
+            Map<String, Object> attributes = readMap();
+            builder.attributes(current -> current.putAll(attributes));
+            return builder.build();
+        }
+
+        private OAuth2Token readToken() {
+            int kind = in.readVarInt();
+            switch (kind) {
+                case TOKEN_ACCESS: {
+                    String value = in.readString();
+                    Instant issuedAt = readInstant();
+                    Instant expiresAt = readInstant();
+                    OAuth2AccessToken.TokenType tokenType = tokenType(readInterned());
+                    return new OAuth2AccessToken(tokenType, value, issuedAt, expiresAt, readInternedSet());
+                }
+                case TOKEN_REFRESH:
+                    return new OAuth2RefreshToken(in.readString(), readInstant(), readInstant());
+                case TOKEN_AUTHORIZATION_CODE:
+                    return new OAuth2AuthorizationCode(in.readString(), readInstant(), readInstant());
+                case TOKEN_ID: {
+                    String value = in.readString();
+                    Instant issuedAt = readInstant();
+                    Instant expiresAt = readInstant();
+                    return new OidcIdToken(value, issuedAt, expiresAt, readMap());
+                }
+                case TOKEN_SERIALIZED:
+                    return (OAuth2Token) deserialize(in.readBytes());
+                default:
+                    throw new IllegalArgumentException("Unknown token kind: " + kind);
+            }
+        }
+
+        private Instant readInstant() {
+            if (in.readVarInt() == 0) {
+                return null;
+            }
+            return Instant.ofEpochSecond(unZigZag(in.readVarLong()), in.readVarInt());
+        }
+
+        private String readInterned() {
+            int reference = in.readVarInt();
+            if (reference == 0) {
+                return null;
+            }
+            if (reference == 1) {
+                return in.readString();
+            }
+            if ((reference & 1) == 0) {
+                int code = (reference - 2) / 2;
+                String value = in.readString();
+                while (dictionary.size() <= code) {
+                    dictionary.add(null);
+                }
+                dictionary.set(code, value);
+                return value;
+            }
+            return dictionary.get((reference - 3) / 2);
+        }
+
+        private Set<String> readInternedSet() {
+            int size = in.readVarInt();
+            Set<String> values = new LinkedHashSet<>(capacity(size));
+            for (int i = 0; i < size; i++) {
+                values.add(readInterned());
+            }
+            return values;
+        }
+
+        private Map<String, Object> readMap() {
+            int size = in.readVarInt();
+            Map<String, Object> map = new LinkedHashMap<>(capacity(size));
+            for (int i = 0; i < size; i++) {
+                String key = readInterned();
+                map.put(key, readValue());
+            }
+            return map;
+        }
+
+        private Object readValue() {
+            int tag = in.readVarInt();
+            switch (tag) {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_STRING:
+                    return readInterned();
+                case VALUE_TRUE:
+                    return Boolean.TRUE;
+                case VALUE_FALSE:
+                    return Boolean.FALSE;
+                case VALUE_INT:
+                    return (int) unZigZag(in.readVarLong());
+                case VALUE_LONG:
+                    return unZigZag(in.readVarLong());
+                case VALUE_INSTANT:
+                    return readInstant();
+                case VALUE_MAP:
+                    return readMap();
+                case VALUE_SET: {
+                    int size = in.readVarInt();
+                    Set<Object> set = new LinkedHashSet<>(capacity(size));
+                    for (int i = 0; i < size; i++) {
+                        set.add(readValue());
+                    }
+                    return set;
+                }
+                case VALUE_LIST: {
+                    int size = in.readVarInt();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case VALUE_AUTHORIZATION_REQUEST:
+                    return readAuthorizationRequest();
+                case VALUE_SERIALIZED:
+                    return deserialize(in.readBytes());
+                case VALUE_USER_AUTHENTICATION:
+                    return readUserAuthentication();
+                default:
+                    throw new IllegalArgumentException("Unknown value tag: " + tag);
+            }
+        }
+
+        private OAuth2AuthorizationRequest readAuthorizationRequest() {
+            return OAuth2AuthorizationRequest.authorizationCode()
+                    .authorizationUri(readInterned())
+                    .clientId(readInterned())
+                    .redirectUri(readInterned())
+                    .scopes(readInternedSet())
+                    .state(in.readString())
+                    .additionalParameters(readMap())
+                    .attributes(readMap())
+                    .authorizationRequestUri(in.readString())
+                    .build();
+        }
+
+        private UsernamePasswordAuthenticationToken readUserAuthentication() {
+            String username = in.readString();
+            String password = in.readString();
+            int flags = in.readVarInt();
+            User user = new User(username, password != null ? password : "", (flags & 1) != 0, (flags & 2) != 0,
+                    (flags & 4) != 0, (flags & 8) != 0, readAuthorities());
+            if (password == null) {
+                user.eraseCredentials();
+            }
+            List<GrantedAuthority> authorities = readAuthorities();
+            String credentials = in.readString();
+            UsernamePasswordAuthenticationToken authentication = (flags & 16) != 0
+                    ? UsernamePasswordAuthenticationToken.authenticated(user, credentials, authorities)
+                    : UsernamePasswordAuthenticationToken.unauthenticated(user, credentials);
+            if (in.readVarInt() == 1) {
+                authentication.setDetails(new WebAuthenticationDetails(in.readString(), in.readString()));
+            }
+            return authentication;
+        }
+
+        private List<GrantedAuthority> readAuthorities() {
+            int size = in.readVarInt();
+            List<GrantedAuthority> authorities = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                authorities.add(new SimpleGrantedAuthority(readInterned()));
+            }
+            return authorities;
+        }
+
+        private RegisteredClient clientReference(String registeredClientId) {
+            return clientReferences.computeIfAbsent(registeredClientId, id -> RegisteredClient.withId(id)
+                    .clientId(id)
+                    .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+                    .build());
+        }
+    }
+
+    private static OAuth2AccessToken.TokenType tokenType(String value) {
+        if (OAuth2AccessToken.TokenType.BEARER.getValue().equalsIgnoreCase(value)) {
+            return OAuth2AccessToken.TokenType.BEARER;
+        }
+        if (OAuth2AccessToken.TokenType.DPOP.getValue().equalsIgnoreCase(value)) {
+            return OAuth2AccessToken.TokenType.DPOP;
+        }
+        throw new IllegalArgumentException("Unknown access token type: " + value);
+    }
+
+    private static boolean isStringKeyed(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPlainCollection(Collection<?> collection) {
+        // Only the JDK collections are rebuilt natively; other implementations (sorted sets,
+        // framework collections) keep their exact type through Java serialization.
+        String name = collection.getClass().getName();
+        return name.startsWith("java.util.") && !(collection instanceof SortedSet);
+    }
+
+    private static boolean isPlainUserAuthentication(UsernamePasswordAuthenticationToken authentication) {
+        Object details = authentication.getDetails();
+        return authentication.getClass() == UsernamePasswordAuthenticationToken.class
+                && authentication.getPrincipal() != null
+                && authentication.getPrincipal().getClass() == User.class
+                && (authentication.getCredentials() == null || authentication.getCredentials() instanceof String)
+                && (details == null || details.getClass() == WebAuthenticationDetails.class)
+                && hasSimpleAuthorities(authentication.getAuthorities())
+                && hasSimpleAuthorities(((User) authentication.getPrincipal()).getAuthorities())
+                && (authentication.isAuthenticated() || authentication.getAuthorities().isEmpty());
+    }
+
+    private static boolean hasSimpleAuthorities(Collection<? extends GrantedAuthority> authorities) {
+        for (GrantedAuthority authority : authorities) {
+            if (authority.getClass() != SimpleGrantedAuthority.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int capacity(int size) {
+        return Math.max(4, (int) (size / 0.75f) + 1);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unable to decode value", e);
+        }
+    }
+
+    /**
+     * Growable byte buffer with variable-length integer support.
+     */
+    private static final class Output {
+        private byte[] buffer = new byte[512];
+        private int position;
+
+        void reset() {
+            position = 0;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            writeRaw(bytes);
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarInt(bytes.length);
+            writeRaw(bytes);
+        }
+
+        private void writeRaw(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    /**
+     * Reader counterpart of {@link Output}.
+     */
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed variable-length integer");
+        }
+
+        String readString() {
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            }
+            String value = new String(buffer, position, length - 1, StandardCharsets.UTF_8);
+            position += length - 1;
+            return value;
+        }
+
+        byte[] readBytes() {
+            int length = readVarInt();
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+    }
+}
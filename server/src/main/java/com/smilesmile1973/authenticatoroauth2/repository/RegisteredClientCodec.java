@@ -0,0 +1,247 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.settings.ClientSettings;
+import org.springframework.security.oauth2.server.authorization.settings.OAuth2TokenFormat;
+import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary codec for {@link RegisteredClient}, used by {@link RegisteredClientStore}.
+ *
+ * <p>Every field of the client is written explicitly, so that a stored client does not depend
+ * on the serialized form of the authorization server classes. The values of the client and
+ * token settings are encoded natively when they are strings, booleans, durations, JWS
+ * algorithms or token formats, and fall back to Java serialization otherwise.</p>
+ *
+ * <p>Record layout: {@code [format][id][clientId][clientIdIssuedAt][clientSecret]
+ * [clientSecretExpiresAt][clientName][authenticationMethods][grantTypes][redirectUris]
+ * [postLogoutRedirectUris][scopes][clientSettings][tokenSettings]}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public final class RegisteredClientCodec {
+    private static final int FORMAT = 1;
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_TRUE = 2;
+    private static final int VALUE_FALSE = 3;
+    private static final int VALUE_DURATION = 4;
+    private static final int VALUE_SIGNATURE_ALGORITHM = 5;
+    private static final int VALUE_MAC_ALGORITHM = 6;
+    private static final int VALUE_TOKEN_FORMAT = 7;
+    private static final int VALUE_SERIALIZED = 8;
+
+    private RegisteredClientCodec() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * @param registeredClient the client to encode
+     * @return the encoded client
+     */
+    public static byte[] encode(RegisteredClient registeredClient) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeUTF(registeredClient.getId());
+            out.writeUTF(registeredClient.getClientId());
+            writeInstant(out, registeredClient.getClientIdIssuedAt());
+            writeString(out, registeredClient.getClientSecret());
+            writeInstant(out, registeredClient.getClientSecretExpiresAt());
+            writeString(out, registeredClient.getClientName());
+            writeStrings(out, registeredClient.getClientAuthenticationMethods().stream()
+                    .map(ClientAuthenticationMethod::getValue).toList());
+            writeStrings(out, registeredClient.getAuthorizationGrantTypes().stream()
+                    .map(AuthorizationGrantType::getValue).toList());
+            writeStrings(out, registeredClient.getRedirectUris());
+            writeStrings(out, registeredClient.getPostLogoutRedirectUris());
+            writeStrings(out, registeredClient.getScopes());
+            writeSettings(out, registeredClient.getClientSettings().getSettings());
+            writeSettings(out, registeredClient.getTokenSettings().getSettings());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode the registered client " + registeredClient.getId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes an encoded client
+     * @return the decoded client
+     * @throws IOException if the bytes are not a supported encoded client
+     */
+    public static RegisteredClient decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int format = in.readUnsignedByte();
+        if (format != FORMAT) {
+            throw new IOException("Unsupported registered client format " + format);
+        }
+        RegisteredClient.Builder builder = RegisteredClient.withId(in.readUTF())
+                .clientId(in.readUTF())
+                .clientIdIssuedAt(readInstant(in))
+                .clientSecret(readString(in))
+                .clientSecretExpiresAt(readInstant(in))
+                .clientName(readString(in));
+        List<String> authenticationMethods = readStrings(in);
+        List<String> grantTypes = readStrings(in);
+        List<String> redirectUris = readStrings(in);
+        List<String> postLogoutRedirectUris = readStrings(in);
+        List<String> scopes = readStrings(in);
+        builder.clientAuthenticationMethods(methods -> authenticationMethods
+                        .forEach(method -> methods.add(new ClientAuthenticationMethod(method))))
+                .authorizationGrantTypes(types -> grantTypes
+                        .forEach(type -> types.add(new AuthorizationGrantType(type))))
+                .redirectUris(uris -> uris.addAll(redirectUris))
+                .postLogoutRedirectUris(uris -> uris.addAll(postLogoutRedirectUris))
+                .scopes(values -> values.addAll(scopes))
+                .clientSettings(ClientSettings.withSettings(readSettings(in)).build())
+                .tokenSettings(TokenSettings.withSettings(readSettings(in)).build());
+        try {
+            return builder.build();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid registered client", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeBoolean(instant != null);
+        if (instant != null) {
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        }
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static void writeSettings(DataOutputStream out, Map<String, Object> settings) throws IOException {
+        out.writeInt(settings.size());
+        for (Map.Entry<String, Object> setting : settings.entrySet()) {
+            out.writeUTF(setting.getKey());
+            writeValue(out, setting.getValue());
+        }
+    }
+
+    private static Map<String, Object> readSettings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> settings = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            settings.put(key, readValue(in));
+        }
+        return settings;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof String string) {
+            out.writeByte(VALUE_STRING);
+            out.writeUTF(string);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(bool ? VALUE_TRUE : VALUE_FALSE);
+        } else if (value instanceof Duration duration) {
+            out.writeByte(VALUE_DURATION);
+            out.writeLong(duration.getSeconds());
+            out.writeInt(duration.getNano());
+        } else if (value instanceof SignatureAlgorithm algorithm) {
+            out.writeByte(VALUE_SIGNATURE_ALGORITHM);
+            out.writeUTF(algorithm.getName());
+        } else if (value instanceof MacAlgorithm algorithm) {
+            out.writeByte(VALUE_MAC_ALGORITHM);
+            out.writeUTF(algorithm.getName());
+        } else if (value instanceof OAuth2TokenFormat tokenFormat) {
+            out.writeByte(VALUE_TOKEN_FORMAT);
+            out.writeUTF(tokenFormat.getValue());
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+                objectOut.writeObject(value);
+            }
+            out.writeByte(VALUE_SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return in.readUTF();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_DURATION:
+                return Duration.ofSeconds(in.readLong(), in.readInt());
+            case VALUE_SIGNATURE_ALGORITHM:
+                return SignatureAlgorithm.from(in.readUTF());
+            case VALUE_MAC_ALGORITHM:
+                return MacAlgorithm.from(in.readUTF());
+            case VALUE_TOKEN_FORMAT:
+                return new OAuth2TokenFormat(in.readUTF());
+            case VALUE_SERIALIZED: {
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                    return objectIn.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unable to decode setting value", e);
+                }
+            }
+            default:
+                throw new IOException("Unknown setting value type " + type);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of the clients registered at runtime through the client registration
+ * endpoint, as opposed to the clients of the XML configuration.
+ *
+ * <p>Every save of a registered client appends its encoded state to {@code clients.log} in
+ * {@code clients.store.path} and forces it to disk before returning, so a registration answered
+ * to a client is never lost. At startup the log is replayed, the last record of each client
+ * winning; when it holds superseded or corrupted records, it is compacted into a new log with one
+ * record per client, written aside and atomically moved in place.</p>
+ *
+ * <p>The log starts with a magic number, followed by records {@code [int length][int crc32]
+ * [byte type][payload]}, where the CRC covers the type and the payload and the payload is
+ * encoded with {@link RegisteredClientCodec}. Replay stops at the first torn or corrupted
+ * record. The log holds client secret hashes: it is only readable by its owner.</p>
+ *
+ * <p>A failed append is cut off the log, so that the next records are never written behind torn
+ * bytes. When even the truncation fails, the next append retries it before writing; a client
+ * whose registration was reported as failed can then only reappear after a restart if the
+ * server stopped before that next append.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class RegisteredClientStore {
+    private static final Logger LOG = LoggerFactory.getLogger(RegisteredClientStore.class);
+    private static final int MAGIC = 0x4F41434C;
+    private static final byte TYPE_PUT = 1;
+    private static final String LOG_FILE = "clients.log";
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private final Path directory;
+    /**
+     * Serializes the appends. A lock rather than {@code synchronized}: the log is forced to disk
+     * while it is held, on the request thread of a registration.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    /**
+     * Size of the log up to the last record successfully appended.
+     */
+    private long committedSize;
+
+    public RegisteredClientStore(@Value("${clients.store.path:./data/clients}") String path) {
+        this.directory = Paths.get(path);
+    }
+
+    /**
+     * Replays the log, compacts it if needed and opens it for appending.
+     *
+     * @return the registered clients, in registration order
+     * @throws IOException if the store directory cannot be read or written
+     */
+    public List<RegisteredClient> load() throws IOException {
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            Files.createDirectories(directory);
+            Path file = directory.resolve(LOG_FILE);
+            Map<String, RegisteredClient> clients = new LinkedHashMap<>();
+            boolean compact = false;
+            if (Files.exists(file)) {
+                long records = replay(file, clients);
+                compact = records != clients.size();
+            }
+            if (compact || !Files.exists(file)) {
+                rewrite(file, clients.values());
+            }
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            committedSize = channel.size();
+            LOG.info("Loaded {} registered clients from {} in {} ms", clients.size(), file,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return new ArrayList<>(clients.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the current state of a registered client and forces it to disk.
+     *
+     * @param registeredClient the registered client
+     * @throws UncheckedIOException if the record cannot be written, in which case it is cut off the log
+     * @throws IllegalStateException if the log has not been loaded
+     */
+    public void append(RegisteredClient registeredClient) {
+        ByteBuffer record = record(RegisteredClientCodec.encode(registeredClient));
+        lock.lock();
+        try {
+            if (channel == null) {
+                throw new IllegalStateException("The registered client store is not loaded");
+            }
+            if (channel.size() != committedSize) {
+                // Torn bytes of a failed append that could not be truncated then.
+                channel.truncate(committedSize);
+            }
+            try {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                truncateFailedAppend();
+                throw e;
+            }
+            committedSize = channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to store the registered client " + registeredClient.getId(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void truncateFailedAppend() {
+        try {
+            channel.truncate(committedSize);
+            channel.force(false);
+        } catch (IOException e) {
+            LOG.warn("Unable to truncate the failed append of the registered client log, retried at the next append", e);
+        }
+    }
+
+    @PreDestroy
+    private void close() throws IOException {
+        lock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of records read; a corrupted log reads one record more than it holds
+     * so that it is compacted
+     */
+    private long replay(Path file, Map<String, RegisteredClient> clients) throws IOException {
+        long count = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a registered client log: " + file);
+                }
+            } catch (EOFException e) {
+                LOG.warn("Empty registered client log {}, rewriting it", file);
+                return 1;
+            }
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return count;
+                }
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    LOG.warn("Corrupted record length in {}, ignoring the remainder of the file", file);
+                    return count + 1;
+                }
+                try {
+                    int checksum = in.readInt();
+                    byte type = in.readByte();
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum || type != TYPE_PUT) {
+                        LOG.warn("Corrupted record in {}, ignoring the remainder of the file", file);
+                        return count + 1;
+                    }
+                    RegisteredClient client = RegisteredClientCodec.decode(payload);
+                    clients.put(client.getId(), client);
+                    count++;
+                } catch (EOFException e) {
+                    LOG.warn("Torn record at the end of {}, ignoring it", file);
+                    return count + 1;
+                }
+            }
+        }
+    }
+
+    private static void rewrite(Path file, Collection<RegisteredClient> clients) throws IOException {
+        Path temporary = file.resolveSibling(LOG_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).putInt(MAGIC).flip();
+            while (magic.hasRemaining()) {
+                out.write(magic);
+            }
+            for (RegisteredClient client : clients) {
+                ByteBuffer record = record(RegisteredClientCodec.encode(client));
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(temporary, PosixFilePermissions.fromString("rw-------"));
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static ByteBuffer record(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(TYPE_PUT);
+        crc.update(payload);
+        return ByteBuffer.allocate(9 + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(TYPE_PUT)
+                .put(payload)
+                .flip();
+    }
+}
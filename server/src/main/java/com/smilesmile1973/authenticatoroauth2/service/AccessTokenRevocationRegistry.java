@@ -0,0 +1,213 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.model.RevocationListDTO;
+import com.smilesmile1973.authenticatoroauth2.model.RevokedTokenDTO;
+import com.smilesmile1973.authenticatoroauth2.util.Constants;
+import com.smilesmile1973.authenticatoroauth2.util.TokenDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Revocation list of the JWT access tokens revoked before their expiry.
+ *
+ * <p>A stateless access token, issued to a client with
+ * {@link Constants#STATELESS_ACCESS_TOKENS_SETTING}, has no stored authorization to remove, and
+ * a resource server validating JWTs locally keeps accepting any access token until it expires.
+ * The {@code jti} of every revoked access token is therefore recorded, as a {@link TokenDigest},
+ * until the token expires: the list only ever holds tokens that would otherwise still be valid,
+ * and expired entries are purged periodically.</p>
+ *
+ * <p>The list is versioned so that resource servers can poll it cheaply: every revocation gets
+ * the next version, and {@link #getRevocations(String, long)} returns only the entries recorded
+ * after the version known by the caller. Purged entries are not reported, since the caller can
+ * drop them itself from their expiry. Versions start over when the server restarts, which
+ * callers detect from the {@linkplain #getEpoch() epoch}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class AccessTokenRevocationRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(AccessTokenRevocationRegistry.class);
+
+    /**
+     * Expiry of each revoked token, by digest of its {@code jti}.
+     */
+    private final ConcurrentHashMap<TokenDigest, Instant> revoked = new ConcurrentHashMap<>();
+    /**
+     * Revoked tokens by version, for the delta updates.
+     */
+    private final ConcurrentSkipListMap<Long, Revocation> revocationsByVersion = new ConcurrentSkipListMap<>();
+    private final String epoch = Long.toHexString(new SecureRandom().nextLong());
+    /**
+     * Version of the last revocation, written after its entry so that a reader never misses an
+     * entry whose version is lower than the version it read.
+     */
+    private volatile long version;
+    @Autowired
+    private JwtDecoder jwtDecoder;
+    @Autowired
+    private RegisteredClientRepository registeredClientRepository;
+    @Autowired
+    private IntrospectionCache introspectionCache;
+
+    /**
+     * Checks whether a registered client issues stateless access tokens.
+     *
+     * @param registeredClient the registered client, may be {@code null}
+     * @return {@code true} if its access tokens are not stored
+     */
+    public static boolean isStateless(RegisteredClient registeredClient) {
+        return registeredClient != null
+                && Boolean.TRUE.equals(registeredClient.getClientSettings().getSetting(
+                Constants.STATELESS_ACCESS_TOKENS_SETTING));
+    }
+
+    /**
+     * Decodes a stateless access token: a JWT signed by this server, not expired, whose audience
+     * is a client issuing stateless access tokens.
+     *
+     * @param token the encoded JWT
+     * @return the decoded token, or {@code null} if the value is not a valid stateless access token
+     */
+    public Jwt resolve(String token) {
+        Jwt jwt;
+        try {
+            jwt = jwtDecoder.decode(token);
+        } catch (JwtException e) {
+            // Not a JWT issued by this server, or already expired.
+            return null;
+        }
+        List<String> audience = jwt.getAudience();
+        if (jwt.getId() == null || jwt.getExpiresAt() == null || audience == null || audience.size() != 1
+                || !isStateless(registeredClientRepository.findByClientId(audience.get(0)))) {
+            return null;
+        }
+        return jwt;
+    }
+
+    /**
+     * Revokes a stateless access token given as an encoded JWT.
+     *
+     * @param token    the encoded JWT
+     * @param clientId the client id the token must have been issued to, or {@code null} for any
+     *                 client issuing stateless access tokens
+     * @return the revoked token, or {@code null} if the value is not a valid stateless access token
+     * of the client
+     */
+    public Jwt revoke(String token, String clientId) {
+        Jwt jwt = resolve(token);
+        if (jwt == null || (clientId != null && !clientId.equals(jwt.getAudience().get(0)))) {
+            return null;
+        }
+        revokeId(jwt.getId(), jwt.getExpiresAt());
+        introspectionCache.invalidateAll(List.of(TokenDigest.of(token)));
+        LOG.info("Stateless access token {} of client {} revoked", jwt.getId(), jwt.getAudience().get(0));
+        return jwt;
+    }
+
+    /**
+     * Records a revoked token until it expires.
+     *
+     * @param jti       the {@code jti} claim of the token
+     * @param expiresAt the expiry of the token
+     */
+    public synchronized void revokeId(String jti, Instant expiresAt) {
+        TokenDigest digest = TokenDigest.of(jti);
+        if (!expiresAt.isAfter(Instant.now()) || revoked.putIfAbsent(digest, expiresAt) != null) {
+            return;
+        }
+        long next = version + 1;
+        revocationsByVersion.put(next, new Revocation(digest, expiresAt));
+        version = next;
+    }
+
+    /**
+     * @return the identifier of this instance of the list, which changes at every restart
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the version of the last revocation, {@code 0} if none
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the revocations recorded after a version known by the caller. The whole list is
+     * returned when the caller knows no version, or a version of another epoch.
+     *
+     * @param sinceEpoch   the epoch known by the caller, or {@code null}
+     * @param sinceVersion the version known by the caller
+     * @return the whole list or the delta since {@code sinceVersion}
+     */
+    public RevocationListDTO getRevocations(String sinceEpoch, long sinceVersion) {
+        long current = version;
+        boolean full = !epoch.equals(sinceEpoch) || sinceVersion <= 0 || sinceVersion > current;
+        Instant now = Instant.now();
+        List<RevokedTokenDTO> entries = new ArrayList<>();
+        for (Revocation revocation : revocationsByVersion.subMap(full ? 0 : sinceVersion, false, current, true)
+                .values()) {
+            if (revocation.expiresAt().isAfter(now)) {
+                RevokedTokenDTO entry = new RevokedTokenDTO();
+                entry.setJti(revocation.digest().toHex());
+                entry.setExp(revocation.expiresAt().getEpochSecond());
+                entries.add(entry);
+            }
+        }
+        RevocationListDTO revocations = new RevocationListDTO();
+        revocations.setEpoch(epoch);
+        revocations.setVersion(current);
+        revocations.setFull(full);
+        revocations.setEntries(entries);
+        return revocations;
+    }
+
+    /**
+     * @param jti the {@code jti} claim of a token
+     * @return {@code true} if the token has been revoked and has not expired yet
+     */
+    public boolean isRevoked(String jti) {
+        Instant expiresAt = revoked.get(TokenDigest.of(jti));
+        return expiresAt != null && expiresAt.isAfter(Instant.now());
+    }
+
+    /**
+     * @return the number of revoked tokens not purged yet
+     */
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * Purges the revoked tokens that have expired on their own.
+     */
+    @Scheduled(fixedDelayString = "${authorization.eviction.interval:PT30S}",
+            initialDelayString = "${authorization.eviction.interval:PT30S}")
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        revocationsByVersion.values().removeIf(revocation -> !revocation.expiresAt().isAfter(now));
+        revoked.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+    }
+
+    private record Revocation(TokenDigest digest, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,192 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Expiry-ordered index of stored OAuth2 authorizations.
+ *
+ * <p>Every tracked authorization owns exactly one {@link Entry} holding the instant at which
+ * its last token expires, or, for an authorization without token yet (a pending authorization
+ * request or consent), the instant at which it is abandoned. Entries are kept in a lock-free skip list ordered by expiry, so
+ * the authorizations due for eviction are always found at the head of the index without
+ * scanning the whole store.</p>
+ *
+ * <p>Re-saving an authorization replaces its entry. An eviction therefore only proceeds if
+ * the entry it read is still the current one (see {@link #removeIfCurrent(Entry)}), which
+ * protects authorizations refreshed while the eviction was running.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public final class AuthorizationExpiryIndex {
+
+    /**
+     * Position of an authorization in the expiry index.
+     *
+     * @param expiresAt       the instant at which the last token of the authorization expires
+     * @param authorizationId the authorization identifier
+     */
+    public record Entry(Instant expiresAt, String authorizationId) {
+    }
+
+    private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::expiresAt)
+            .thenComparing(Entry::authorizationId);
+
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+    private final ConcurrentHashMap<String, Entry> entriesById = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the instant at which an authorization can be evicted, i.e. the latest expiry
+     * of its access token, refresh token, authorization code and ID token.
+     *
+     * @param authorization the authorization
+     * @return the eviction instant, or {@code null} if the authorization carries no token
+     */
+    public static Instant expiresAt(OAuth2Authorization authorization) {
+        Instant result = null;
+        result = latest(result, authorization.getToken(OAuth2AccessToken.class));
+        result = latest(result, authorization.getToken(OAuth2RefreshToken.class));
+        result = latest(result, authorization.getToken(OAuth2AuthorizationCode.class));
+        result = latest(result, authorization.getToken(OidcIdToken.class));
+        return result;
+    }
+
+    private static Instant latest(Instant current, OAuth2Authorization.Token<? extends OAuth2Token> token) {
+        if (token == null || token.getToken().getExpiresAt() == null) {
+            return current;
+        }
+        Instant expiresAt = token.getToken().getExpiresAt();
+        return current == null || expiresAt.isAfter(current) ? expiresAt : current;
+    }
+
+    /**
+     * Tracks or re-tracks an authorization with the given eviction instant.
+     *
+     * @param authorizationId the authorization identifier
+     * @param expiresAt       the eviction instant; {@code null} stops tracking the authorization
+     */
+    public void update(String authorizationId, Instant expiresAt) {
+        if (expiresAt == null) {
+            remove(authorizationId);
+            return;
+        }
+        entriesById.compute(authorizationId, (id, previous) -> {
+            if (previous != null) {
+                entries.remove(previous);
+            }
+            Entry entry = new Entry(expiresAt, id);
+            entries.add(entry);
+            return entry;
+        });
+    }
+
+    /**
+     * @param authorizationId the authorization identifier
+     * @return the eviction instant of the authorization, or {@code null} if it is not tracked
+     */
+    public Instant evictionInstant(String authorizationId) {
+        Entry entry = entriesById.get(authorizationId);
+        return entry != null ? entry.expiresAt() : null;
+    }
+
+    /**
+     * Stops tracking an authorization.
+     *
+     * @param authorizationId the authorization identifier
+     */
+    public void remove(String authorizationId) {
+        Entry previous = entriesById.remove(authorizationId);
+        if (previous != null) {
+            entries.remove(previous);
+        }
+    }
+
+    /**
+     * Stops tracking an authorization only if the given entry is still its current one.
+     *
+     * @param entry the entry previously returned by {@link #due(Instant, int)}
+     * @return {@code true} if the entry was current and has been removed
+     */
+    public boolean removeIfCurrent(Entry entry) {
+        if (entriesById.remove(entry.authorizationId(), entry)) {
+            entries.remove(entry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns, in expiry order, at most {@code limit} entries expiring at or before {@code now}.
+     * The entries are not removed from the index.
+     *
+     * @param now   the reference instant
+     * @param limit the maximum number of entries to return
+     * @return the due entries
+     */
+    public List<Entry> due(Instant now, int limit) {
+        List<Entry> results = new ArrayList<>(Math.min(limit, 256));
+        for (Entry entry : entries) {
+            if (results.size() >= limit || entry.expiresAt().isAfter(now)) {
+                break;
+            }
+            results.add(entry);
+        }
+        return results;
+    }
+
+    /**
+     * Returns a read-only live view, in expiry order, of the entries following {@code cursor}, or
+     * of the entries expiring strictly after {@code from} when no cursor is given.
+     *
+     * @param cursor the last entry of the previous page, or {@code null}
+     * @param from   the instant after which the entries expire, used when {@code cursor} is {@code null}
+     * @return the entries following the cursor or the instant
+     */
+    public NavigableSet<Entry> after(Entry cursor, Instant from) {
+        NavigableSet<Entry> tail = cursor != null
+                ? entries.tailSet(cursor, false)
+                : entries.tailSet(new Entry(from.plusNanos(1), ""), true);
+        return Collections.unmodifiableNavigableSet(tail);
+    }
+
+    /**
+     * Counts the entries expiring at or before {@code now}. The cost is proportional to the
+     * number of due entries, never to the size of the store.
+     *
+     * @param now the reference instant
+     * @return the number of due entries
+     */
+    public long countDue(Instant now) {
+        long count = 0;
+        for (Entry entry : entries) {
+            if (entry.expiresAt().isAfter(now)) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of tracked authorizations.
+     *
+     * @return the number of tracked authorizations
+     */
+    public int size() {
+        return entriesById.size();
+    }
+}
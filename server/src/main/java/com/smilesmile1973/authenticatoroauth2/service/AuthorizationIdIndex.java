@@ -0,0 +1,199 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Thread-safe multi-valued index mapping a key (for example a principal name) to the
+ * identifiers of the OAuth2 authorizations attached to it.
+ *
+ * <p>Each key owns a concurrent set of authorization ids, so adding and removing an id
+ * are constant-time operations. Additions and removals for the same key are executed
+ * atomically through {@link ConcurrentHashMap#compute}, which guarantees that an empty
+ * set is never left behind and that a concurrent add can never be lost because its set
+ * was dropped at the same moment.</p>
+ *
+ * <p>The keys are additionally kept in a sorted, lock-free set so that they can be paged through
+ * with a cursor (the last key of the previous page) without sorting the whole index.</p>
+ *
+ * <p>An index created with sorted ids keeps the ids of each key in a skip list instead of a hash
+ * set. Additions become logarithmic, but the ids of a large key (for example every session of a
+ * registered client) can then be paged through with {@link #idsAfter(String, String)}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public final class AuthorizationIdIndex {
+
+    private final ConcurrentHashMap<String, Ids> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> orderedKeys = new ConcurrentSkipListSet<>();
+    private final boolean sortedIds;
+
+    /**
+     * Creates an index keeping the ids of each key in a hash set.
+     */
+    public AuthorizationIdIndex() {
+        this(false);
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param sortedIds {@code true} to keep the ids of each key sorted, which enables {@link #idsAfter}
+     */
+    public AuthorizationIdIndex(boolean sortedIds) {
+        this.sortedIds = sortedIds;
+    }
+
+    /**
+     * Associates an authorization id with the given key.
+     *
+     * @param key             the index key, ignored if {@code null}
+     * @param authorizationId the authorization identifier
+     * @return {@code true} if the id was not yet associated with the key
+     */
+    public boolean add(String key, String authorizationId) {
+        if (key == null) {
+            return false;
+        }
+        boolean[] added = new boolean[1];
+        index.compute(key, (k, ids) -> {
+            Ids result = ids;
+            if (result == null) {
+                result = new Ids(sortedIds ? new ConcurrentSkipListSet<>() : ConcurrentHashMap.newKeySet());
+                orderedKeys.add(k);
+            }
+            added[0] = result.set.add(authorizationId);
+            if (added[0]) {
+                result.size++;
+            }
+            return result;
+        });
+        return added[0];
+    }
+
+    /**
+     * Removes an authorization id from the given key. The key itself is dropped from the
+     * index as soon as its last authorization id has been removed.
+     *
+     * @param key             the index key, ignored if {@code null}
+     * @param authorizationId the authorization identifier
+     * @return {@code true} if the id was associated with the key
+     */
+    public boolean remove(String key, String authorizationId) {
+        if (key == null) {
+            return false;
+        }
+        boolean[] removed = new boolean[1];
+        index.computeIfPresent(key, (k, ids) -> {
+            removed[0] = ids.set.remove(authorizationId);
+            if (removed[0]) {
+                ids.size--;
+            }
+            if (ids.size == 0) {
+                orderedKeys.remove(k);
+                return null;
+            }
+            return ids;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Returns a read-only live view of the authorization ids associated with the key.
+     *
+     * @param key the index key
+     * @return the associated ids, or an empty set if none
+     */
+    public Set<String> get(String key) {
+        Ids ids = key != null ? index.get(key) : null;
+        return ids != null ? Collections.unmodifiableSet(ids.set) : Collections.emptySet();
+    }
+
+    /**
+     * Returns the number of authorization ids associated with the key, in constant time.
+     *
+     * @param key the index key
+     * @return the number of associated ids
+     */
+    public int count(String key) {
+        Ids ids = key != null ? index.get(key) : null;
+        return ids != null ? ids.size : 0;
+    }
+
+    /**
+     * Returns a read-only live view, in ascending order, of the authorization ids associated with
+     * the key that are strictly greater than {@code cursor}.
+     *
+     * @param key    the index key
+     * @param cursor the last id of the previous page, or {@code null} to start from the first id
+     * @return the ids following the cursor
+     * @throws IllegalStateException if the index was not created with sorted ids
+     */
+    public Set<String> idsAfter(String key, String cursor) {
+        if (!sortedIds) {
+            throw new IllegalStateException("The ids of this index are not sorted");
+        }
+        Ids ids = key != null ? index.get(key) : null;
+        if (ids == null) {
+            return Collections.emptySet();
+        }
+        NavigableSet<String> sorted = (NavigableSet<String>) ids.set;
+        return Collections.unmodifiableSet(cursor != null ? sorted.tailSet(cursor, false) : sorted);
+    }
+
+    /**
+     * Returns a read-only live view, in ascending order, of the keys currently holding at least
+     * one authorization id.
+     *
+     * @return the indexed keys
+     */
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(orderedKeys);
+    }
+
+    /**
+     * Returns, in ascending order, at most {@code limit} keys strictly greater than {@code cursor}.
+     *
+     * @param cursor the last key of the previous page, or {@code null} to start from the first key
+     * @param limit  the maximum number of keys to return
+     * @return the keys of the page
+     */
+    public List<String> keysAfter(String cursor, int limit) {
+        NavigableSet<String> tail = cursor != null ? orderedKeys.tailSet(cursor, false) : orderedKeys;
+        List<String> keys = new ArrayList<>(Math.min(limit, 256));
+        for (String key : tail) {
+            if (keys.size() >= limit) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the number of keys currently holding at least one authorization id.
+     *
+     * @return the number of indexed keys
+     */
+    public int keyCount() {
+        return index.size();
+    }
+
+    /**
+     * Ids of a key with their count, which is only updated inside the atomic map operations.
+     */
+    private static final class Ids {
+        private final Set<String> set;
+        private volatile int size;
+
+        private Ids(Set<String> set) {
+            this.set = set;
+        }
+    }
+}
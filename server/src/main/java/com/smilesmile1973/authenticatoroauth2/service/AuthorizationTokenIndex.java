@@ -0,0 +1,167 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.util.TokenDigest;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2DeviceCode;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.core.OAuth2UserCode;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.endpoint.OidcParameterNames;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index resolving any token value of a stored authorization to the authorization id with a
+ * single hash probe.
+ *
+ * <p>Keys are {@link TokenDigest fixed-size digests} of the token values: the state parameter,
+ * authorization code, access token, ID token, refresh token, user code and device code. When an
+ * authorization is re-saved with new tokens (for example after a refresh), the digests of the
+ * tokens it no longer carries are dropped.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public final class AuthorizationTokenIndex {
+
+    private static final OAuth2TokenType STATE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.STATE);
+    private static final OAuth2TokenType CODE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.CODE);
+    private static final OAuth2TokenType ID_TOKEN_TOKEN_TYPE = new OAuth2TokenType(OidcParameterNames.ID_TOKEN);
+    private static final OAuth2TokenType USER_CODE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.USER_CODE);
+    private static final OAuth2TokenType DEVICE_CODE_TOKEN_TYPE = new OAuth2TokenType(OAuth2ParameterNames.DEVICE_CODE);
+
+    private final ConcurrentHashMap<TokenDigest, String> authorizationIds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<TokenDigest>> digestsByAuthorization = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes every token value of an authorization, replacing the values indexed by a previous save.
+     *
+     * @param authorization the authorization
+     */
+    public void index(OAuth2Authorization authorization) {
+        String authorizationId = authorization.getId();
+        List<TokenDigest> digests = new ArrayList<>(6);
+        for (String tokenValue : tokenValues(authorization)) {
+            TokenDigest digest = TokenDigest.of(tokenValue);
+            digests.add(digest);
+            authorizationIds.put(digest, authorizationId);
+        }
+        List<TokenDigest> previous = digestsByAuthorization.put(authorizationId, digests);
+        if (previous != null) {
+            for (TokenDigest digest : previous) {
+                if (!digests.contains(digest)) {
+                    authorizationIds.remove(digest, authorizationId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every token value of an authorization from the index.
+     *
+     * @param authorizationId the authorization identifier
+     */
+    public void unindex(String authorizationId) {
+        List<TokenDigest> previous = digestsByAuthorization.remove(authorizationId);
+        if (previous != null) {
+            for (TokenDigest digest : previous) {
+                authorizationIds.remove(digest, authorizationId);
+            }
+        }
+    }
+
+    /**
+     * Resolves a token value to the id of the authorization carrying it.
+     *
+     * @param tokenValue the token value
+     * @return the authorization id, or {@code null} if no authorization carries the token
+     */
+    public String find(String tokenValue) {
+        return authorizationIds.get(TokenDigest.of(tokenValue));
+    }
+
+    /**
+     * Returns the digests indexed for an authorization.
+     *
+     * @param authorizationId the authorization identifier
+     * @return the digests, empty if the authorization is not indexed
+     */
+    public List<TokenDigest> digestsOf(String authorizationId) {
+        return digestsByAuthorization.getOrDefault(authorizationId, List.of());
+    }
+
+    /**
+     * Checks that an authorization really carries the token value with the requested type. This
+     * mirrors the matching rules of {@code InMemoryOAuth2AuthorizationService} and also guards
+     * against digest collisions.
+     *
+     * @param authorization the authorization resolved from the index
+     * @param token         the token value
+     * @param tokenType     the token type, or {@code null} to accept any type
+     * @return {@code true} if the authorization carries the token
+     */
+    public static boolean matches(OAuth2Authorization authorization, String token, OAuth2TokenType tokenType) {
+        if (tokenType == null) {
+            return matchesState(authorization, token)
+                    || matchesToken(authorization, token, OAuth2AuthorizationCode.class)
+                    || matchesToken(authorization, token, OAuth2AccessToken.class)
+                    || matchesToken(authorization, token, OidcIdToken.class)
+                    || matchesToken(authorization, token, OAuth2RefreshToken.class)
+                    || matchesToken(authorization, token, OAuth2UserCode.class)
+                    || matchesToken(authorization, token, OAuth2DeviceCode.class);
+        } else if (STATE_TOKEN_TYPE.equals(tokenType)) {
+            return matchesState(authorization, token);
+        } else if (CODE_TOKEN_TYPE.equals(tokenType)) {
+            return matchesToken(authorization, token, OAuth2AuthorizationCode.class);
+        } else if (OAuth2TokenType.ACCESS_TOKEN.equals(tokenType)) {
+            return matchesToken(authorization, token, OAuth2AccessToken.class);
+        } else if (ID_TOKEN_TOKEN_TYPE.equals(tokenType)) {
+            return matchesToken(authorization, token, OidcIdToken.class);
+        } else if (OAuth2TokenType.REFRESH_TOKEN.equals(tokenType)) {
+            return matchesToken(authorization, token, OAuth2RefreshToken.class);
+        } else if (USER_CODE_TOKEN_TYPE.equals(tokenType)) {
+            return matchesToken(authorization, token, OAuth2UserCode.class);
+        } else if (DEVICE_CODE_TOKEN_TYPE.equals(tokenType)) {
+            return matchesToken(authorization, token, OAuth2DeviceCode.class);
+        }
+        return false;
+    }
+
+    private static boolean matchesState(OAuth2Authorization authorization, String token) {
+        return token.equals(authorization.getAttribute(OAuth2ParameterNames.STATE));
+    }
+
+    private static boolean matchesToken(OAuth2Authorization authorization, String token,
+                                        Class<? extends OAuth2Token> tokenClass) {
+        OAuth2Authorization.Token<? extends OAuth2Token> candidate = authorization.getToken(tokenClass);
+        return candidate != null && candidate.getToken().getTokenValue().equals(token);
+    }
+
+    private static List<String> tokenValues(OAuth2Authorization authorization) {
+        List<String> values = new ArrayList<>(6);
+        String state = authorization.getAttribute(OAuth2ParameterNames.STATE);
+        if (state != null) {
+            values.add(state);
+        }
+        addTokenValue(values, authorization.getToken(OAuth2AuthorizationCode.class));
+        addTokenValue(values, authorization.getToken(OAuth2AccessToken.class));
+        addTokenValue(values, authorization.getToken(OidcIdToken.class));
+        addTokenValue(values, authorization.getToken(OAuth2RefreshToken.class));
+        addTokenValue(values, authorization.getToken(OAuth2UserCode.class));
+        addTokenValue(values, authorization.getToken(OAuth2DeviceCode.class));
+        return values;
+    }
+
+    private static void addTokenValue(List<String> values, OAuth2Authorization.Token<? extends OAuth2Token> token) {
+        if (token != null) {
+            values.add(token.getToken().getTokenValue());
+        }
+    }
+}
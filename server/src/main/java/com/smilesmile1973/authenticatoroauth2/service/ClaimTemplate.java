@@ -0,0 +1,175 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.model.ClaimXml;
+import com.smilesmile1973.authenticatoroauth2.model.ClientXml;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.oidc.IdTokenClaimNames;
+import org.springframework.security.oauth2.core.oidc.endpoint.OidcParameterNames;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.token.JwtEncodingContext;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Claims of the JWTs issued to one client, precompiled once when the client is loaded.
+ *
+ * <p>Everything that only depends on the client is resolved at compile time: the ID token time
+ * to live, the static claims and the mapping of user roles to claim values. Applying the
+ * template to a token only fills in the dynamic fields: the issue and expiry instants of ID
+ * tokens and the roles of the authenticated user.</p>
+ *
+ * <p>A static or roles claim named after a registered JWT or OpenID Connect claim ({@code sub},
+ * {@code iss}, {@code aud}, {@code exp}, {@code nonce}...) is ignored with a warning: the
+ * configuration must not be able to override the identity, audience or lifetime of a token.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public final class ClaimTemplate {
+    private static final Logger LOG = LoggerFactory.getLogger(ClaimTemplate.class);
+    private static final String ROLE_PREFIX = "ROLE_";
+    /**
+     * Claims set by the authorization server, which a client configuration cannot override.
+     */
+    private static final Set<String> RESERVED_CLAIMS = Set.of(
+            JwtClaimNames.ISS, JwtClaimNames.SUB, JwtClaimNames.AUD, JwtClaimNames.EXP,
+            JwtClaimNames.NBF, JwtClaimNames.IAT, JwtClaimNames.JTI,
+            IdTokenClaimNames.AUTH_TIME, IdTokenClaimNames.NONCE, IdTokenClaimNames.ACR,
+            IdTokenClaimNames.AMR, IdTokenClaimNames.AZP, IdTokenClaimNames.AT_HASH,
+            IdTokenClaimNames.C_HASH, "sid", "scope", "client_id", "cnf");
+
+    private final String clientId;
+    private final Duration idTokenTimeToLive;
+    private final Map<String, String> staticClaims;
+    private final String rolesClaim;
+    /**
+     * Claim value of each granted authority ({@code ROLE_ADMIN}); authorities without mapping are omitted.
+     */
+    private final Map<String, String> roleValues;
+
+    private ClaimTemplate(String clientId, Duration idTokenTimeToLive, Map<String, String> staticClaims,
+                          String rolesClaim, Map<String, String> roleValues) {
+        this.clientId = clientId;
+        this.idTokenTimeToLive = idTokenTimeToLive;
+        this.staticClaims = staticClaims;
+        this.rolesClaim = rolesClaim;
+        this.roleValues = roleValues;
+    }
+
+    /**
+     * Compiles the template of a client loaded from the XML configuration.
+     *
+     * @param registeredClient the registered client built from the XML configuration
+     * @param clientXml        the XML configuration of the client
+     * @return the template
+     */
+    public static ClaimTemplate compile(RegisteredClient registeredClient, ClientXml clientXml) {
+        Map<String, String> staticClaims = new LinkedHashMap<>();
+        if (clientXml.getClaims() != null) {
+            for (ClaimXml claim : clientXml.getClaims()) {
+                if (claim.getName() == null || claim.getValue() == null) {
+                    continue;
+                }
+                String name = claim.getName().trim();
+                if (RESERVED_CLAIMS.contains(name)) {
+                    LOG.warn("Ignoring the reserved claim '{}' of client {}", name, clientXml.getClientId());
+                } else {
+                    staticClaims.put(name, claim.getValue().trim());
+                }
+            }
+        }
+        Map<String, String> roleValues = null;
+        if (clientXml.getRoleMappings() != null) {
+            roleValues = new LinkedHashMap<>();
+            for (String mapping : clientXml.getRoleMappings().split(",")) {
+                int separator = mapping.indexOf('=');
+                if (separator > 0) {
+                    roleValues.put(ROLE_PREFIX + mapping.substring(0, separator).trim(),
+                            mapping.substring(separator + 1).trim());
+                } else {
+                    LOG.warn("Ignoring malformed role mapping '{}' of client {}", mapping, clientXml.getClientId());
+                }
+            }
+        }
+        String rolesClaim = clientXml.getRolesClaim() != null && !clientXml.getRolesClaim().isBlank()
+                ? clientXml.getRolesClaim().trim() : null;
+        if (rolesClaim != null && RESERVED_CLAIMS.contains(rolesClaim)) {
+            LOG.warn("Ignoring the reserved roles claim '{}' of client {}", rolesClaim, clientXml.getClientId());
+            rolesClaim = null;
+        }
+        return new ClaimTemplate(registeredClient.getClientId(),
+                registeredClient.getTokenSettings().getAccessTokenTimeToLive(),
+                Map.copyOf(staticClaims), rolesClaim, roleValues != null ? Map.copyOf(roleValues) : null);
+    }
+
+    /**
+     * Compiles the default template of a client without claim configuration: ID tokens get the
+     * access token time to live, nothing else is added.
+     *
+     * @param registeredClient the registered client
+     * @return the template
+     */
+    public static ClaimTemplate defaults(RegisteredClient registeredClient) {
+        return new ClaimTemplate(registeredClient.getClientId(),
+                registeredClient.getTokenSettings().getAccessTokenTimeToLive(), Map.of(), null, null);
+    }
+
+    /**
+     * Adds the claims of the template to a token being encoded.
+     *
+     * @param context the JWT encoding context
+     */
+    public void apply(JwtEncodingContext context) {
+        JwtClaimsSet.Builder claims = context.getClaims();
+        if (!staticClaims.isEmpty()) {
+            staticClaims.forEach(claims::claim);
+        }
+        if (rolesClaim != null) {
+            List<String> roles = roles(context.getPrincipal());
+            if (!roles.isEmpty()) {
+                claims.claim(rolesClaim, roles);
+            }
+        }
+        if (OidcParameterNames.ID_TOKEN.equals(context.getTokenType().getValue())) {
+            // The ID token has the same time to live as the access token.
+            Instant issuedAt = Instant.now();
+            claims.issuedAt(issuedAt)
+                    .expiresAt(issuedAt.plus(idTokenTimeToLive));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("ID Token customized for client: {} with TTL: {} seconds",
+                        clientId, idTokenTimeToLive.getSeconds());
+            }
+        }
+    }
+
+    private List<String> roles(Authentication principal) {
+        if (principal == null) {
+            return List.of();
+        }
+        Collection<? extends GrantedAuthority> authorities = principal.getAuthorities();
+        List<String> roles = new ArrayList<>(authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            String name = authority.getAuthority();
+            if (name == null || !name.startsWith(ROLE_PREFIX)) {
+                continue;
+            }
+            String value = roleValues != null ? roleValues.get(name) : name.substring(ROLE_PREFIX.length());
+            if (value != null) {
+                roles.add(value);
+            }
+        }
+        return roles;
+    }
+}
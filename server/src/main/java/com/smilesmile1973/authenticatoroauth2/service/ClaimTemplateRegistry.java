@@ -0,0 +1,65 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the precompiled {@link ClaimTemplate} of each registered client.
+ *
+ * <p>The templates compiled by {@link RegisteredClientLoader} are registered once their clients
+ * have been installed in the repository, at startup and on every reload. A client registered by
+ * other means gets a default template, compiled on first use.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class ClaimTemplateRegistry {
+
+    private final ConcurrentHashMap<String, ClaimTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Registers or replaces the template of a client.
+     *
+     * @param registeredClientId the registered client id
+     * @param template           the compiled template
+     */
+    public void register(String registeredClientId, ClaimTemplate template) {
+        templates.put(registeredClientId, template);
+    }
+
+    /**
+     * Registers or replaces the templates of several clients.
+     *
+     * @param templates the compiled templates, by registered client id
+     */
+    public void registerAll(Map<String, ClaimTemplate> templates) {
+        this.templates.putAll(templates);
+    }
+
+    /**
+     * Drops the template of a client, e.g. when the client is updated or removed.
+     *
+     * @param registeredClientId the registered client id
+     */
+    public void remove(String registeredClientId) {
+        templates.remove(registeredClientId);
+    }
+
+    /**
+     * Returns the template of a client, compiling a default one if none is registered.
+     *
+     * @param registeredClient the registered client
+     * @return the template
+     */
+    public ClaimTemplate get(RegisteredClient registeredClient) {
+        ClaimTemplate template = templates.get(registeredClient.getId());
+        if (template == null) {
+            template = templates.computeIfAbsent(registeredClient.getId(), id -> ClaimTemplate.defaults(registeredClient));
+        }
+        return template;
+    }
+}
@@ -0,0 +1,315 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.model.ClaimXml;
+import com.smilesmile1973.authenticatoroauth2.model.ClientXml;
+import com.smilesmile1973.authenticatoroauth2.model.UserXml;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Compiled binary cache of the parsed {@code users.xml} and {@code clients.xml} entries, so that
+ * a restart with unchanged files skips the XML parsing.
+ *
+ * <p>Each cache file ({@code users.bin}, {@code clients.bin} under {@code config.cache.path})
+ * starts with the SHA-256 digest of the XML file it was compiled from. On load the XML file is
+ * digested (memory-mapped, without parsing it); when the digest matches, the entries are decoded
+ * from the memory-mapped cache file. Otherwise the XML file is parsed and the cache file is
+ * rebuilt, so an edited file is always picked up, including by the hot reload. A missing, stale
+ * or corrupted cache file only costs a parse; it is never an error.</p>
+ *
+ * <p>The cache holds the parsed entries rather than the built users and clients: users and
+ * clients are still built and validated by their loaders from these entries, the same way as
+ * after a parse. Files loaded from the classpath are not cached. The cache files contain the
+ * password hashes and client secrets of the XML files and are only readable by their owner.</p>
+ *
+ * <p>Layout: {@code [magic][format][digest][count][entries]}, strings being written as their
+ * UTF-8 length ({@code -1} for null) followed by their bytes.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class ConfigurationCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationCache.class);
+    private static final int MAGIC = 0x4F414343;
+    /**
+     * Version of the layout, to increase whenever the cached fields of the XML models change.
+     */
+    private static final int FORMAT = 1;
+    private static final int DIGEST_LENGTH = 32;
+    private static final long MAX_MAPPING_SIZE = Integer.MAX_VALUE;
+
+    @Value("${config.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${config.cache.path:./data/config-cache}")
+    private String path;
+
+    /**
+     * Parses the entries of an XML configuration file.
+     *
+     * @param <T> the type of the entries
+     */
+    @FunctionalInterface
+    public interface XmlParser<T> {
+        List<T> parse() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface EntryWriter<T> {
+        void write(DataOutputStream out, T entry) throws IOException;
+    }
+
+    /**
+     * Returns the users of a users file, from the cache when the file is unchanged.
+     *
+     * @param source the users file
+     * @param parser parses the file when the cache cannot be used
+     * @return the users in file order, duplicates included
+     * @throws Exception if the file has to be parsed and cannot be
+     */
+    public List<UserXml> loadUsers(File source, XmlParser<UserXml> parser) throws Exception {
+        return load("users", source, parser, ConfigurationCache::writeUser, ConfigurationCache::readUser);
+    }
+
+    /**
+     * Returns the clients of a clients file, from the cache when the file is unchanged.
+     *
+     * @param source the clients file
+     * @param parser parses the file when the cache cannot be used
+     * @return the clients in file order, duplicates included
+     * @throws Exception if the file has to be parsed and cannot be
+     */
+    public List<ClientXml> loadClients(File source, XmlParser<ClientXml> parser) throws Exception {
+        return load("clients", source, parser, ConfigurationCache::writeClient, ConfigurationCache::readClient);
+    }
+
+    private <T> List<T> load(String name, File source, XmlParser<T> parser, EntryWriter<T> writer,
+                             Function<ByteBuffer, T> reader) throws Exception {
+        if (!enabled || !source.isFile()) {
+            return parser.parse();
+        }
+        long start = System.nanoTime();
+        byte[] digest = digest(source.toPath());
+        Path cacheFile = Paths.get(path).resolve(name + ".bin");
+        List<T> cached = read(cacheFile, digest, reader);
+        if (cached != null) {
+            LOG.info("{} {} loaded from the compiled cache {} in {} ms", cached.size(), name, cacheFile,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return cached;
+        }
+        List<T> parsed = parser.parse();
+        long parsedAt = System.nanoTime();
+        try {
+            write(cacheFile, digest, parsed, writer);
+        } catch (IOException e) {
+            LOG.warn("Unable to write the compiled cache {}, the next start parses {} again", cacheFile, source, e);
+        }
+        LOG.info("{} {} parsed from {} in {} ms, compiled cache {} rebuilt in {} ms", parsed.size(), name, source,
+                TimeUnit.NANOSECONDS.toMillis(parsedAt - start), cacheFile,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parsedAt));
+        return parsed;
+    }
+
+    private static byte[] digest(Path source) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAX_MAPPING_SIZE) {
+                sha256.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAX_MAPPING_SIZE, size - position)));
+            }
+        }
+        return sha256.digest();
+    }
+
+    /**
+     * @return the cached entries, or {@code null} if the cache file is missing, stale or corrupted
+     */
+    private static <T> List<T> read(Path cacheFile, byte[] digest, Function<ByteBuffer, T> reader) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+                LOG.info("Compiled cache {} has an older format, rebuilding it", cacheFile);
+                return null;
+            }
+            byte[] stored = new byte[DIGEST_LENGTH];
+            buffer.get(stored);
+            if (!MessageDigest.isEqual(stored, digest)) {
+                LOG.info("Configuration changed since the compiled cache {} was built, rebuilding it", cacheFile);
+                return null;
+            }
+            int count = buffer.getInt();
+            List<T> entries = new ArrayList<>(Math.min(count, buffer.remaining()));
+            for (int i = 0; i < count; i++) {
+                entries.add(reader.apply(buffer));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("trailing bytes");
+            }
+            return entries;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            LOG.warn("Ignoring the corrupted compiled cache {}: {}", cacheFile, e.toString());
+            return null;
+        }
+    }
+
+    private static <T> void write(Path cacheFile, byte[] digest, List<T> entries, EntryWriter<T> writer)
+            throws IOException {
+        Files.createDirectories(cacheFile.getParent());
+        Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.write(digest);
+            out.writeInt(entries.size());
+            for (T entry : entries) {
+                writer.write(out, entry);
+            }
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(temporary, PosixFilePermissions.fromString("rw-------"));
+        }
+        try {
+            Files.move(temporary, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeUser(DataOutputStream out, UserXml user) throws IOException {
+        writeString(out, user.getUsername());
+        writeString(out, user.getPassword());
+        writeString(out, user.getRoles());
+    }
+
+    private static UserXml readUser(ByteBuffer buffer) {
+        UserXml user = new UserXml();
+        user.setUsername(readString(buffer));
+        user.setPassword(readString(buffer));
+        user.setRoles(readString(buffer));
+        return user;
+    }
+
+    private static void writeClient(DataOutputStream out, ClientXml client) throws IOException {
+        writeString(out, client.getId());
+        writeString(out, client.getClientId());
+        writeString(out, client.getClientSecret());
+        writeString(out, client.getClientName());
+        writeString(out, client.getAuthenticationMethods());
+        writeString(out, client.getGrantTypes());
+        writeString(out, client.getRedirectUris());
+        writeString(out, client.getScopes());
+        writeInteger(out, client.getAccessTokenDuration());
+        writeInteger(out, client.getRefreshTokenDuration());
+        List<ClaimXml> claims = client.getClaims();
+        out.writeInt(claims != null ? claims.size() : -1);
+        if (claims != null) {
+            for (ClaimXml claim : claims) {
+                writeString(out, claim.getName());
+                writeString(out, claim.getValue());
+            }
+        }
+        writeString(out, client.getRolesClaim());
+        writeString(out, client.getRoleMappings());
+        Boolean stateless = client.getStatelessAccessTokens();
+        out.writeByte(stateless == null ? -1 : stateless ? 1 : 0);
+    }
+
+    private static ClientXml readClient(ByteBuffer buffer) {
+        ClientXml client = new ClientXml();
+        client.setId(readString(buffer));
+        client.setClientId(readString(buffer));
+        client.setClientSecret(readString(buffer));
+        client.setClientName(readString(buffer));
+        client.setAuthenticationMethods(readString(buffer));
+        client.setGrantTypes(readString(buffer));
+        client.setRedirectUris(readString(buffer));
+        client.setScopes(readString(buffer));
+        client.setAccessTokenDuration(readInteger(buffer));
+        client.setRefreshTokenDuration(readInteger(buffer));
+        int claimCount = buffer.getInt();
+        if (claimCount >= 0) {
+            List<ClaimXml> claims = new ArrayList<>(Math.min(claimCount, buffer.remaining()));
+            for (int i = 0; i < claimCount; i++) {
+                ClaimXml claim = new ClaimXml();
+                claim.setName(readString(buffer));
+                claim.setValue(readString(buffer));
+                claims.add(claim);
+            }
+            client.setClaims(claims);
+        }
+        client.setRolesClaim(readString(buffer));
+        client.setRoleMappings(readString(buffer));
+        byte stateless = buffer.get();
+        client.setStatelessAccessTokens(stateless < 0 ? null : stateless == 1);
+        return client;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(ByteBuffer buffer) {
+        return buffer.get() != 0 ? buffer.getInt() : null;
+    }
+}
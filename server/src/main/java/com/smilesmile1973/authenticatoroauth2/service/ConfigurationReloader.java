@@ -0,0 +1,181 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.repository.CustomInMemoryRegisteredClientRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads {@code users.xml} and {@code clients.xml} when they change on disk, so that users and
+ * clients can be added without a restart (which would drop every session).
+ *
+ * <p>A daemon thread watches the directories of the two files with a {@link WatchService}. Changes
+ * are debounced ({@code config.reload.debounce}) so that an editor writing a file in several steps
+ * triggers a single reload. Each file is then reparsed and validated off the request path and
+ * swapped in as a new snapshot by {@link CustomUserDetailsService#reload()} or
+ * {@link CustomInMemoryRegisteredClientRepository#replaceAll(List)}; readers never block. The
+ * claim templates of the reloaded clients are only published once the repository accepted them.
+ * A file that cannot be parsed or validated is reported and the current snapshot is kept.</p>
+ *
+ * <p>Only files loaded from the filesystem are watched; files loaded from the classpath cannot
+ * change. Clients registered at runtime through the client registration endpoint are not part of
+ * {@code clients.xml} and are kept. Sessions of a removed client are kept until they expire or are
+ * revoked. The reloader is disabled with {@code config.reload.enabled=false}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class ConfigurationReloader {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationReloader.class);
+
+    @Value("${config.reload.enabled:true}")
+    private boolean enabled;
+    @Value("${config.reload.debounce:PT1S}")
+    private Duration debounce;
+    @Value("${users.config.path:users.xml}")
+    private String usersConfigPath;
+    @Value("${clients.config.path:clients.xml}")
+    private String clientsConfigPath;
+    @Autowired
+    private CustomUserDetailsService customUserDetailsService;
+    @Autowired
+    private CustomInMemoryRegisteredClientRepository registeredClientRepository;
+    @Autowired
+    private RegisteredClientLoader registeredClientLoader;
+    @Autowired
+    private ClaimTemplateRegistry claimTemplateRegistry;
+
+    private WatchService watchService;
+    /**
+     * Reload action of each watched file, by absolute path.
+     */
+    private final Map<Path, Runnable> reloads = new HashMap<>();
+
+    @PostConstruct
+    private void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        watch(usersConfigPath, this::reloadUsers);
+        watch(clientsConfigPath, this::reloadClients);
+        if (reloads.isEmpty()) {
+            LOG.info("No configuration file on the filesystem, hot reload disabled");
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new HashSet<>();
+        for (Path file : reloads.keySet()) {
+            if (directories.add(file.getParent())) {
+                file.getParent().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+        Thread thread = new Thread(this::run, "config-reloader");
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Watching {} for changes", reloads.keySet());
+    }
+
+    @PreDestroy
+    private void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch(String configPath, Runnable reload) {
+        Path file = Paths.get(configPath).toAbsolutePath().normalize();
+        if (Files.isRegularFile(file)) {
+            reloads.put(file, reload);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(watchService.take(), changed);
+                // Wait until the files have been quiet for the debounce delay.
+                WatchKey key;
+                while ((key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changed);
+                }
+                for (Path file : changed) {
+                    reloads.get(file).run();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            LOG.debug("Configuration reloader stopped");
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path name) {
+                Path file = directory.resolve(name);
+                if (reloads.containsKey(file)) {
+                    changed.add(file);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private void reloadUsers() {
+        try {
+            customUserDetailsService.reload();
+        } catch (Exception e) {
+            LOG.error("Invalid users configuration {}, keeping the current users", usersConfigPath, e);
+        }
+    }
+
+    private void reloadClients() {
+        try {
+            List<RegisteredClient> previous = registeredClientRepository.findAllConfigured();
+            RegisteredClientLoader.ClientConfiguration configuration =
+                    registeredClientLoader.loadClientsFromXml(clientsConfigPath);
+            List<RegisteredClient> clients = configuration.clients();
+            registeredClientRepository.replaceAll(clients);
+            claimTemplateRegistry.registerAll(configuration.claimTemplates());
+            Set<String> ids = new HashSet<>();
+            for (RegisteredClient client : clients) {
+                ids.add(client.getId());
+            }
+            for (RegisteredClient client : previous) {
+                if (!ids.contains(client.getId())) {
+                    claimTemplateRegistry.remove(client.getId());
+                    LOG.info("Client {} removed, its sessions are kept until they expire", client.getClientId());
+                }
+            }
+            LOG.info("{} clients reloaded from {}", clients.size(), clientsConfigPath);
+        } catch (Exception e) {
+            LOG.error("Invalid clients configuration {}, keeping the current clients", clientsConfigPath, e);
+        }
+    }
+}
@@ -1,37 +1,56 @@
 package com.smilesmile1973.authenticatoroauth2.service;
 
+import com.smilesmile1973.authenticatoroauth2.model.CursorPageDTO;
+import com.smilesmile1973.authenticatoroauth2.model.PrincipalSessionsDTO;
+import com.smilesmile1973.authenticatoroauth2.model.RevocationResultDTO;
+import com.smilesmile1973.authenticatoroauth2.model.SessionDTO;
+import com.smilesmile1973.authenticatoroauth2.model.SessionEventType;
 import com.smilesmile1973.authenticatoroauth2.model.UserSessionDTO;
 import com.smilesmile1973.authenticatoroauth2.model.UserXml;
+import com.smilesmile1973.authenticatoroauth2.repository.AuthorizationJournal;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
 import org.springframework.security.oauth2.server.authorization.InMemoryOAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
 import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationService;
 import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
- * Custom implementation of {@link OAuth2AuthorizationService} that extends the functionality
- * of {@link InMemoryOAuth2AuthorizationService} by providing additional tracking capabilities
+ * Custom implementation of {@link OAuth2AuthorizationService} that replaces
+ * {@link InMemoryOAuth2AuthorizationService} with additional tracking capabilities
  * for OAuth2 authorizations by principal name.
  *
  * <p>This service maintains an in-memory store of OAuth2 authorizations and provides
  * enhanced logging and the ability to retrieve all authorizations for a specific principal.
- * It uses a concurrent hash map to ensure thread-safety when accessing authorizations
- * by principal name.</p>
+ * It uses an {@link AuthorizationIdIndex} to ensure thread-safety and constant-time
+ * maintenance when accessing authorizations by principal name.</p>
  *
- * <p>The service delegates core authorization operations to Spring Security's
- * {@link InMemoryOAuth2AuthorizationService} while maintaining additional indexing
- * for efficient principal-based lookups.</p>
+ * <p>The authorizations are kept in a map of their own rather than in Spring Security's
+ * {@link InMemoryOAuth2AuthorizationService}, whose {@code findById} falls back to a map of
+ * initialized authorizations that is not cleared when a completed authorization is removed:
+ * a removed authorization would still be found, and journaled as stored.</p>
  *
  * @author smilesmile1973
  * @since 1.0
@@ -40,31 +59,99 @@ import java.util.concurrent.ConcurrentHashMap;
 public class CustomOAuth2AuthorizationService implements OAuth2AuthorizationService {
 
     private static final Logger LOG = LoggerFactory.getLogger(CustomOAuth2AuthorizationService.class);
+    private static final char EXPIRY_CURSOR_SEPARATOR = '/';
     /**
-     * Delegate service that handles the core OAuth2 authorization operations.
+     * Stored authorizations by id. Every change of an authorization is made
+     * inside a {@code compute} on its id, so the changes of one authorization are serialized and
+     * the indexes are always updated and cleared from the state that was actually indexed.
      */
-    private InMemoryOAuth2AuthorizationService delegate;
+    private final ConcurrentHashMap<String, OAuth2Authorization> authorizations = new ConcurrentHashMap<>();
     /**
-     * Thread-safe map that maintains a collection of authorizations indexed by principal name.
+     * Thread-safe index of authorization ids by principal name.
      * This allows for efficient retrieval of all authorizations belonging to a specific user.
      */
-    private final Map<String, List<OAuth2Authorization>> principalAuthorizations = new ConcurrentHashMap<>();
+    private final AuthorizationIdIndex principalAuthorizations = new AuthorizationIdIndex();
+    /**
+     * Thread-safe index of authorization ids by registered client id, with sorted ids for paging.
+     */
+    private final AuthorizationIdIndex clientAuthorizations = new AuthorizationIdIndex(true);
+    /**
+     * Thread-safe index of authorization ids by authorized scope, with sorted ids for paging.
+     */
+    private final AuthorizationIdIndex scopeAuthorizations = new AuthorizationIdIndex(true);
+    /**
+     * Expiry-ordered index used by {@link AuthorizationEvictionTask} to find expired authorizations.
+     */
+    private final AuthorizationExpiryIndex expiryIndex = new AuthorizationExpiryIndex();
+    /**
+     * Index resolving any token value to its authorization with a single hash probe.
+     */
+    private final AuthorizationTokenIndex tokenIndex = new AuthorizationTokenIndex();
     @Autowired
     private CustomUserDetailsService customUserDetailsService;
+    /**
+     * Durable journal of the authorizations, only present when {@code authorization.store.mode=file}.
+     */
+    @Autowired(required = false)
+    private AuthorizationJournal authorizationJournal;
+    @Autowired
+    private SessionEventPublisher sessionEventPublisher;
+    @Autowired
+    private SessionCounters sessionCounters;
+    @Autowired
+    private RegisteredClientRepository registeredClientRepository;
+    @Autowired
+    private AccessTokenRevocationRegistry accessTokenRevocationRegistry;
+    @Autowired
+    private IntrospectionCache introspectionCache;
+    /**
+     * Lifetime of an authorization without token (pending authorization request or consent),
+     * after which an abandoned flow is evicted.
+     */
+    @Value("${authorization.pending-ttl:PT10M}")
+    private Duration pendingTtl;
 
     /**
-     * Initializes the delegate OAuth2 authorization service after bean construction.
-     * This method is automatically called by Spring after dependency injection is complete.
+     * Recovers the authorizations from the journal after bean construction, when the durable
+     * store is enabled. This method is automatically called by Spring after dependency injection
+     * is complete.
+     *
+     * @throws Exception if the journal cannot be recovered
      */
     @PostConstruct
-    private void init() {
-        this.delegate = new InMemoryOAuth2AuthorizationService();
+    private void init() throws Exception {
+        if (this.authorizationJournal != null) {
+            this.authorizationJournal.open(new AuthorizationJournal.Source() {
+                @Override
+                public OAuth2Authorization findById(String id) {
+                    return authorizations.get(id);
+                }
+
+                @Override
+                public void forEach(Consumer<OAuth2Authorization> action) {
+                    forEachAuthorization(action);
+                }
+            }, new AuthorizationJournal.RecoveryHandler() {
+                @Override
+                public void restore(OAuth2Authorization authorization) {
+                    restoreAuthorization(authorization);
+                }
+
+                @Override
+                public void restoreRemoval(String authorizationId) {
+                    OAuth2Authorization authorization = authorizations.remove(authorizationId);
+                    if (authorization != null) {
+                        unindex(authorization);
+                    }
+                }
+            });
+        }
     }
 
     /**
      * Saves an OAuth2 authorization to the store and indexes it by principal name.
      *
-     * <p>This method delegates the save operation to the underlying service and
+     * <p>This method stores the authorization by id and
      * additionally maintains a mapping of authorizations by principal name for
      * efficient lookups. Logging is performed to track authorization creation
      * and refresh token generation.</p>
@@ -75,10 +162,31 @@ public class CustomOAuth2AuthorizationService implements OAuth2AuthorizationServ
     @Override
     public void save(OAuth2Authorization authorization) {
         Assert.notNull(authorization, "authorization cannot be null");
-        delegate.save(authorization);
-        principalAuthorizations.computeIfAbsent(authorization.getPrincipalName(), k -> new ArrayList<>());
-        if (!principalAuthorizations.get(authorization.getPrincipalName()).contains(authorization)) {
-            principalAuthorizations.get(authorization.getPrincipalName()).add(authorization);
+        OAuth2Authorization[] previousHolder = new OAuth2Authorization[1];
+        OAuth2Authorization saved = authorizations.compute(authorization.getId(), (id, stored) -> {
+            if (stored == null && isStatelessAccessToken(authorization)) {
+                return null;
+            }
+            if (stored != null) {
+                // Refreshed or revoked tokens must not be introspected from the cache any more.
+                introspectionCache.invalidateAll(tokenIndex.digestsOf(id));
+            }
+            index(stored, authorization);
+            previousHolder[0] = stored;
+            return authorization;
+        });
+        if (saved == null) {
+            LOG.debug("Stateless access token issued to client {}, authorization not stored",
+                    authorization.getRegisteredClientId());
+            return;
+        }
+        OAuth2Authorization previous = previousHolder[0];
+        if (previous != null && isAccessTokenInvalidated(previous, authorization)) {
+            addToRevocationList(authorization.getAccessToken());
+        }
+        journal(authorization.getId());
+        if (sessionEventPublisher.hasSubscribers()) {
+            publishSaveEvent(previous, authorization);
         }
         LOG.info("Saved authorization for principal: {}", authorization.getPrincipalName());
         if (authorization.getRefreshToken() != null) {
@@ -88,10 +196,29 @@ public class CustomOAuth2AuthorizationService implements OAuth2AuthorizationServ
         }
     }
 
+    /**
+     * Checks whether a new authorization only carries an access token of a client issuing
+     * stateless access tokens. Such an authorization is never read back by the authorization
+     * server: the JWT is self-contained, and revocation and introspection of the token are handled
+     * by the {@link AccessTokenRevocationRegistry}. An authorization carrying a refresh token, an
+     * authorization code or a pending authorization request is always stored.
+     *
+     * @param authorization the authorization about to be saved for the first time
+     * @return {@code true} if the authorization does not need to be stored
+     */
+    private boolean isStatelessAccessToken(OAuth2Authorization authorization) {
+        return authorization.getAccessToken() != null
+                && authorization.getRefreshToken() == null
+                && authorization.getToken(OAuth2AuthorizationCode.class) == null
+                && authorization.getAttribute(OAuth2ParameterNames.STATE) == null
+                && AccessTokenRevocationRegistry.isStateless(
+                registeredClientRepository.findById(authorization.getRegisteredClientId()));
+    }
+
     /**
      * Removes an OAuth2 authorization from the store and cleans up the principal index.
      *
-     * <p>This method delegates the removal operation to the underlying service and
+     * <p>This method removes the stored state of the authorization, whatever the copy given, and
      * removes the authorization from the principal-based index. If no more authorizations
      * exist for the principal, the principal entry is completely removed from the index.
      * Logging is performed to track authorization removal and refresh token revocation.</p>
@@ -102,14 +229,345 @@ public class CustomOAuth2AuthorizationService implements OAuth2AuthorizationServ
     @Override
     public void remove(OAuth2Authorization authorization) {
         Assert.notNull(authorization, "authorization cannot be null");
-        delegate.remove(authorization);
-        this.principalAuthorizations.remove(authorization.getId(), authorization);
+        if (!revoke(authorization)) {
+            // Never stored, e.g. the authorization of a stateless access token: nothing to journal.
+            return;
+        }
+        journal(authorization.getId());
         LOG.debug("Removed authorization for principal: {}", authorization.getPrincipalName());
         if (authorization.getRefreshToken() != null) {
             LOG.info("Refresh token revoked for principal: {}", authorization.getPrincipalName());
         }
     }
 
+    /**
+     * Evicts the authorization referenced by an expiry index entry, provided the entry is
+     * still current, i.e. the authorization has not been re-saved since the entry was read.
+     *
+     * @param entry the due entry returned by the expiry index
+     * @return {@code true} if an authorization was evicted
+     */
+    boolean evict(AuthorizationExpiryIndex.Entry entry) {
+        OAuth2Authorization[] evictedHolder = new OAuth2Authorization[1];
+        authorizations.computeIfPresent(entry.authorizationId(), (id, stored) -> {
+            if (!expiryIndex.removeIfCurrent(entry)) {
+                return stored;
+            }
+            removeFromIndexes(stored);
+            evictedHolder[0] = stored;
+            return null;
+        });
+        OAuth2Authorization authorization = evictedHolder[0];
+        if (authorization == null) {
+            expiryIndex.removeIfCurrent(entry);
+            return false;
+        }
+        journal(authorization.getId());
+        sessionEventPublisher.publish(SessionEventType.EXPIRED, authorization);
+        LOG.debug("Evicted expired authorization {} for principal: {}",
+                authorization.getId(), authorization.getPrincipalName());
+        return true;
+    }
+
+    /**
+     * Revokes every authorization of a principal.
+     *
+     * @param principalName the principal name
+     * @return the outcome for each authorization of the principal
+     */
+    public List<RevocationResultDTO> revokeByPrincipalName(String principalName) {
+        return revokeAll(findByPrincipalName(principalName));
+    }
+
+    /**
+     * Revokes every authorization granted to a registered client.
+     *
+     * @param registeredClientId the registered client id (not the OAuth2 client id)
+     * @return the outcome for each authorization of the client
+     */
+    public List<RevocationResultDTO> revokeByRegisteredClientId(String registeredClientId) {
+        return revokeAll(findByRegisteredClientId(registeredClientId));
+    }
+
+    /**
+     * Revokes the authorizations carrying the given token values, whatever their type. Each
+     * token is resolved with a single probe of the token index.
+     *
+     * @param tokens the token values
+     * @return the outcome for each token, in the order of the submitted tokens
+     */
+    public List<RevocationResultDTO> revokeTokens(List<String> tokens) {
+        List<RevocationResultDTO> results = new ArrayList<>(tokens.size());
+        List<String> revokedIds = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            OAuth2Authorization authorization = StringUtils.hasText(token) ? findByToken(token, null) : null;
+            RevocationResultDTO result;
+            // A token without authorization may be a stateless access token.
+            Jwt statelessToken = authorization == null && StringUtils.hasText(token)
+                    ? accessTokenRevocationRegistry.revoke(token, null) : null;
+            if (authorization != null && revoke(authorization)) {
+                revokedIds.add(authorization.getId());
+                result = toRevocationResult(authorization, RevocationResultDTO.Status.REVOKED);
+            } else if (statelessToken != null) {
+                result = new RevocationResultDTO();
+                result.setPrincipalName(statelessToken.getSubject());
+                result.setStatus(RevocationResultDTO.Status.REVOKED);
+            } else {
+                result = new RevocationResultDTO();
+                result.setStatus(RevocationResultDTO.Status.NOT_FOUND);
+            }
+            result.setPosition(i);
+            results.add(result);
+        }
+        journalAll(revokedIds);
+        LOG.info("Bulk revocation of {} tokens, {} authorizations revoked", tokens.size(), revokedIds.size());
+        return results;
+    }
+
+    private List<RevocationResultDTO> revokeAll(List<OAuth2Authorization> authorizations) {
+        List<RevocationResultDTO> results = new ArrayList<>(authorizations.size());
+        List<String> revokedIds = new ArrayList<>(authorizations.size());
+        for (OAuth2Authorization authorization : authorizations) {
+            boolean revoked = revoke(authorization);
+            if (revoked) {
+                revokedIds.add(authorization.getId());
+            }
+            results.add(toRevocationResult(authorization, revoked
+                    ? RevocationResultDTO.Status.REVOKED : RevocationResultDTO.Status.NOT_FOUND));
+        }
+        journalAll(revokedIds);
+        LOG.info("Bulk revocation of {} authorizations", revokedIds.size());
+        return results;
+    }
+
+    /**
+     * Removes an authorization from the store and every index and publishes its revocation,
+     * without journaling it.
+     *
+     * @param authorization the authorization
+     * @return {@code false} if the authorization had already been removed
+     */
+    private boolean revoke(OAuth2Authorization authorization) {
+        // The stored state is unindexed, not the given one, which may be a stale copy.
+        OAuth2Authorization[] revokedHolder = new OAuth2Authorization[1];
+        authorizations.computeIfPresent(authorization.getId(), (id, stored) -> {
+            unindex(stored);
+            revokedHolder[0] = stored;
+            return null;
+        });
+        OAuth2Authorization revoked = revokedHolder[0];
+        if (revoked == null) {
+            return false;
+        }
+        addToRevocationList(revoked.getAccessToken());
+        sessionEventPublisher.publish(SessionEventType.REVOKED, revoked);
+        return true;
+    }
+
+    private static boolean isAccessTokenInvalidated(OAuth2Authorization previous, OAuth2Authorization authorization) {
+        OAuth2Authorization.Token<OAuth2AccessToken> accessToken = authorization.getAccessToken();
+        OAuth2Authorization.Token<OAuth2AccessToken> previousAccessToken = previous.getAccessToken();
+        return accessToken != null && previousAccessToken != null && accessToken.isInvalidated()
+                && !previousAccessToken.isInvalidated()
+                && previousAccessToken.getToken().getTokenValue().equals(accessToken.getToken().getTokenValue());
+    }
+
+    /**
+     * Adds a revoked JWT access token to the revocation list published to the resource servers,
+     * which would otherwise keep accepting it until it expires. Opaque access tokens are not
+     * listed: they can only be validated by introspection, which already reports them inactive.
+     *
+     * @param accessToken the access token of a revoked authorization, may be {@code null}
+     */
+    private void addToRevocationList(OAuth2Authorization.Token<OAuth2AccessToken> accessToken) {
+        if (accessToken == null || accessToken.getClaims() == null || accessToken.getToken().getExpiresAt() == null) {
+            return;
+        }
+        Object jti = accessToken.getClaims().get(JwtClaimNames.JTI);
+        if (jti != null) {
+            accessTokenRevocationRegistry.revokeId(jti.toString(), accessToken.getToken().getExpiresAt());
+        }
+    }
+
+    private static RevocationResultDTO toRevocationResult(OAuth2Authorization authorization,
+                                                          RevocationResultDTO.Status status) {
+        RevocationResultDTO result = new RevocationResultDTO();
+        result.setAuthorizationId(authorization.getId());
+        result.setPrincipalName(authorization.getPrincipalName());
+        result.setRegisteredClientId(authorization.getRegisteredClientId());
+        result.setStatus(status);
+        return result;
+    }
+
+    /**
+     * Publishes the session event matching a save: {@code CREATED} when the first access token
+     * is issued, {@code REFRESHED} when the access token changes and {@code REVOKED} when a
+     * token has just been invalidated.
+     *
+     * @param previous      the previously stored state, or {@code null}
+     * @param authorization the saved state
+     */
+    private void publishSaveEvent(OAuth2Authorization previous, OAuth2Authorization authorization) {
+        OAuth2Authorization.Token<OAuth2AccessToken> accessToken = authorization.getAccessToken();
+        OAuth2Authorization.Token<OAuth2AccessToken> previousAccessToken =
+                previous != null ? previous.getAccessToken() : null;
+        if (accessToken == null) {
+            return;
+        }
+        if (previousAccessToken == null) {
+            sessionEventPublisher.publish(SessionEventType.CREATED, authorization);
+        } else if (!previousAccessToken.getToken().getTokenValue().equals(accessToken.getToken().getTokenValue())) {
+            sessionEventPublisher.publish(SessionEventType.REFRESHED, authorization);
+        } else if (accessToken.isInvalidated() && !previousAccessToken.isInvalidated()) {
+            sessionEventPublisher.publish(SessionEventType.REVOKED, authorization);
+        }
+    }
+
+    /**
+     * Stores an authorization in every index.
+     *
+     * @param previous      the previously stored state of the authorization, or {@code null}
+     * @param authorization the authorization
+     */
+    private void index(OAuth2Authorization previous, OAuth2Authorization authorization) {
+        String authorizationId = authorization.getId();
+        principalAuthorizations.add(authorization.getPrincipalName(), authorizationId);
+        // Only an authorization holding an access token counts as a session, not a pending flow.
+        boolean session = authorization.getAccessToken() != null;
+        boolean previousSession = previous != null && previous.getAccessToken() != null;
+        if (session && !previousSession) {
+            sessionCounters.increment(authorization.getPrincipalName(), authorization.getRegisteredClientId());
+        } else if (!session && previousSession) {
+            sessionCounters.decrement(previous.getPrincipalName(), previous.getRegisteredClientId());
+        }
+        clientAuthorizations.add(authorization.getRegisteredClientId(), authorizationId);
+        for (String scope : authorization.getAuthorizedScopes()) {
+            scopeAuthorizations.add(scope, authorizationId);
+        }
+        if (previous != null) {
+            for (String scope : previous.getAuthorizedScopes()) {
+                if (!authorization.getAuthorizedScopes().contains(scope)) {
+                    scopeAuthorizations.remove(scope, authorizationId);
+                }
+            }
+        }
+        expiryIndex.update(authorizationId, evictionInstant(previous, authorization));
+        tokenIndex.index(authorization);
+    }
+
+    /**
+     * Computes when an authorization can be evicted: when its last token expires or, while it
+     * has no token, {@code authorization.pending-ttl} after it was first stored without token.
+     *
+     * @param previous      the previously stored state of the authorization, or {@code null}
+     * @param authorization the authorization
+     * @return the eviction instant
+     */
+    private Instant evictionInstant(OAuth2Authorization previous, OAuth2Authorization authorization) {
+        Instant expiresAt = AuthorizationExpiryIndex.expiresAt(authorization);
+        if (expiresAt != null) {
+            return expiresAt;
+        }
+        if (previous != null && AuthorizationExpiryIndex.expiresAt(previous) == null) {
+            Instant pendingSince = expiryIndex.evictionInstant(authorization.getId());
+            if (pendingSince != null) {
+                return pendingSince;
+            }
+        }
+        return Instant.now().plus(pendingTtl);
+    }
+
+    /**
+     * Removes an authorization from every index.
+     *
+     * @param authorization the authorization
+     */
+    private void unindex(OAuth2Authorization authorization) {
+        removeFromIndexes(authorization);
+        expiryIndex.remove(authorization.getId());
+    }
+
+    /**
+     * Removes an authorization from every index but the expiry index.
+     *
+     * @param authorization the authorization
+     */
+    private void removeFromIndexes(OAuth2Authorization authorization) {
+        String authorizationId = authorization.getId();
+        principalAuthorizations.remove(authorization.getPrincipalName(), authorizationId);
+        if (authorization.getAccessToken() != null) {
+            sessionCounters.decrement(authorization.getPrincipalName(), authorization.getRegisteredClientId());
+        }
+        clientAuthorizations.remove(authorization.getRegisteredClientId(), authorizationId);
+        for (String scope : authorization.getAuthorizedScopes()) {
+            scopeAuthorizations.remove(scope, authorizationId);
+        }
+        introspectionCache.invalidateAll(tokenIndex.digestsOf(authorizationId));
+        tokenIndex.unindex(authorizationId);
+    }
+
+    /**
+     * Records a change of the authorization in the durable journal, if enabled.
+     *
+     * @param authorizationId the identifier of the changed authorization
+     */
+    private void journal(String authorizationId) {
+        if (authorizationJournal != null) {
+            authorizationJournal.append(authorizationId);
+        }
+    }
+
+    /**
+     * Records a batch of changes in the durable journal, if enabled, waiting once for the batch.
+     *
+     * @param authorizationIds the identifiers of the changed authorizations
+     */
+    private void journalAll(List<String> authorizationIds) {
+        if (authorizationJournal != null && !authorizationIds.isEmpty()) {
+            authorizationJournal.appendAll(authorizationIds);
+        }
+    }
+
+    /**
+     * Restores an authorization replayed from the journal, skipping it if it has already expired.
+     *
+     * @param authorization the recovered authorization
+     */
+    private void restoreAuthorization(OAuth2Authorization authorization) {
+        Instant expiresAt = AuthorizationExpiryIndex.expiresAt(authorization);
+        if (expiresAt != null && !expiresAt.isAfter(Instant.now())) {
+            OAuth2Authorization previous = authorizations.remove(authorization.getId());
+            if (previous != null) {
+                unindex(previous);
+            }
+            return;
+        }
+        index(authorizations.put(authorization.getId(), authorization), authorization);
+    }
+
+    /**
+     * Visits every stored authorization.
+     *
+     * @param action the visitor
+     */
+    private void forEachAuthorization(Consumer<OAuth2Authorization> action) {
+        for (String principalName : principalAuthorizations.keys()) {
+            for (OAuth2Authorization authorization : findByPrincipalName(principalName)) {
+                action.accept(authorization);
+            }
+        }
+    }
+
+    /**
+     * Returns the expiry index maintained alongside the stored authorizations.
+     *
+     * @return the expiry index
+     */
+    AuthorizationExpiryIndex getExpiryIndex() {
+        return expiryIndex;
+    }
+
     /**
      * Finds an OAuth2 authorization by its unique identifier.
      *
@@ -118,23 +576,158 @@ public class CustomOAuth2AuthorizationService implements OAuth2AuthorizationServ
      */
     @Override
     public OAuth2Authorization findById(String id) {
-        return delegate.findById(id);
+        return authorizations.get(id);
     }
 
     /**
      * Finds an OAuth2 authorization by token value and token type.
      *
+     * <p>The token is resolved through the token index with a single hash probe, whatever the
+     * number of stored authorizations, instead of scanning the stored authorizations.</p>
+     *
      * @param token     the token value to search for
-     * @param tokenType the type of token (access token, refresh token, etc.)
+     * @param tokenType the type of token (access token, refresh token, etc.), or {@code null} for any type
      * @return the OAuth2 authorization containing the specified token if found, null otherwise
+     * @throws IllegalArgumentException if token is empty
      */
     @Override
     public OAuth2Authorization findByToken(String token, OAuth2TokenType tokenType) {
-        return delegate.findByToken(token, tokenType);
+        Assert.hasText(token, "token cannot be empty");
+        String authorizationId = tokenIndex.find(token);
+        if (authorizationId == null) {
+            return null;
+        }
+        OAuth2Authorization authorization = authorizations.get(authorizationId);
+        if (authorization == null || !AuthorizationTokenIndex.matches(authorization, token, tokenType)) {
+            return null;
+        }
+        return authorization;
     }
 
+    /**
+     * Finds all OAuth2 authorizations currently stored for a principal.
+     *
+     * @param principalName the principal name
+     * @return the authorizations of the principal, empty if none
+     */
     public List<OAuth2Authorization> findByPrincipalName(String principalName) {
-        return principalAuthorizations.get(principalName);
+        List<OAuth2Authorization> results = new ArrayList<>();
+        for (String authorizationId : principalAuthorizations.get(principalName)) {
+            OAuth2Authorization authorization = authorizations.get(authorizationId);
+            if (authorization != null) {
+                results.add(authorization);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds all OAuth2 authorizations currently stored for a registered client.
+     *
+     * @param registeredClientId the registered client id (not the OAuth2 client id)
+     * @return the authorizations of the client, empty if none
+     */
+    public List<OAuth2Authorization> findByRegisteredClientId(String registeredClientId) {
+        List<OAuth2Authorization> results = new ArrayList<>();
+        for (String authorizationId : clientAuthorizations.get(registeredClientId)) {
+            OAuth2Authorization authorization = authorizations.get(authorizationId);
+            if (authorization != null) {
+                results.add(authorization);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns one page of the active sessions matching every given filter.
+     *
+     * <p>When a registered client id or a scope is given, the smallest of the matching client and
+     * scope index entries drives the query and sessions are returned in authorization id order.
+     * Otherwise the expiry index drives the query and sessions are returned in expiry order, so a
+     * query on {@code expiresWithin} alone only visits the sessions expiring in the window. The
+     * remaining filters are checked on each candidate. A session expires when its last token
+     * (access, refresh, authorization code or ID token) expires.</p>
+     *
+     * @param registeredClientId the registered client id, or {@code null} for any client
+     * @param scope              an authorized scope, or {@code null} for any scope
+     * @param expiresWithin      the window in which the sessions expire, or {@code null} for any expiry
+     * @param cursor             the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit              the maximum number of sessions in the page
+     * @return the page, whose next cursor is {@code null} on the last page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public CursorPageDTO<SessionDTO> querySessions(String registeredClientId, String scope, Duration expiresWithin,
+                                                   String cursor, int limit) {
+        Instant now = Instant.now();
+        Instant expiresBefore = expiresWithin != null ? now.plus(expiresWithin) : null;
+        Predicate<OAuth2Authorization> filter = authorization -> {
+            Instant expiresAt = AuthorizationExpiryIndex.expiresAt(authorization);
+            return (registeredClientId == null || registeredClientId.equals(authorization.getRegisteredClientId()))
+                    && (scope == null || authorization.getAuthorizedScopes().contains(scope))
+                    && (expiresAt == null ? expiresBefore == null
+                    : expiresAt.isAfter(now) && (expiresBefore == null || !expiresAt.isAfter(expiresBefore)));
+        };
+        AuthorizationIdIndex drivingIndex = null;
+        String drivingKey = null;
+        if (registeredClientId != null) {
+            drivingIndex = clientAuthorizations;
+            drivingKey = registeredClientId;
+        }
+        if (scope != null && (drivingIndex == null
+                || scopeAuthorizations.count(scope) < clientAuthorizations.count(registeredClientId))) {
+            drivingIndex = scopeAuthorizations;
+            drivingKey = scope;
+        }
+        CursorPageDTO<SessionDTO> page = new CursorPageDTO<>();
+        if (drivingIndex != null) {
+            String lastId = null;
+            for (String authorizationId : drivingIndex.idsAfter(drivingKey, cursor)) {
+                OAuth2Authorization authorization = authorizations.get(authorizationId);
+                if (authorization == null || !filter.test(authorization)) {
+                    continue;
+                }
+                if (page.getItems().size() == limit) {
+                    page.setNextCursor(lastId);
+                    break;
+                }
+                page.getItems().add(toSessionDTO(authorization));
+                lastId = authorizationId;
+            }
+        } else {
+            AuthorizationExpiryIndex.Entry lastEntry = null;
+            for (AuthorizationExpiryIndex.Entry entry : expiryIndex.after(parseExpiryCursor(cursor), now)) {
+                if (expiresBefore != null && entry.expiresAt().isAfter(expiresBefore)) {
+                    break;
+                }
+                OAuth2Authorization authorization = authorizations.get(entry.authorizationId());
+                if (authorization == null || !filter.test(authorization)) {
+                    continue;
+                }
+                if (page.getItems().size() == limit) {
+                    page.setNextCursor(lastEntry.expiresAt().toString() + EXPIRY_CURSOR_SEPARATOR + lastEntry.authorizationId());
+                    break;
+                }
+                page.getItems().add(toSessionDTO(authorization));
+                lastEntry = entry;
+            }
+        }
+        return page;
+    }
+
+    private static AuthorizationExpiryIndex.Entry parseExpiryCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        int separator = cursor.indexOf(EXPIRY_CURSOR_SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            return new AuthorizationExpiryIndex.Entry(Instant.parse(cursor.substring(0, separator)),
+                    cursor.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
     }
 
     public List<UserSessionDTO> getUsersSession() {
@@ -150,6 +743,77 @@ public class CustomOAuth2AuthorizationService implements OAuth2AuthorizationServ
         return usersSessions;
     }
 
+    /**
+     * Returns one page of the principals holding at least one session, in principal name order.
+     *
+     * <p>Only principals present in the principal index are visited, and sessions are projected
+     * as {@link SessionDTO} without token values.</p>
+     *
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit  the maximum number of principals in the page
+     * @return the page, whose next cursor is {@code null} on the last page
+     */
+    public CursorPageDTO<PrincipalSessionsDTO> getUsersSessionPage(String cursor, int limit) {
+        CursorPageDTO<PrincipalSessionsDTO> page = new CursorPageDTO<>();
+        List<String> principalNames = principalAuthorizations.keysAfter(cursor, limit + 1);
+        int count = Math.min(limit, principalNames.size());
+        for (int i = 0; i < count; i++) {
+            PrincipalSessionsDTO principalSessions = getPrincipalSessions(principalNames.get(i));
+            if (!principalSessions.getSessions().isEmpty()) {
+                page.getItems().add(principalSessions);
+            }
+        }
+        if (principalNames.size() > limit) {
+            page.setNextCursor(principalNames.get(limit - 1));
+        }
+        return page;
+    }
+
+    /**
+     * Visits, in principal name order, every principal holding at least one session.
+     *
+     * @param action the visitor
+     */
+    public void forEachUserSession(Consumer<PrincipalSessionsDTO> action) {
+        for (String principalName : principalAuthorizations.keys()) {
+            PrincipalSessionsDTO principalSessions = getPrincipalSessions(principalName);
+            if (!principalSessions.getSessions().isEmpty()) {
+                action.accept(principalSessions);
+            }
+        }
+    }
+
+    private PrincipalSessionsDTO getPrincipalSessions(String principalName) {
+        PrincipalSessionsDTO result = new PrincipalSessionsDTO();
+        result.setPrincipalName(principalName);
+        for (OAuth2Authorization authorization : findByPrincipalName(principalName)) {
+            result.getSessions().add(toSessionDTO(authorization));
+        }
+        return result;
+    }
+
+    /**
+     * Projects an authorization on a {@link SessionDTO}, leaving out every token value.
+     *
+     * @param authorization the authorization
+     * @return the projection
+     */
+    public SessionDTO toSessionDTO(OAuth2Authorization authorization) {
+        SessionDTO result = new SessionDTO();
+        result.setAuthorizationId(authorization.getId());
+        result.setGrandType(authorization.getAuthorizationGrantType().getValue());
+        result.setPrincipalName(authorization.getPrincipalName());
+        result.setRegisteredClientId(authorization.getRegisteredClientId());
+        result.setAuthorizedScopes(authorization.getAuthorizedScopes());
+        if (authorization.getAccessToken() != null) {
+            result.setAccessTokenExpiresAt(authorization.getAccessToken().getToken().getExpiresAt());
+        }
+        if (authorization.getRefreshToken() != null) {
+            result.setRefreshTokenExpiresAt(authorization.getRefreshToken().getToken().getExpiresAt());
+        }
+        return result;
+    }
+
     public UserSessionDTO getUserSession(String userName) {
         UserXml userXML = this.customUserDetailsService.getUserByUsername(userName);
         List<OAuth2Authorization> authorizations = this.findByPrincipalName(userName);
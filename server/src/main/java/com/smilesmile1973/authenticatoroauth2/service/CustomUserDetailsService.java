@@ -1,20 +1,36 @@
 package com.smilesmile1973.authenticatoroauth2.service;
 
+import com.smilesmile1973.authenticatoroauth2.config.StartupPipeline;
 import com.smilesmile1973.authenticatoroauth2.model.UserXml;
-import jakarta.annotation.PostConstruct;
+import com.smilesmile1973.authenticatoroauth2.util.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
  * Custom implementation of Spring Security's UserDetailsService that loads user details
@@ -24,6 +40,13 @@ import java.util.Map;
  * and roles from a configurable XML file. It implements the UserDetailsService interface
  * to integrate with Spring Security's authentication mechanism.</p>
  *
+ * <p>It also implements {@link UserDetailsPasswordService}: after a successful login with a
+ * password stored with a legacy encoding (typically {@code {noop}}), Spring Security re-hashes
+ * the password with the configured encoder, and the new hash replaces the old entry in memory.
+ * The XML file is patched in the background, once for all the hashes upgraded within
+ * {@code users.password.store-delay}: it is read again and only the passwords still holding the
+ * replaced legacy value are changed, so that the edits made to the file meanwhile are kept.</p>
+ *
  * <p>The XML file path can be configured using the {@code users.config.path} property,
  * with a default value of "users.xml".</p>
  *
@@ -31,8 +54,10 @@ import java.util.Map;
  * @since 1.0
  */
 @Component
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService,
+        SmartInitializingSingleton {
     private static final Logger LOG = LoggerFactory.getLogger(CustomUserDetailsService.class);
+    private static final String NOOP_PREFIX = "{noop}";
     /**
      * The path to the XML file containing user configuration.
      * Can be configured via the {@code users.config.path} property.
@@ -46,10 +71,42 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private RegisteredUserLoader registeredUserLoader;
     /**
-     * In-memory cache of user details loaded from the XML configuration file.
-     * Maps username to UserXml objects for quick lookup during authentication.
+     * Loads the users at startup, concurrently with the other startup phases.
+     */
+    @Autowired
+    private StartupPipeline startupPipeline;
+    /**
+     * Whether the user details of large files are built in parallel.
+     */
+    @Value("${config.loader.parallel:true}")
+    private boolean parallelLoad;
+    /**
+     * Users loaded from the XML configuration file, with their prebuilt views. Replaced as a
+     * whole when a password is re-hashed.
+     */
+    private volatile Users users = Users.of(Map.of(), false);
+    /**
+     * Serializes the replacements of the users. A lock rather than {@code synchronized}: the users
+     * file is written while it is held, on the request thread of a login, which must not pin the
+     * carrier thread when requests run on virtual threads.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    /**
+     * Delay before the re-hashed passwords are written to the users file, batching the logins
+     * of a migration into a single write.
      */
-    private Map<String, UserXml> userDetailsMap = null;
+    @Value("${users.password.store-delay:PT5S}")
+    private Duration passwordStoreDelay;
+    private final AtomicBoolean passwordStorePending = new AtomicBoolean();
+    /**
+     * Re-hashed passwords not yet written to the users file, by username. Guarded by {@link #writeLock}.
+     */
+    private final Map<String, PasswordUpgrade> pendingPasswords = new HashMap<>();
+    private final ScheduledExecutorService passwordStoreExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "users-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Default constructor for CustomUserDetailsService.
@@ -58,22 +115,164 @@ public class CustomUserDetailsService implements UserDetailsService {
     }
 
     /**
-     * Initializes the user details map by loading user data from the configured XML file.
-     * This method is automatically called after dependency injection is complete.
+     * Initializes the user details map with the users loaded by the {@link StartupPipeline} from
+     * the configured XML file. Called once every singleton has been created, so that the users
+     * load while the rest of the application context starts; no request is served before.
      *
-     * @throws Exception if there's an error loading or parsing the XML file
+     * @throws IllegalStateException if there's an error loading or parsing the XML file
      */
-    @PostConstruct
-    private void buildUserDetailsMap() throws Exception {
-        this.userDetailsMap = this.registeredUserLoader.loadUsersFromXML(usersConfigPath);
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            this.users = Users.of(validate(this.startupPipeline.users()), parallelLoad);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to load the users from " + usersConfigPath, e);
+        }
+        long legacyPasswords = users.userXmls().values().stream()
+                .filter(userXml -> userXml.getPassword() != null && userXml.getPassword().startsWith(NOOP_PREFIX))
+                .count();
+        if (legacyPasswords > 0) {
+            LOG.warn("{} users have a plain text password, re-hashed at their next login", legacyPasswords);
+        }
+    }
+
+    /**
+     * Reloads the users from the XML configuration file, for example after it changed on disk.
+     *
+     * <p>The file is parsed and validated off the request path, then swapped in as a new snapshot;
+     * concurrent authentications keep reading the previous snapshot until then. When the file is
+     * malformed or declares an invalid user, the current users are kept.</p>
+     *
+     * @throws Exception if the file cannot be loaded or is invalid, in which case nothing changes
+     */
+    public void reload() throws Exception {
+        writeLock.lock();
+        try {
+            Map<String, UserXml> loaded = validate(this.registeredUserLoader.loadUsersFromXML(usersConfigPath));
+            // A pending re-hash is kept only if the file still holds the password it replaced.
+            pendingPasswords.entrySet().removeIf(entry -> {
+                UserXml userXml = loaded.get(entry.getKey());
+                if (userXml == null || !entry.getValue().previousPassword().equals(userXml.getPassword())) {
+                    return true;
+                }
+                userXml.setPassword(entry.getValue().newPassword());
+                return false;
+            });
+            Users reloaded = Users.of(loaded, parallelLoad);
+            this.users = reloaded;
+            LOG.info("{} users reloaded from {}", reloaded.userXmls().size(), usersConfigPath);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Checks that every user can authenticate: a username, roles and a password with its
+     * {@code {id}} encoding prefix.
+     *
+     * @param userXmls the loaded users
+     * @return the loaded users
+     * @throws IllegalArgumentException if a user is invalid
+     */
+    private static Map<String, UserXml> validate(Map<String, UserXml> userXmls) {
+        for (UserXml userXml : userXmls.values()) {
+            if (!StringUtils.hasText(userXml.getUsername()) || !StringUtils.hasText(userXml.getRoles())) {
+                throw new IllegalArgumentException("User " + userXml.getUsername() + " has no username or roles");
+            }
+            String password = userXml.getPassword();
+            if (password == null || !password.startsWith("{") || password.indexOf('}') < 0) {
+                throw new IllegalArgumentException("User " + userXml.getUsername()
+                        + " has no password or no {id} encoding prefix");
+            }
+        }
+        return userXmls;
+    }
+
+    /**
+     * Replaces the password of a user with a new hash, after a successful login with a password
+     * stored with a legacy encoding.
+     *
+     * <p>Only the entry of the user is replaced, and the users file is written later in the
+     * background: a login costs no more than a lookup, even while many users are migrated.</p>
+     *
+     * @param user        the authenticated user
+     * @param newPassword the new hash, with its {@code {id}} prefix
+     * @return the user with the new hash
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        writeLock.lock();
+        try {
+            Users current = this.users;
+            UserXml userXml = current.userXmls().get(user.getUsername());
+            if (userXml == null) {
+                return user;
+            }
+            UserXml upgraded = new UserXml();
+            upgraded.setUsername(userXml.getUsername());
+            upgraded.setPassword(newPassword);
+            upgraded.setRoles(userXml.getRoles());
+            current.userXmls().put(upgraded.getUsername(), upgraded);
+            current.userDetails().put(upgraded.getUsername(), Users.build(upgraded));
+            pendingPasswords.compute(upgraded.getUsername(), (username, pending) -> new PasswordUpgrade(
+                    pending != null ? pending.previousPassword() : userXml.getPassword(), newPassword));
+        } finally {
+            writeLock.unlock();
+        }
+        if (passwordStorePending.compareAndSet(false, true)) {
+            passwordStoreExecutor.schedule(this::storePasswords, passwordStoreDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        LOG.info("Password of user {} re-hashed", user.getUsername());
+        return User.withUserDetails(user).password(newPassword).build();
+    }
+
+    /**
+     * Writes the password hashes upgraded since the last write to the users file. The file is
+     * read again under the write lock and a hash is only written over the legacy password it
+     * replaced: a user edited or removed in the file since the login keeps the edit.
+     */
+    private void storePasswords() {
+        passwordStorePending.set(false);
+        writeLock.lock();
+        try {
+            if (pendingPasswords.isEmpty()) {
+                return;
+            }
+            Map<String, UserXml> stored = registeredUserLoader.loadUsersFromXML(usersConfigPath);
+            int upgraded = 0;
+            for (Map.Entry<String, PasswordUpgrade> entry : pendingPasswords.entrySet()) {
+                UserXml userXml = stored.get(entry.getKey());
+                if (userXml != null && entry.getValue().previousPassword().equals(userXml.getPassword())) {
+                    userXml.setPassword(entry.getValue().newPassword());
+                    upgraded++;
+                }
+            }
+            pendingPasswords.clear();
+            if (upgraded > 0 && !registeredUserLoader.storeUsersToXml(usersConfigPath, stored.values())) {
+                LOG.warn("Users loaded from the classpath, the new password hashes are only kept in memory");
+            }
+        } catch (Exception e) {
+            LOG.error("Unable to write the new password hashes to {}", usersConfigPath, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    private void flushPasswords() {
+        passwordStoreExecutor.shutdownNow();
+        if (passwordStorePending.get()) {
+            storePasswords();
+        }
     }
 
     /**
      * Loads user details by username for Spring Security authentication.
      *
-     * <p>This method searches for the specified username in the pre-loaded user details map
-     * and returns a UserDetails object containing the user's credentials and roles.
-     * The roles are expected to be comma-separated in the XML configuration.</p>
+     * <p>The user details are built once when the users are loaded, with the roles of the XML
+     * configuration (comma-separated) already parsed into authorities. Each call returns a copy
+     * of the prebuilt {@link User}: Spring Security erases the password of the returned instance
+     * after a successful authentication, so a shared instance could not authenticate twice.</p>
      *
      * @param userName the username to search for (case-sensitive)
      * @return UserDetails object containing user credentials and roles
@@ -82,35 +281,82 @@ public class CustomUserDetailsService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String userName) throws UsernameNotFoundException {
-        LOG.info("Loading user: {}", userName);
-        UserXml userXml = this.userDetailsMap.get(userName);
-        UserDetails result = null;
-        if (userXml != null) {
-            result = User.builder()
-                    .username(userXml.getUsername())
-                    .password(userXml.getPassword())
-                    .roles(userXml.getRoles().split(","))
-                    .build();
-        } else {
+        User user = users.userDetails().get(userName);
+        if (user == null) {
             throw new UsernameNotFoundException("The user " + userName + " is not found.");
         }
-        return result;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Loading user: {}", userName);
+        }
+        return new User(user.getUsername(), user.getPassword(), user.getAuthorities());
     }
 
+    /**
+     * @return the users with masked passwords, in username order; the list is shared and must not be modified
+     */
     public List<UserXml> getUsers() {
-        List<UserXml> results = new ArrayList<>();
-        for (UserXml original : userDetailsMap.values()) {
-            results.add(original.clone());
-        }
-        return results;
+        return users.maskedList();
     }
 
+    /**
+     * @param userName the username
+     * @return the user with a masked password, shared and not to be modified, or {@code null} if not found
+     */
     public UserXml getUserByUsername(String userName) {
-        UserXml original = userDetailsMap.get(userName);
-        UserXml  result = null;
-        if (original != null) {
-            result = original.clone();
+        return users.masked().get(userName);
+    }
+
+    /**
+     * A re-hashed password waiting to be written to the users file.
+     *
+     * @param previousPassword the password read from the users file, which the new hash replaces
+     * @param newPassword      the new hash, with its {@code {id}} prefix
+     */
+    private record PasswordUpgrade(String previousPassword, String newPassword) {
+    }
+
+    /**
+     * Snapshot of the users: the entries of the XML configuration, the prebuilt user details and
+     * the masked views returned to the administration endpoints. Replaced as a whole by a reload;
+     * only the entry and the user details of a re-hashed user are replaced in place.
+     */
+    private record Users(Map<String, UserXml> userXmls, Map<String, User> userDetails,
+                         Map<String, UserXml> masked, List<UserXml> maskedList) {
+
+        /**
+         * @param loaded   the users of the XML configuration
+         * @param parallel whether the user details are built in parallel when there are many users
+         */
+        private static Users of(Map<String, UserXml> loaded, boolean parallel) {
+            Map<String, UserXml> userXmls = new ConcurrentSkipListMap<>(loaded);
+            Stream<UserXml> stream = parallel && userXmls.size() >= Constants.PARALLEL_LOAD_THRESHOLD
+                    ? userXmls.values().parallelStream()
+                    : userXmls.values().stream();
+            List<User> built = stream.map(Users::build).toList();
+            Map<String, User> userDetails = new ConcurrentHashMap<>(capacity(userXmls.size()));
+            Map<String, UserXml> masked = new HashMap<>(capacity(userXmls.size()));
+            List<UserXml> maskedList = new ArrayList<>(userXmls.size());
+            int index = 0;
+            for (UserXml userXml : userXmls.values()) {
+                userDetails.put(userXml.getUsername(), built.get(index++));
+                UserXml maskedUserXml = userXml.clone();
+                masked.put(userXml.getUsername(), maskedUserXml);
+                maskedList.add(maskedUserXml);
+            }
+            return new Users(userXmls, userDetails, masked,
+                    Collections.unmodifiableList(maskedList));
+        }
+
+        private static User build(UserXml userXml) {
+            return (User) User.builder()
+                    .username(userXml.getUsername())
+                    .password(userXml.getPassword())
+                    .roles(userXml.getRoles().split(","))
+                    .build();
+        }
+
+        private static int capacity(int size) {
+            return (int) (size / 0.75f) + 1;
         }
-        return result;
     }
-}
\ No newline at end of file
+}
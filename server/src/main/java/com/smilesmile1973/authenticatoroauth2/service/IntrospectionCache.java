@@ -0,0 +1,184 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.smilesmile1973.authenticatoroauth2.util.TokenDigest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenIntrospection;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache of the active token introspection results, keyed by {@link TokenDigest} of the token.
+ *
+ * <p>Resource servers introspecting the same token on every request are answered from the cache
+ * without resolving the authorization again, and with the response body encoded once. An entry
+ * never outlives its token: it expires at the {@code exp} of the token, or after
+ * {@code introspection.cache.ttl} if that comes first. Inactive results are not cached.</p>
+ *
+ * <p>{@link CustomOAuth2AuthorizationService} invalidates the entries of an authorization as soon
+ * as it is re-saved (refresh, revocation) or removed, and {@link AccessTokenRevocationRegistry}
+ * invalidates the entry of a revoked stateless access token. A result computed while the same
+ * token was invalidated is not kept, see {@link #put(TokenDigest, OAuth2TokenIntrospection, long)}.
+ * Invalidations are versioned per stripe of digests, so that the revocations of other tokens
+ * never discard a fill.</p>
+ *
+ * <p>The cache is bounded by {@code introspection.cache.maximum-size} with W-TinyLFU eviction.
+ * Hit, miss and eviction counts are published as the {@code cache.*} metrics tagged
+ * {@code cache=oauth2.introspection}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class IntrospectionCache {
+
+    /**
+     * Number of invalidation stripes, a power of two.
+     */
+    private static final int STRIPES = 4096;
+
+    private final Cache<TokenDigest, Entry> cache;
+    /**
+     * Number of invalidations so far of the digests of each stripe, to detect an invalidation of
+     * a token racing with a cache fill of the same token. Digests are uniform, so a stripe is
+     * selected by their low bits.
+     */
+    private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+
+    public IntrospectionCache(@Value("${introspection.cache.maximum-size:10000}") long maximumSize,
+                              @Value("${introspection.cache.ttl:PT5M}") Duration ttl,
+                              MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry(ttl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "oauth2.introspection");
+    }
+
+    /**
+     * @param digest the digest of the token
+     * @return the cached result, or {@code null}
+     */
+    public Entry get(TokenDigest digest) {
+        return cache.getIfPresent(digest);
+    }
+
+    /**
+     * Returns the stamp to pass to {@link #put(TokenDigest, OAuth2TokenIntrospection, long)},
+     * read before the introspection result is computed.
+     *
+     * @param digest the digest of the token
+     * @return the current invalidation stamp of the token
+     */
+    public long stamp(TokenDigest digest) {
+        return invalidations.get(stripe(digest));
+    }
+
+    /**
+     * Caches an active introspection result, unless the token was invalidated since {@code stamp}:
+     * the result might then describe a token that has just been revoked.
+     *
+     * @param digest      the digest of the token
+     * @param tokenClaims the introspection result
+     * @param stamp       the stamp read before the result was computed
+     * @return the cached entry, or {@code null} if the result is not cached
+     */
+    public Entry put(TokenDigest digest, OAuth2TokenIntrospection tokenClaims, long stamp) {
+        if (!tokenClaims.isActive()) {
+            return null;
+        }
+        Entry entry = new Entry(tokenClaims);
+        cache.put(digest, entry);
+        if (invalidations.get(stripe(digest)) != stamp) {
+            cache.invalidate(digest);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Invalidates the cached results of the given tokens.
+     *
+     * @param digests the digests of the tokens
+     */
+    public void invalidateAll(Collection<TokenDigest> digests) {
+        if (digests.isEmpty()) {
+            return;
+        }
+        for (TokenDigest digest : digests) {
+            invalidations.incrementAndGet(stripe(digest));
+        }
+        cache.invalidateAll(digests);
+    }
+
+    private static int stripe(TokenDigest digest) {
+        return (int) digest.low() & (STRIPES - 1);
+    }
+
+    /**
+     * Cached introspection result, with its JSON encoding once a response has been written.
+     */
+    public static final class Entry {
+        private final OAuth2TokenIntrospection tokenClaims;
+        private volatile byte[] body;
+
+        private Entry(OAuth2TokenIntrospection tokenClaims) {
+            this.tokenClaims = tokenClaims;
+        }
+
+        public OAuth2TokenIntrospection getTokenClaims() {
+            return tokenClaims;
+        }
+
+        /**
+         * @return the encoded response body, or {@code null} if not encoded yet
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        public void setBody(byte[] body) {
+            this.body = body;
+        }
+    }
+
+    /**
+     * Expires each entry at the expiry of its token, bounded by the configured time to live.
+     */
+    private static final class TokenExpiry implements Expiry<TokenDigest, Entry> {
+        private final long ttlNanos;
+
+        private TokenExpiry(Duration ttl) {
+            this.ttlNanos = ttl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(TokenDigest key, Entry value, long currentTime) {
+            Instant expiresAt = value.getTokenClaims().getExpiresAt();
+            if (expiresAt == null) {
+                return ttlNanos;
+            }
+            long untilExpiry = Duration.between(Instant.now(), expiresAt).toNanos();
+            return Math.max(0, Math.min(ttlNanos, untilExpiry));
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenDigest key, Entry value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(TokenDigest key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,60 +1,122 @@
 package com.smilesmile1973.authenticatoroauth2.service;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 import com.smilesmile1973.authenticatoroauth2.util.ClientXmlPrinter;
+import com.smilesmile1973.authenticatoroauth2.util.Constants;
+import com.smilesmile1973.authenticatoroauth2.util.StreamingXmlReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
 import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.settings.ClientSettings;
 import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
 import org.springframework.stereotype.Service;
 
 import com.smilesmile1973.authenticatoroauth2.model.ClientXml;
-import com.smilesmile1973.authenticatoroauth2.model.ClientsXml;
-
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.Unmarshaller;
 
 @Service
 public class RegisteredClientLoader {
 
     private static final Logger LOG = LoggerFactory.getLogger(RegisteredClientLoader.class);
+    @Autowired
+    private ConfigurationCache configurationCache;
+    @Value("${config.loader.parallel:true}")
+    private boolean parallelLoad;
+    @Value("${clients.print-tables:true}")
+    private boolean printTables;
+    /**
+     * Prints the client tables off the startup path, one load after the other.
+     */
+    private final Executor tablePrinter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "client-table-printer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Load RegisteredClient instances from an XML file.
      *
+     * <p>The whole file is parsed and validated, and the claim template of each client compiled,
+     * without publishing anything: the caller installs the clients, then their templates with
+     * {@link ClaimTemplateRegistry#registerAll(Map)}. When the file is malformed, declares an
+     * invalid client or a duplicate id or client id, an exception is thrown and the current
+     * clients and templates are left untouched.</p>
+     *
+     * <p>The file is streamed with {@link StreamingXmlReader}. When {@code config.loader.parallel}
+     * is enabled, the clients of large files are built in parallel; their order is kept. When the
+     * file is unchanged since the previous load, the clients are read from the
+     * {@link ConfigurationCache} instead of being parsed. The table of each client is printed on a
+     * background thread when {@code clients.print-tables} is enabled.</p>
+     *
      * @param clientsConfigPath the name of the XML file (e.g., "clients.xml")
-     * @return a list of RegisteredClient instances
+     * @return the RegisteredClient instances, with their claim templates
      */
-    public List<RegisteredClient> loadClientsFromXml(String clientsConfigPath) throws Exception {
-        List<RegisteredClient> registeredClients = new ArrayList<>();
-        InputStream xmlStream = null;
+    public ClientConfiguration loadClientsFromXml(String clientsConfigPath) throws Exception {
         File configFile = new File(clientsConfigPath);
-        if (configFile.exists() && configFile.isFile()) {
-            xmlStream = new FileInputStream(configFile);
-            LOG.info("Loading clients from filesystem path: {}", clientsConfigPath);
-        } else {
-            xmlStream = getClass().getClassLoader().getResourceAsStream(clientsConfigPath);
-            LOG.info("Loading clients from classpath: {}", clientsConfigPath);
-        }
-        JAXBContext jaxbContext = JAXBContext.newInstance(ClientsXml.class);
-        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-        ClientsXml clientsXml = (ClientsXml) unmarshaller.unmarshal(xmlStream);
-        for (ClientXml clientXml : clientsXml.getClients()) {
+        LOG.info("Loading clients from {}: {}", configFile.isFile() ? "filesystem path" : "classpath",
+                clientsConfigPath);
+        List<ClientXml> clientXmls = configurationCache.loadClients(configFile,
+                () -> parseClients(clientsConfigPath, configFile));
+        Stream<ClientXml> stream = parallelLoad && clientXmls.size() >= Constants.PARALLEL_LOAD_THRESHOLD
+                ? clientXmls.parallelStream()
+                : clientXmls.stream();
+        List<LoadedClient> loadedClients = stream.map(clientXml -> {
             RegisteredClient registeredClient = buildRegisteredClient(clientXml);
+            return new LoadedClient(registeredClient, ClaimTemplate.compile(registeredClient, clientXml));
+        }).toList();
+        List<RegisteredClient> registeredClients = new ArrayList<>(loadedClients.size());
+        Map<String, ClaimTemplate> claimTemplates = new LinkedHashMap<>();
+        Set<String> clientIds = new HashSet<>();
+        for (LoadedClient loadedClient : loadedClients) {
+            RegisteredClient registeredClient = loadedClient.registeredClient();
+            if (claimTemplates.containsKey(registeredClient.getId()) || !clientIds.add(registeredClient.getClientId())) {
+                throw new IllegalArgumentException("Duplicate client " + registeredClient.getClientId()
+                        + " with id " + registeredClient.getId() + " in " + clientsConfigPath);
+            }
             registeredClients.add(registeredClient);
-            LOG.info("Loaded client: {} with id: {}", clientXml.getClientId(), clientXml.getId());
-            ClientXmlPrinter.printAsTable(clientXml);
+            claimTemplates.put(registeredClient.getId(), loadedClient.claimTemplate());
+        }
+        if (printTables) {
+            List<ClientXml> printed = List.copyOf(clientXmls);
+            tablePrinter.execute(() -> {
+                for (ClientXml clientXml : printed) {
+                    LOG.info("Loaded client: {} with id: {}", clientXml.getClientId(), clientXml.getId());
+                    ClientXmlPrinter.printAsTable(clientXml);
+                }
+            });
         }
         LOG.info("Successfully loaded {} clients from {}", registeredClients.size(), clientsConfigPath);
-        return registeredClients;
+        return new ClientConfiguration(registeredClients, claimTemplates);
+    }
+
+    private List<ClientXml> parseClients(String clientsConfigPath, File configFile) throws Exception {
+        List<ClientXml> clientXmls = new ArrayList<>();
+        try (InputStream xmlStream = configFile.exists() && configFile.isFile()
+                ? new BufferedInputStream(new FileInputStream(configFile))
+                : getClass().getClassLoader().getResourceAsStream(clientsConfigPath)) {
+            if (xmlStream == null) {
+                throw new RuntimeException("clients.xml file not found.");
+            }
+            StreamingXmlReader.forEach(xmlStream, "clients", "client", ClientXml.class, clientXmls::add);
+        }
+        return clientXmls;
     }
 
     /**
@@ -71,10 +133,11 @@ public class RegisteredClientLoader {
                 .refreshTokenTimeToLive(Duration.ofSeconds(
                         clientXml.getRefreshTokenDuration() != null ? clientXml.getRefreshTokenDuration() : 86400))
                 .build();
-        LOG.info("Building RegisteredClient for clientId: {}", clientXml.getClientId());
-        LOG.info("  - Access Token Duration (XML)     : {} seconds", clientXml.getAccessTokenDuration());
-        LOG.info("  - Access Token TTL (TokenSettings): {} seconds",
-                tokenSettings.getAccessTokenTimeToLive().getSeconds());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Building RegisteredClient for clientId: {}, access token TTL: {} seconds (XML: {})",
+                    clientXml.getClientId(), tokenSettings.getAccessTokenTimeToLive().getSeconds(),
+                    clientXml.getAccessTokenDuration());
+        }
         String clientSecret = clientXml.getClientSecret();
         if (clientSecret != null && !clientSecret.startsWith("{")) {
             clientSecret = "{noop}" + clientSecret;
@@ -108,6 +171,11 @@ public class RegisteredClientLoader {
             }
         }
         builder.tokenSettings(tokenSettings);
+        if (Boolean.TRUE.equals(clientXml.getStatelessAccessTokens())) {
+            builder.clientSettings(ClientSettings.builder()
+                    .setting(Constants.STATELESS_ACCESS_TOKENS_SETTING, true)
+                    .build());
+        }
         return builder.build();
     }
 
@@ -157,4 +225,17 @@ public class RegisteredClientLoader {
                 return new AuthorizationGrantType(grantType);
         }
     }
+
+    /**
+     * Clients of the XML configuration, in file order, with their compiled claim templates by
+     * registered client id.
+     */
+    public record ClientConfiguration(List<RegisteredClient> clients, Map<String, ClaimTemplate> claimTemplates) {
+    }
+
+    /**
+     * Client built from its XML configuration, with its compiled claim template.
+     */
+    private record LoadedClient(RegisteredClient registeredClient, ClaimTemplate claimTemplate) {
+    }
 }
@@ -2,15 +2,26 @@ package com.smilesmile1973.authenticatoroauth2.service;
 
 import com.smilesmile1973.authenticatoroauth2.model.UserXml;
 import com.smilesmile1973.authenticatoroauth2.model.UsersXml;
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.Unmarshaller;
+import com.smilesmile1973.authenticatoroauth2.util.StreamingXmlReader;
+import jakarta.xml.bind.Marshaller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -18,8 +29,8 @@ import java.util.TreeMap;
  * Service class responsible for loading and managing registered users from XML configuration files.
  *
  * <p>This service supports loading user configurations from both filesystem paths and classpath resources.
- * It uses JAXB for XML unmarshalling and ensures duplicate usernames are handled gracefully by keeping
- * the first occurrence and logging warnings for duplicates.</p>
+ * It streams the XML with {@link StreamingXmlReader} and ensures duplicate usernames are handled gracefully
+ * by keeping the first occurrence and logging warnings for duplicates.</p>
  *
  * <p>The loaded users are returned as a sorted map (TreeMap) with usernames as keys for efficient lookup.</p>
  *
@@ -29,13 +40,18 @@ import java.util.TreeMap;
 @Service
 public class RegisteredUserLoader {
     private static final Logger LOG = LoggerFactory.getLogger(RegisteredUserLoader.class);
+    @Autowired
+    private ConfigurationCache configurationCache;
 
     /**
      * Loads user configurations from an XML file and returns them as a map.
      *
      * <p>This method first attempts to load the XML file from the filesystem using the provided path.
      * If the file doesn't exist on the filesystem, it falls back to loading from the classpath.
-     * The XML content is unmarshalled using JAXB into UserXml objects.</p>
+     * The XML content is streamed with StAX and each user is unmarshalled on its own using JAXB
+     * into a UserXml object, so that very large files are never materialized as a whole. When the
+     * file is unchanged since the previous load, the users are read from the {@link ConfigurationCache}
+     * instead.</p>
      *
      * <p>Duplicate usernames are handled by keeping the first occurrence and logging a warning
      * for subsequent duplicates. The returned map is sorted alphabetically by username.</p>
@@ -51,25 +67,14 @@ public class RegisteredUserLoader {
      */
     public Map<String, UserXml> loadUsersFromXML(String usersConfigPath) throws Exception {
         Map<String, UserXml> userDetailsMap = new TreeMap<>();
-        InputStream xmlStream = null;
         File configFile = new File(usersConfigPath);
-        if (configFile.exists() && configFile.isFile()) {
-            xmlStream = new FileInputStream(configFile);
-            LOG.info("Loading users from filesystem path: {}", usersConfigPath);
-        } else {
-            xmlStream = getClass().getClassLoader().getResourceAsStream(usersConfigPath);
-            if (xmlStream == null) {
-                throw new RuntimeException("users.xml file not found.");
-            }
-            LOG.info("Loading users from classpath: {}", usersConfigPath);
-        }
-        JAXBContext jaxbContext = JAXBContext.newInstance(UsersXml.class);
-        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-        UsersXml usersXml = (UsersXml) unmarshaller.unmarshal(xmlStream);
-        for (UserXml userXml : usersXml.getUsers()) {
-            if (userDetailsMap.get(userXml.getUsername()) == null) {
-                userDetailsMap.put(userXml.getUsername(), userXml);
-                LOG.info("The following user is registered : {}", userXml.getUsername());
+        LOG.info("Loading users from {}: {}", configFile.isFile() ? "filesystem path" : "classpath", usersConfigPath);
+        List<UserXml> userXmls = configurationCache.loadUsers(configFile, () -> parseUsers(usersConfigPath, configFile));
+        for (UserXml userXml : userXmls) {
+            if (userDetailsMap.putIfAbsent(userXml.getUsername(), userXml) == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("The following user is registered : {}", userXml.getUsername());
+                }
             } else {
                 LOG.warn("The user {} is already defined. First occurrence kept.", userXml.getUsername());
             }
@@ -77,4 +82,51 @@ public class RegisteredUserLoader {
         LOG.info("{} users loaded from users.xml", userDetailsMap.size());
         return userDetailsMap;
     }
+
+    private List<UserXml> parseUsers(String usersConfigPath, File configFile) throws Exception {
+        List<UserXml> userXmls = new ArrayList<>();
+        try (InputStream xmlStream = configFile.exists() && configFile.isFile()
+                ? new BufferedInputStream(new FileInputStream(configFile))
+                : getClass().getClassLoader().getResourceAsStream(usersConfigPath)) {
+            if (xmlStream == null) {
+                throw new RuntimeException("users.xml file not found.");
+            }
+            StreamingXmlReader.forEach(xmlStream, "users", "user", UserXml.class, userXmls::add);
+        }
+        return userXmls;
+    }
+
+    /**
+     * Writes the user configurations back to the XML file they were loaded from, for example
+     * after a password has been re-hashed.
+     *
+     * <p>The file is replaced atomically. Users loaded from the classpath cannot be written
+     * back, in which case nothing is written.</p>
+     *
+     * @param usersConfigPath the path the users were loaded from
+     * @param users           the users to write
+     * @return {@code true} if the file has been written, {@code false} if the users come from the classpath
+     * @throws Exception if the XML file cannot be written
+     */
+    public boolean storeUsersToXml(String usersConfigPath, Collection<UserXml> users) throws Exception {
+        Path configFile = Paths.get(usersConfigPath);
+        if (!Files.isRegularFile(configFile)) {
+            return false;
+        }
+        UsersXml usersXml = new UsersXml();
+        usersXml.setUsers(new ArrayList<>(users));
+        Marshaller marshaller = StreamingXmlReader.context(UsersXml.class).createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        Path temporary = configFile.resolveSibling(configFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            marshaller.marshal(usersXml, out);
+        }
+        try {
+            Files.move(temporary, configFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, configFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOG.info("{} users written to {}", users.size(), usersConfigPath);
+        return true;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live session counters, maintained incrementally by {@link CustomOAuth2AuthorizationService}
+ * whenever an authorization is stored, removed or evicted. A session is an authorization holding
+ * an access token; pending authorization requests and consents are not counted.
+ *
+ * <p>The total is a {@link LongAdder}, so that concurrent token issuances never contend on a
+ * single value. A principal or client counter is updated under the lock of its map bin, which
+ * only contends with the sessions of the same principal or client, and is removed as soon as it
+ * drops back to zero. Reading a count never touches the authorization store.</p>
+ *
+ * <p>The following metrics are published:</p>
+ * <ul>
+ *   <li>{@code oauth2.sessions.active}: total number of active sessions</li>
+ *   <li>{@code oauth2.sessions.active.client}: active sessions per registered client, tagged {@code client}</li>
+ * </ul>
+ *
+ * <p>To keep the metric cardinality bounded, at most {@code sessions.metrics.max-tagged-clients}
+ * clients are tagged at a time; the sessions of the other clients are published under the tag
+ * {@value #OTHER_CLIENTS}. The gauge of a client is removed with its counter, freeing its slot.
+ * Principal counters are not published as metrics.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class SessionCounters {
+    static final String OTHER_CLIENTS = "_other";
+    private static final String CLIENT_GAUGE = "oauth2.sessions.active.client";
+
+    private final LongAdder total = new LongAdder();
+    private final ConcurrentHashMap<String, Counter> byPrincipal = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> byClient = new ConcurrentHashMap<>();
+    /**
+     * Sessions of the clients counted without their own gauge.
+     */
+    private final AtomicLong otherClients = new AtomicLong();
+    private final AtomicInteger taggedClients = new AtomicInteger();
+    private final int maxTaggedClients;
+    private final MeterRegistry meterRegistry;
+
+    public SessionCounters(MeterRegistry meterRegistry,
+                           @Value("${sessions.metrics.max-tagged-clients:100}") int maxTaggedClients) {
+        this.meterRegistry = meterRegistry;
+        this.maxTaggedClients = maxTaggedClients;
+        Gauge.builder("oauth2.sessions.active", total, LongAdder::sum)
+                .description("Number of active sessions")
+                .register(meterRegistry);
+        Gauge.builder(CLIENT_GAUGE, otherClients, AtomicLong::get)
+                .description("Number of active sessions of a registered client")
+                .tag("client", OTHER_CLIENTS)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts a new session.
+     *
+     * @param principalName      the principal name of the session
+     * @param registeredClientId the registered client id of the session
+     */
+    void increment(String principalName, String registeredClientId) {
+        total.increment();
+        byPrincipal.compute(principalName, (key, counter) -> {
+            Counter result = counter != null ? counter : new Counter(null);
+            result.count.incrementAndGet();
+            return result;
+        });
+        byClient.compute(registeredClientId, (key, counter) -> {
+            Counter result = counter != null ? counter : new Counter(registerClientGauge(key));
+            result.count.incrementAndGet();
+            if (result.gauge == null) {
+                otherClients.incrementAndGet();
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Uncounts a removed or expired session.
+     *
+     * @param principalName      the principal name of the session
+     * @param registeredClientId the registered client id of the session
+     */
+    void decrement(String principalName, String registeredClientId) {
+        total.decrement();
+        byPrincipal.computeIfPresent(principalName,
+                (key, counter) -> counter.count.decrementAndGet() > 0 ? counter : null);
+        byClient.computeIfPresent(registeredClientId, (key, counter) -> {
+            if (counter.gauge == null) {
+                otherClients.decrementAndGet();
+            }
+            if (counter.count.decrementAndGet() > 0) {
+                return counter;
+            }
+            if (counter.gauge != null) {
+                meterRegistry.remove(counter.gauge);
+                taggedClients.decrementAndGet();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return the total number of active sessions
+     */
+    public long total() {
+        return total.sum();
+    }
+
+    /**
+     * @param principalName the principal name
+     * @return the number of active sessions of the principal
+     */
+    public long principalCount(String principalName) {
+        Counter counter = byPrincipal.get(principalName);
+        return counter != null ? counter.count.get() : 0;
+    }
+
+    /**
+     * @param registeredClientId the registered client id
+     * @return the number of active sessions of the registered client
+     */
+    public long clientCount(String registeredClientId) {
+        Counter counter = byClient.get(registeredClientId);
+        return counter != null ? counter.count.get() : 0;
+    }
+
+    /**
+     * @return the number of active sessions of every registered client holding at least one, by client id
+     */
+    public Map<String, Long> clientCounts() {
+        Map<String, Long> results = new TreeMap<>();
+        byClient.forEach((registeredClientId, counter) -> {
+            long count = counter.count.get();
+            if (count > 0) {
+                results.put(registeredClientId, count);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Registers the gauge of a new client counter if a slot is free.
+     *
+     * @return the gauge, or {@code null} if the client is counted under {@value #OTHER_CLIENTS}
+     */
+    private Gauge registerClientGauge(String registeredClientId) {
+        if (taggedClients.incrementAndGet() > maxTaggedClients) {
+            taggedClients.decrementAndGet();
+            return null;
+        }
+        return Gauge.builder(CLIENT_GAUGE, () -> clientCount(registeredClientId))
+                .description("Number of active sessions of a registered client")
+                .tag("client", registeredClientId)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Session count of a principal or client, with the gauge publishing it if any.
+     */
+    private static final class Counter {
+        private final AtomicLong count = new AtomicLong();
+        private final Gauge gauge;
+
+        private Counter(Gauge gauge) {
+            this.gauge = gauge;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.model.SessionEventDTO;
+import com.smilesmile1973.authenticatoroauth2.model.SessionEventType;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out of session change events to Server-Sent Events subscribers.
+ *
+ * <p>{@link #publish} never blocks the caller (token issuance): each subscriber owns a bounded
+ * buffer, and when the buffer is full the oldest event is dropped. Dropped events are coalesced
+ * into a single {@link SessionEventType#OVERFLOW} event carrying their count, sent before the
+ * next delivered event. Delivery runs on a dedicated pool with one task at most per subscriber,
+ * so a stuck subscriber only holds its own delivery thread.</p>
+ *
+ * <p>At most {@code sessions.events.max-subscribers} subscribers are connected: a subscription
+ * reserves its slot atomically, and gives it back exactly once when it ends.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@Component
+public class SessionEventPublisher {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionEventPublisher.class);
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Semaphore slots;
+    private final Duration timeout;
+    private final ThreadPoolExecutor deliveryExecutor;
+
+    public SessionEventPublisher(@Value("${sessions.events.buffer-size:256}") int bufferSize,
+                                 @Value("${sessions.events.max-subscribers:16}") int maxSubscribers,
+                                 @Value("${sessions.events.timeout:PT30M}") Duration timeout) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.slots = new Semaphore(maxSubscribers);
+        this.timeout = timeout;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.deliveryExecutor = new ThreadPoolExecutor(0, maxSubscribers, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "session-events-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a new subscriber.
+     *
+     * @return the emitter of the subscriber, or {@code null} if the subscriber limit is reached
+     */
+    public SseEmitter subscribe() {
+        if (!slots.tryAcquire()) {
+            LOG.warn("Session event subscription rejected, {} subscribers already connected", maxSubscribers);
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, bufferSize);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(error -> unsubscribe(subscriber));
+        subscribers.add(subscriber);
+        LOG.info("Session event subscriber connected, {} subscribers", subscribers.size());
+        return emitter;
+    }
+
+    /**
+     * Removes a subscriber and releases its slot, once whatever the number of calls.
+     *
+     * @param subscriber the subscriber
+     */
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscriber.unsubscribed.compareAndSet(false, true)) {
+            subscribers.remove(subscriber);
+            slots.release();
+        }
+    }
+
+    /**
+     * @return {@code true} if at least one subscriber is connected
+     */
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    /**
+     * Publishes a session change to every subscriber without blocking.
+     *
+     * @param type          the kind of change
+     * @param authorization the changed authorization
+     */
+    public void publish(SessionEventType type, OAuth2Authorization authorization) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        SessionEventDTO event = new SessionEventDTO();
+        event.setType(type);
+        event.setAuthorizationId(authorization.getId());
+        event.setPrincipalName(authorization.getPrincipalName());
+        event.setRegisteredClientId(authorization.getRegisteredClientId());
+        event.setTimestamp(Instant.now());
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+            if (subscriber.draining.compareAndSet(false, true)) {
+                try {
+                    deliveryExecutor.execute(() -> deliver(subscriber));
+                } catch (RejectedExecutionException e) {
+                    // The event stays buffered and is delivered with the next publication.
+                    subscriber.draining.set(false);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+        deliveryExecutor.shutdownNow();
+    }
+
+    private void deliver(Subscriber subscriber) {
+        try {
+            do {
+                long dropped = subscriber.dropped.getAndSet(0);
+                if (dropped > 0) {
+                    SessionEventDTO overflow = new SessionEventDTO();
+                    overflow.setType(SessionEventType.OVERFLOW);
+                    overflow.setTimestamp(Instant.now());
+                    overflow.setDropped(dropped);
+                    send(subscriber, overflow);
+                }
+                SessionEventDTO event;
+                while ((event = subscriber.buffer.poll()) != null) {
+                    send(subscriber, event);
+                }
+                subscriber.draining.set(false);
+                // Re-check after clearing the flag: an event offered in between would otherwise
+                // wait for the next publication.
+            } while ((!subscriber.buffer.isEmpty() || subscriber.dropped.get() > 0)
+                    && subscriber.draining.compareAndSet(false, true));
+        } catch (IOException | IllegalStateException e) {
+            LOG.debug("Session event subscriber disconnected: {}", e.getMessage());
+            unsubscribe(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    private void send(Subscriber subscriber, SessionEventDTO event) throws IOException {
+        subscriber.emitter.send(SseEmitter.event()
+                .name(event.getType().name().toLowerCase())
+                .data(event, MediaType.APPLICATION_JSON));
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<SessionEventDTO> buffer;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicBoolean unsubscribed = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter, int bufferSize) {
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private void offer(SessionEventDTO event) {
+            while (!buffer.offer(event)) {
+                if (buffer.poll() != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -47,6 +47,11 @@ public final class ClientXmlPrinter {
                 client.getAccessTokenDuration() != null ? client.getAccessTokenDuration() : "null");
         System.out.printf("| Refresh Token Duration (s) | %s |%n",
                 client.getRefreshTokenDuration() != null ? client.getRefreshTokenDuration() : "null");
+        System.out.printf("| Static Claims | %s |%n",
+                client.getClaims() != null ? client.getClaims().size() : 0);
+        System.out.printf("| Roles Claim | %s |%n", escapeMarkdown(client.getRolesClaim()));
+        System.out.printf("| Role Mappings | %s |%n", escapeMarkdown(client.getRoleMappings()));
+        System.out.printf("| Stateless Access Tokens | %s |%n", Boolean.TRUE.equals(client.getStatelessAccessTokens()));
         System.out.println();
     }
 
@@ -5,4 +5,16 @@ public class Constants {
     private Constants(){}
 
     public static final String STARWORD="*****";
+
+    /**
+     * Client setting enabling stateless access tokens: JWT access tokens issued without a refresh
+     * token are not persisted in the authorization store.
+     */
+    public static final String STATELESS_ACCESS_TOKENS_SETTING = "settings.client.stateless-access-tokens";
+
+    /**
+     * Number of entries of a configuration file from which users and clients are built in
+     * parallel, when {@code config.loader.parallel} is enabled.
+     */
+    public static final int PARALLEL_LOAD_THRESHOLD = 10_000;
 }
@@ -0,0 +1,112 @@
+package com.smilesmile1973.authenticatoroauth2.util;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader of the XML configuration files ({@code users.xml}, {@code clients.xml}).
+ *
+ * <p>The document is read with StAX and each entry under the root element is unmarshalled on its
+ * own with JAXB, then handed to the caller. The mapping stays the one of the JAXB models, but the
+ * whole document is never materialized: memory use is bounded by what the caller keeps, whatever
+ * the number of entries.</p>
+ *
+ * <p>The JAXB contexts are expensive to create and thread-safe, so they are created once per
+ * model class and shared. DTDs and external entities are rejected.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public final class StreamingXmlReader {
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final ClassValue<JAXBContext> CONTEXTS = new ClassValue<>() {
+        @Override
+        protected JAXBContext computeValue(Class<?> type) {
+            try {
+                return JAXBContext.newInstance(type);
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Unable to create the JAXB context of " + type.getName(), e);
+            }
+        }
+    };
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private StreamingXmlReader() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Returns the shared JAXB context of a model class.
+     *
+     * @param type the JAXB model class
+     * @return the context, created on first use
+     */
+    public static JAXBContext context(Class<?> type) {
+        return CONTEXTS.get(type);
+    }
+
+    /**
+     * Reads the entries of a document one at a time.
+     *
+     * @param xmlStream   the document, left open
+     * @param rootName    the expected name of the root element
+     * @param elementName the name of the entries, direct children of the root element; other children are skipped
+     * @param type        the JAXB model class of the entries
+     * @param action      called with each entry, in document order
+     * @param <T>         the type of the entries
+     * @return the number of entries read
+     * @throws XMLStreamException if the document is malformed or its root element is not {@code rootName}
+     * @throws JAXBException      if an entry cannot be unmarshalled
+     */
+    public static <T> int forEach(InputStream xmlStream, String rootName, String elementName, Class<T> type,
+                                  Consumer<? super T> action) throws XMLStreamException, JAXBException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(xmlStream);
+        try {
+            Unmarshaller unmarshaller = context(type).createUnmarshaller();
+            int count = 0;
+            int depth = 0;
+            int event = reader.getEventType();
+            while (event != XMLStreamConstants.END_DOCUMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == 0 && !rootName.equals(reader.getLocalName())) {
+                        throw new XMLStreamException("Expected root element <" + rootName + "> but found <"
+                                + reader.getLocalName() + ">", reader.getLocation());
+                    }
+                    if (depth == 1 && elementName.equals(reader.getLocalName())) {
+                        action.accept(unmarshaller.unmarshal(reader, type).getValue());
+                        count++;
+                        // The reader is already on the event following the end tag of the entry.
+                        event = reader.getEventType();
+                        continue;
+                    }
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+                event = reader.next();
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
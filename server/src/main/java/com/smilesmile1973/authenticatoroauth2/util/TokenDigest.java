@@ -0,0 +1,50 @@
+package com.smilesmile1973.authenticatoroauth2.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fixed-size digest of a token value, used as a hash key instead of the full token string.
+ *
+ * <p>The digest keeps the first 128 bits of the SHA-256 hash of the token value. Index keys
+ * therefore have a constant size and cost, whatever the length of the token (JWT access tokens
+ * are often several hundred bytes long), and the raw token value is never kept as a key.</p>
+ *
+ * @param high the first 64 bits of the SHA-256 hash
+ * @param low  the next 64 bits of the SHA-256 hash
+ * @author smilesmile1973
+ * @since 1.0
+ */
+public record TokenDigest(long high, long low) {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    /**
+     * Computes the digest of a token value.
+     *
+     * @param tokenValue the token value, must not be null
+     * @return the digest
+     */
+    public static TokenDigest of(String tokenValue) {
+        MessageDigest messageDigest = SHA_256.get();
+        ByteBuffer hash = ByteBuffer.wrap(messageDigest.digest(tokenValue.getBytes(StandardCharsets.UTF_8)));
+        return new TokenDigest(hash.getLong(), hash.getLong());
+    }
+
+    /**
+     * Returns the digest as a 32 character hexadecimal string.
+     *
+     * @return the hexadecimal representation
+     */
+    public String toHex() {
+        return String.format("%016x%016x", high, low);
+    }
+}
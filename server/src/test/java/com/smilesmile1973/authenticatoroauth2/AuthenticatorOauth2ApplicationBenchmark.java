@@ -0,0 +1,156 @@
+package com.smilesmile1973.authenticatoroauth2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of the server over HTTP, with the Tomcat requests on platform threads
+ * ({@code threads=platform}) or on virtual threads ({@code threads=virtual},
+ * {@code spring.threads.virtual.enabled}): 64 clients send their requests in a loop.
+ * {@code jwks} requests the JWK Set, answered from memory; {@code token} requests a
+ * {@code client_credentials} token from the file authorization store, which waits for the
+ * password hashing pool and for the commit of the journal.
+ *
+ * <p>Virtual threads need Java 21: run the forks on such a JVM, the benchmark being compiled for
+ * Java 17, with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="AuthenticatorOauth2ApplicationBenchmark -jvm /path/to/jdk-21/bin/java"}.
+ * On an older JVM both modes run on platform threads, which is printed at startup. Failed
+ * requests, such as the logins shed by the hashing pool, are counted and printed at the end of
+ * each iteration; {@code -t} changes the number of clients, for example beyond the 200 threads of
+ * Tomcat.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class AuthenticatorOauth2ApplicationBenchmark {
+
+    private static final String CLIENTS = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <clients>
+                <client>
+                    <id>load-id</id>
+                    <clientId>load</clientId>
+                    <clientSecret>{noop}secret</clientSecret>
+                    <clientName>Load</clientName>
+                    <authenticationMethods>client_secret_basic</authenticationMethods>
+                    <grantTypes>client_credentials</grantTypes>
+                    <scopes>articles.read</scopes>
+                    <accessTokenDuration>300</accessTokenDuration>
+                </client>
+            </clients>
+            """;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"jwks", "token"})
+    public String endpoint;
+
+    private final LongAdder failed = new LongAdder();
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        directory = Files.createTempDirectory("application-benchmark");
+        Path clientsFile = directory.resolve("clients.xml");
+        Files.writeString(clientsFile, CLIENTS);
+        // Command line arguments, which override application.properties.
+        context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .run("--spring.threads.virtual.enabled=" + "virtual".equals(threads),
+                        "--clients.config.path=" + clientsFile,
+                        "--clients.store.path=" + directory.resolve("clients"),
+                        "--config.cache.path=" + directory.resolve("config-cache"),
+                        "--authorization.store.mode=file",
+                        "--authorization.store.path=" + directory.resolve("authorizations"));
+        boolean virtual = Threading.VIRTUAL.isActive(context.getEnvironment());
+        System.out.printf("%nJava %d, requests on %s threads%n", Runtime.version().feature(),
+                virtual ? "virtual" : "platform");
+        URI base = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = switch (endpoint) {
+            case "jwks" -> HttpRequest.newBuilder(base.resolve("/oauth2/jwks")).GET().build();
+            case "token" -> HttpRequest.newBuilder(base.resolve("/oauth2/token"))
+                    .header("Authorization", "Basic " + Base64.getEncoder()
+                            .encodeToString("load:secret".getBytes(StandardCharsets.UTF_8)))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString("grant_type=client_credentials&scope=articles.read"))
+                    .build();
+            default -> throw new IllegalArgumentException(endpoint);
+        };
+        if (send() == 0) {
+            throw new IllegalStateException(request.uri() + " failed");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        failed.reset();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        if (failed.sum() > 0) {
+            System.out.printf("%n%d requests failed%n", failed.sum());
+        }
+    }
+
+    @Benchmark
+    public int send() {
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() == 200) {
+                return response.body().length;
+            }
+        } catch (IOException e) {
+            // Counted as failed.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failed.increment();
+        return 0;
+    }
+}
@@ -0,0 +1,55 @@
+package com.smilesmile1973.authenticatoroauth2;
+
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Startup benchmark: the server, with its embedded Tomcat, must be ready to serve tokens within
+ * {@code startup.max-time-to-ready} (system property, {@code PT30S} by default) of the start of
+ * the application.
+ *
+ * <p>Run it against an AOT-processed build with {@code -Dspring.aot.enabled=true} after
+ * {@code mvn -Pcds package}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+class AuthenticatorOauth2ApplicationStartupTest {
+
+    @Test
+    void isReadyWithinTheTimeToReadyBound() throws Exception {
+        Duration bound = Duration.parse(System.getProperty("startup.max-time-to-ready", "PT30S"));
+        AtomicLong readyAt = new AtomicLong();
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .listeners((ApplicationListener<ApplicationReadyEvent>) event -> readyAt.set(System.nanoTime()))
+                .run()) {
+            assertTrue(readyAt.get() > 0, "ApplicationReadyEvent not published");
+            Duration timeToReady = Duration.ofNanos(readyAt.get() - start);
+            assertTrue(timeToReady.compareTo(bound) <= 0,
+                    "Time to ready " + timeToReady.toMillis() + " ms exceeds " + bound.toMillis() + " ms");
+
+            // Every startup phase has completed by then.
+            assertNotNull(context.getBean(RegisteredClientRepository.class).findByClientId("articles-client"));
+            @SuppressWarnings("unchecked")
+            JWKSource<SecurityContext> jwkSource = context.getBean(JWKSource.class);
+            assertFalse(jwkSource.get(new JWKSelector(new JWKMatcher.Builder().build()), null).isEmpty());
+        }
+    }
+}
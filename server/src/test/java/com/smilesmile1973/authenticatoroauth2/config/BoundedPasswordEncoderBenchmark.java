@@ -0,0 +1,137 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login storm: 32 threads, standing for the Tomcat request threads, verify a bcrypt password at
+ * the same time. {@code unbounded} computes the hashes on the calling threads, as a plain
+ * {@link PasswordEncoder} does, {@code queue-64} and {@code queue-4} on the one-per-CPU hashing
+ * threads of {@link BoundedPasswordEncoder} with a queue of 64 and 4 waiting computations.
+ *
+ * <p>A login shed with an {@link AuthenticationServiceException} is retried after 100 ms, as a
+ * client would, instead of spinning on the single CPU the hashing threads need. The sampled
+ * times include that delay: the share of shed logins and the percentiles of the verified and
+ * of the shed logins, without the delay, are printed at the end of each iteration.</p>
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="BoundedPasswordEncoderBenchmark"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class BoundedPasswordEncoderBenchmark {
+
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    @Param({"unbounded", "queue-64", "queue-4"})
+    public String encoder;
+
+    private PasswordEncoder passwordEncoder;
+    private String encodedPassword;
+    /**
+     * Duration in nanoseconds of every verified and shed login of the current iteration.
+     */
+    private final Queue<Long> verified = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> shed = new ConcurrentLinkedQueue<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        passwordEncoder = switch (encoder) {
+            case "unbounded" -> PasswordEncoderFactories.createDelegatingPasswordEncoder();
+            case "queue-64" -> encoder(64);
+            case "queue-4" -> encoder(4);
+            default -> throw new IllegalArgumentException(encoder);
+        };
+        encodedPassword = passwordEncoder.encode("password");
+        if (!passwordEncoder.matches("password", encodedPassword)) {
+            throw new IllegalStateException("Password not verified by " + encoder);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (passwordEncoder instanceof BoundedPasswordEncoder boundedPasswordEncoder) {
+            boundedPasswordEncoder.shutdown();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        verified.clear();
+        shed.clear();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        List<Long> verifiedDurations = sorted(verified);
+        List<Long> shedDurations = sorted(shed);
+        int total = verifiedDurations.size() + shedDurations.size();
+        System.out.printf("%n%s: %d logins, %.1f%% shed, verified p50 %.0f ms p99 %.0f ms, shed p99 %.3f ms%n",
+                encoder, total, total == 0 ? 0 : 100.0 * shedDurations.size() / total,
+                percentile(verifiedDurations, 0.50), percentile(verifiedDurations, 0.99),
+                percentile(shedDurations, 0.99));
+    }
+
+    @Benchmark
+    public boolean login() throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            boolean matches = passwordEncoder.matches("password", encodedPassword);
+            verified.add(System.nanoTime() - start);
+            return matches;
+        } catch (AuthenticationServiceException e) {
+            shed.add(System.nanoTime() - start);
+            TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MILLIS);
+            return false;
+        }
+    }
+
+    private static BoundedPasswordEncoder encoder(int queueCapacity) {
+        return new BoundedPasswordEncoder("bcrypt", Runtime.getRuntime().availableProcessors(), queueCapacity,
+                new SimpleMeterRegistry());
+    }
+
+    private static List<Long> sorted(Queue<Long> durations) {
+        List<Long> sortedDurations = new ArrayList<>(durations);
+        Collections.sort(sortedDurations);
+        return sortedDurations;
+    }
+
+    private static double percentile(List<Long> sortedDurations, double percentile) {
+        if (sortedDurations.isEmpty()) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sortedDurations.size()) - 1;
+        return sortedDurations.get(Math.max(index, 0)) / 1_000_000.0;
+    }
+}
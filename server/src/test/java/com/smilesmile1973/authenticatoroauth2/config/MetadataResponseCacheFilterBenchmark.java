@@ -0,0 +1,171 @@
+package com.smilesmile1973.authenticatoroauth2.config;
+
+import com.smilesmile1973.authenticatoroauth2.AuthenticatorOauth2Application;
+import jakarta.servlet.Filter;
+import jakarta.servlet.Servlet;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.server.authorization.oidc.web.OidcProviderConfigurationEndpointFilter;
+import org.springframework.security.oauth2.server.authorization.web.NimbusJwkSetEndpointFilter;
+import org.springframework.security.web.SecurityFilterChain;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the JWK Set and OIDC discovery endpoints, served by {@link MetadataResponseCacheFilter}
+ * or rebuilt by the endpoint filters of the authorization server on every request
+ * ({@code metadata.cache.enabled=false}), without the network, Tomcat and the dispatcher servlet.
+ * {@code chain} sends the requests through the whole security filter chain, {@code endpoint} only
+ * through the filters the cache stands in front of: the issuer resolution, the cache and the
+ * endpoint filter.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="MetadataResponseCacheFilterBenchmark -prof gc"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MetadataResponseCacheFilterBenchmark {
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    @Param({"/oauth2/jwks", "/.well-known/openid-configuration"})
+    public String path;
+
+    /**
+     * Filters of the authorization server chain answering the metadata requests, in chain order.
+     */
+    private static final Set<String> ENDPOINT_FILTERS = Set.of("AuthorizationServerContextFilter",
+            MetadataResponseCacheFilter.class.getSimpleName(), NimbusJwkSetEndpointFilter.class.getSimpleName(),
+            OidcProviderConfigurationEndpointFilter.class.getSimpleName());
+
+    /**
+     * End of the endpoint filters, never reached when they answer.
+     */
+    private static final Servlet UNANSWERED = new HttpServlet() {
+        @Override
+        protected void service(HttpServletRequest request, HttpServletResponse response) {
+            throw new IllegalStateException(request.getRequestURI() + " not answered by the endpoint filters");
+        }
+    };
+
+    private ConfigurableApplicationContext context;
+    private Filter springSecurityFilterChain;
+    private Filter[] endpointFilters;
+
+    @Setup
+    public void start() {
+        context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                // Command line arguments, which override application.properties.
+                .run("--metadata.cache.enabled=" + cache,
+                        "--spring.security.oauth2.authorizationserver.issuer=http://localhost:9080");
+        springSecurityFilterChain = context.getBean("springSecurityFilterChain", Filter.class);
+        endpointFilters = context.getBean("authorizationServerSecurityFilterChain", SecurityFilterChain.class)
+                .getFilters().stream()
+                .filter(filter -> ENDPOINT_FILTERS.contains(filter.getClass().getSimpleName()))
+                .toArray(Filter[]::new);
+    }
+
+    @TearDown
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] chain() throws Exception {
+        Response response = new Response();
+        springSecurityFilterChain.doFilter(request(), response, (unused, ignored) -> {
+            throw new IllegalStateException(path + " not answered by the security filter chain");
+        });
+        return body(response);
+    }
+
+    @Benchmark
+    public byte[] endpoint() throws Exception {
+        Response response = new Response();
+        new MockFilterChain(UNANSWERED, endpointFilters).doFilter(request(), response);
+        return body(response);
+    }
+
+    private MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        return request;
+    }
+
+    private byte[] body(Response response) {
+        byte[] body = response.body();
+        if (response.getStatus() != HttpServletResponse.SC_OK || body.length == 0) {
+            throw new IllegalStateException("Status " + response.getStatus() + " for " + path);
+        }
+        return body;
+    }
+
+    /**
+     * Mock response whose output stream writes arrays in bulk, as Tomcat does: the output stream
+     * of {@link MockHttpServletResponse} writes them byte by byte, which would only slow down
+     * the cached documents, the endpoint filters writing through the writer.
+     */
+    private static final class Response extends MockHttpServletResponse {
+        private final ByteArrayOutputStream stream = new ByteArrayOutputStream(2048);
+        private final ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                stream.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                stream.write(bytes, offset, length);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        private byte[] body() {
+            return stream.size() > 0 ? stream.toByteArray() : getContentAsByteArray();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Recovery time of {@link AuthorizationJournal}: replay of a journal holding {@code authorizations}
+ * authorizations, one million by default, as on a restart of the file store.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="AuthorizationJournalBenchmark"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class AuthorizationJournalBenchmark {
+
+    @Param("1000000")
+    public int authorizations;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        Map<String, OAuth2Authorization> store = new HashMap<>();
+        AuthorizationJournal journal = journal();
+        journal.open(source(store), handler(new int[1]));
+        List<RegisteredClient> clients = List.of(AuthorizationJournalTest.client("client-1"),
+                AuthorizationJournalTest.client("client-2"), AuthorizationJournalTest.client("client-3"));
+        List<String> batch = new ArrayList<>(512);
+        for (int i = 0; i < authorizations; i++) {
+            OAuth2Authorization authorization = AuthorizationJournalTest.authorization(
+                    clients.get(i % clients.size()), "authorization-" + i, "user-" + i % 1000);
+            store.put(authorization.getId(), authorization);
+            batch.add(authorization.getId());
+            if (batch.size() == 512 || i == authorizations - 1) {
+                journal.appendAll(batch);
+                // Committed: the records no longer need their source.
+                batch.forEach(store::remove);
+                batch.clear();
+            }
+        }
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        int[] recovered = new int[1];
+        AuthorizationJournal journal = journal();
+        try {
+            journal.open(source(Map.of()), handler(recovered));
+        } finally {
+            journal.close();
+        }
+        if (recovered[0] != authorizations) {
+            throw new IllegalStateException(recovered[0] + " authorizations recovered, " + authorizations + " expected");
+        }
+        return recovered[0];
+    }
+
+    private AuthorizationJournal journal() {
+        return new AuthorizationJournal(directory.toString(), 64 * 1024 * 1024, 512, true, true, Duration.ofSeconds(5));
+    }
+
+    private static AuthorizationJournal.Source source(Map<String, OAuth2Authorization> store) {
+        return new AuthorizationJournal.Source() {
+            @Override
+            public OAuth2Authorization findById(String id) {
+                return store.get(id);
+            }
+
+            @Override
+            public void forEach(Consumer<OAuth2Authorization> action) {
+                store.values().forEach(action);
+            }
+        };
+    }
+
+    private static AuthorizationJournal.RecoveryHandler handler(int[] recovered) {
+        return new AuthorizationJournal.RecoveryHandler() {
+            @Override
+            public void restore(OAuth2Authorization authorization) {
+                recovered[0]++;
+            }
+
+            @Override
+            public void restoreRemoval(String authorizationId) {
+                recovered[0]--;
+            }
+        };
+    }
+}
@@ -0,0 +1,225 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Replay and crash recovery of {@link AuthorizationJournal}: what was committed before a restart
+ * or a crash is recovered, nothing written after a torn record is lost, and an authorization
+ * that cannot be encoded does not make the records written after it undecodable.
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+class AuthorizationJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, OAuth2Authorization> store = new ConcurrentHashMap<>();
+    private final List<AuthorizationJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() {
+        journals.forEach(AuthorizationJournal::close);
+    }
+
+    @Test
+    void replaysSavesAndRemovalsAfterRestart() throws IOException {
+        AuthorizationJournal journal = open(64 * 1024 * 1024, new ConcurrentHashMap<>());
+        for (int i = 0; i < 100; i++) {
+            save(journal, authorization(client("client-1"), "authorization-" + i, "user-" + i % 7));
+        }
+        for (int i = 0; i < 100; i += 3) {
+            remove(journal, "authorization-" + i);
+        }
+        journal.close();
+
+        Map<String, OAuth2Authorization> recovered = new ConcurrentHashMap<>();
+        open(64 * 1024 * 1024, recovered);
+        assertRecovered(recovered);
+    }
+
+    @Test
+    void replaysSnapshotAndRotatedSegments() throws IOException {
+        AuthorizationJournal journal = open(2048, new ConcurrentHashMap<>());
+        for (int i = 0; i < 60; i++) {
+            save(journal, authorization(client("client-" + i % 3), "authorization-" + i, "user-" + i % 5));
+        }
+        journal.snapshot();
+        for (int i = 0; i < 60; i += 4) {
+            remove(journal, "authorization-" + i);
+        }
+        for (int i = 60; i < 90; i++) {
+            save(journal, authorization(client("client-" + i % 3), "authorization-" + i, "user-" + i % 5));
+        }
+        journal.close();
+
+        Map<String, OAuth2Authorization> recovered = new ConcurrentHashMap<>();
+        open(2048, recovered);
+        assertRecovered(recovered);
+    }
+
+    @Test
+    void recoversCommittedRecordsBeforeATornTail() throws IOException {
+        AuthorizationJournal journal = open(64 * 1024 * 1024, new ConcurrentHashMap<>());
+        for (int i = 0; i < 20; i++) {
+            save(journal, authorization(client("client-1"), "authorization-" + i, "user"));
+        }
+        journal.close();
+        // A crash in the middle of a write: a record header promising more bytes than written.
+        try (FileChannel segment = FileChannel.open(lastSegment(), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            segment.write(ByteBuffer.allocate(12).putInt(100).putInt(0).put((byte) 3).flip());
+        }
+
+        Map<String, OAuth2Authorization> recovered = new ConcurrentHashMap<>();
+        journal = open(64 * 1024 * 1024, recovered);
+        assertRecovered(recovered);
+
+        // Records written after the recovery land in a new segment and survive the next restart.
+        for (int i = 20; i < 30; i++) {
+            save(journal, authorization(client("client-1"), "authorization-" + i, "user"));
+        }
+        journal.close();
+        recovered = new ConcurrentHashMap<>();
+        open(64 * 1024 * 1024, recovered);
+        assertRecovered(recovered);
+    }
+
+    @Test
+    void keepsTheSegmentDecodableAfterAFailedEncode() throws IOException {
+        AuthorizationJournal journal = open(64 * 1024 * 1024, new ConcurrentHashMap<>());
+        save(journal, authorization(client("client-1"), "authorization-1", "user"));
+        // Interns the new client id, then fails on an attribute that cannot be serialized.
+        OAuth2Authorization unencodable = OAuth2Authorization.from(
+                        authorization(client("client-2"), "authorization-2", "user"))
+                .attribute("unserializable", new Object())
+                .build();
+        store.put(unencodable.getId(), unencodable);
+        assertThrows(IllegalStateException.class, () -> journal.append(unencodable.getId()));
+        store.remove(unencodable.getId());
+        // Must write the client id in full again, not a reference to the failed record.
+        save(journal, authorization(client("client-2"), "authorization-3", "user"));
+        save(journal, authorization(client("client-1"), "authorization-4", "user"));
+        journal.close();
+
+        Map<String, OAuth2Authorization> recovered = new ConcurrentHashMap<>();
+        open(64 * 1024 * 1024, recovered);
+        assertRecovered(recovered);
+    }
+
+    private AuthorizationJournal open(long segmentSize, Map<String, OAuth2Authorization> recovered)
+            throws IOException {
+        AuthorizationJournal journal = new AuthorizationJournal(directory.toString(), segmentSize, 512,
+                true, true, Duration.ofSeconds(5));
+        journals.add(journal);
+        journal.open(new AuthorizationJournal.Source() {
+            @Override
+            public OAuth2Authorization findById(String id) {
+                return store.get(id);
+            }
+
+            @Override
+            public void forEach(Consumer<OAuth2Authorization> action) {
+                store.values().forEach(action);
+            }
+        }, new AuthorizationJournal.RecoveryHandler() {
+            @Override
+            public void restore(OAuth2Authorization authorization) {
+                recovered.put(authorization.getId(), authorization);
+            }
+
+            @Override
+            public void restoreRemoval(String authorizationId) {
+                recovered.remove(authorizationId);
+            }
+        });
+        return journal;
+    }
+
+    private void save(AuthorizationJournal journal, OAuth2Authorization authorization) {
+        store.put(authorization.getId(), authorization);
+        journal.append(authorization.getId());
+    }
+
+    private void remove(AuthorizationJournal journal, String authorizationId) {
+        store.remove(authorizationId);
+        journal.append(authorizationId);
+    }
+
+    private void assertRecovered(Map<String, OAuth2Authorization> recovered) {
+        assertEquals(store.keySet(), recovered.keySet());
+        store.forEach((id, authorization) -> {
+            OAuth2Authorization replayed = recovered.get(id);
+            assertEquals(authorization.getRegisteredClientId(), replayed.getRegisteredClientId());
+            assertEquals(authorization.getPrincipalName(), replayed.getPrincipalName());
+            assertEquals(authorization.getAuthorizedScopes(), replayed.getAuthorizedScopes());
+            assertNotNull(replayed.getAccessToken());
+            assertEquals(authorization.getAccessToken().getToken().getTokenValue(),
+                    replayed.getAccessToken().getToken().getTokenValue());
+            assertEquals(authorization.getRefreshToken().getToken().getTokenValue(),
+                    replayed.getRefreshToken().getToken().getTokenValue());
+        });
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("wal-"))
+                    .filter(file -> file.toFile().length() > 0)
+                    .max(Path::compareTo)
+                    .orElseThrow();
+        }
+    }
+
+    static RegisteredClient client(String id) {
+        return RegisteredClient.withId(id)
+                .clientId(id)
+                .clientSecret("{noop}secret")
+                .clientAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("http://127.0.0.1/callback")
+                .scope("read")
+                .build();
+    }
+
+    static OAuth2Authorization authorization(RegisteredClient client, String id, String principalName) {
+        Instant issuedAt = Instant.now();
+        return OAuth2Authorization.withRegisteredClient(client)
+                .id(id)
+                .principalName(principalName)
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .authorizedScopes(Set.of("read"))
+                .accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-" + id,
+                        issuedAt, issuedAt.plus(Duration.ofHours(1)), Set.of("read")))
+                .refreshToken(new OAuth2RefreshToken("refresh-" + id, issuedAt, issuedAt.plus(Duration.ofDays(1))))
+                .build();
+    }
+}
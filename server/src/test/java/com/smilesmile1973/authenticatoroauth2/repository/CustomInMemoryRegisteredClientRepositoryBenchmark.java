@@ -0,0 +1,130 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.ClientAuthenticationMethod;
+import org.springframework.security.oauth2.server.authorization.client.InMemoryRegisteredClientRepository;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and saves with 100 thousand clients in {@link CustomInMemoryRegisteredClientRepository}
+ * ({@code custom}) and in the {@link InMemoryRegisteredClientRepository} of the authorization
+ * server ({@code sas}). The clients are either configured, passed to the constructor as the
+ * clients of the XML configuration ({@code configured}), or saved at runtime as by the client
+ * registration endpoint ({@code registered}), the custom repository keeping them in memory only.
+ *
+ * <p>The lookups go through the clients in turn; {@code findByClientIdUnknown} looks up a client
+ * ID that does not exist. {@code save} saves a client again with a new secret, as the upgrade of
+ * the encoding of its secret at its first authentication does.</p>
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="CustomInMemoryRegisteredClientRepositoryBenchmark -prof gc"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CustomInMemoryRegisteredClientRepositoryBenchmark {
+
+    @Param({"custom", "sas"})
+    public String repository;
+
+    @Param({"configured", "registered"})
+    public String clients;
+
+    @Param("100000")
+    public int count;
+
+    private RegisteredClientRepository registeredClientRepository;
+    private RegisteredClient[] registeredClients;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        registeredClients = new RegisteredClient[count];
+        for (int i = 0; i < count; i++) {
+            registeredClients[i] = client(i);
+        }
+        List<RegisteredClient> configured = "configured".equals(clients) ? List.of(registeredClients)
+                : List.of(client(-1));
+        registeredClientRepository = "custom".equals(repository)
+                ? new CustomInMemoryRegisteredClientRepository(configured)
+                : new InMemoryRegisteredClientRepository(new ArrayList<>(configured));
+        if ("registered".equals(clients)) {
+            long start = System.nanoTime();
+            for (RegisteredClient registeredClient : registeredClients) {
+                registeredClientRepository.save(registeredClient);
+            }
+            System.out.printf("%n%s: %d clients registered in %d ms%n", repository, count,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        RegisteredClient registeredClient = registeredClients[count / 2];
+        if (registeredClientRepository.findByClientId(registeredClient.getClientId()) != registeredClient
+                || registeredClientRepository.findById(registeredClient.getId()) != registeredClient) {
+            throw new IllegalStateException(registeredClient.getClientId() + " not found");
+        }
+    }
+
+    @Benchmark
+    public RegisteredClient findById() {
+        return registeredClientRepository.findById(nextClient().getId());
+    }
+
+    @Benchmark
+    public RegisteredClient findByClientId() {
+        return registeredClientRepository.findByClientId(nextClient().getClientId());
+    }
+
+    @Benchmark
+    public RegisteredClient findByClientIdUnknown() {
+        return registeredClientRepository.findByClientId("unknown-client");
+    }
+
+    @Benchmark
+    public RegisteredClient save() {
+        RegisteredClient client = nextClient();
+        RegisteredClient registeredClient = RegisteredClient.from(client)
+                .clientSecret("{bcrypt}" + client.getClientSecret().substring("{noop}".length()))
+                .build();
+        registeredClientRepository.save(registeredClient);
+        return registeredClient;
+    }
+
+    private RegisteredClient nextClient() {
+        RegisteredClient registeredClient = registeredClients[next];
+        next = next + 1 == registeredClients.length ? 0 : next + 1;
+        return registeredClient;
+    }
+
+    /**
+     * The authorization server repository rejects clients sharing a secret.
+     */
+    private static RegisteredClient client(int index) {
+        return RegisteredClient.withId("client-" + index + "-id")
+                .clientId("client-" + index)
+                .clientSecret("{noop}secret-" + index)
+                .clientAuthenticationMethod(ClientAuthenticationMethod.CLIENT_SECRET_BASIC)
+                .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+                .scope("articles.read")
+                .build();
+    }
+}
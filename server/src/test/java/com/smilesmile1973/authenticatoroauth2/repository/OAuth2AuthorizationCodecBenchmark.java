@@ -0,0 +1,204 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.jackson2.SecurityJackson2Modules;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.jackson2.OAuth2AuthorizationServerJackson2Module;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size, encode time and decode time of {@link OAuth2AuthorizationCodec} against the JSON mapping of
+ * {@code JdbcOAuth2AuthorizationService} (Spring Security Jackson modules, one JSON document per
+ * attribute and token metadata column) and Java serialization, on a completed authorization code flow.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="OAuth2AuthorizationCodecBenchmark -prof gc"}.
+ * The encoded size of each format is printed once per fork.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OAuth2AuthorizationCodecBenchmark {
+
+    @Param({"codec", "json", "java"})
+    public String format;
+
+    private final ObjectMapper rowMapper = new ObjectMapper();
+    private final ObjectMapper columnMapper = new ObjectMapper();
+    private final RegisteredClient client = AuthorizationJournalTest.client("client-1");
+    private OAuth2Authorization authorization;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        ClassLoader classLoader = OAuth2AuthorizationCodecBenchmark.class.getClassLoader();
+        columnMapper.registerModules(SecurityJackson2Modules.getModules(classLoader));
+        columnMapper.registerModule(new OAuth2AuthorizationServerJackson2Module());
+        // Mutable collections: the Jackson allowlist of Spring Security rejects the immutable ones.
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("count", 3);
+        nested.put("values", new ArrayList<>(List.of("a", "b")));
+        OAuth2Authorization full = OAuth2AuthorizationCodecTest.fullAuthorization("authorization-1");
+        OidcIdToken fullIdToken = full.getToken(OidcIdToken.class).getToken();
+        OidcIdToken idToken = OidcIdToken.withTokenValue(fullIdToken.getTokenValue())
+                .claims(claims -> {
+                    claims.putAll(fullIdToken.getClaims());
+                    claims.put("aud", new ArrayList<>(fullIdToken.getAudience()));
+                    claims.put("roles", new ArrayList<>(fullIdToken.getClaimAsStringList("roles")));
+                })
+                .build();
+        authorization = OAuth2Authorization.from(full)
+                .token(idToken, metadata -> metadata.put(OAuth2Authorization.Token.CLAIMS_METADATA_NAME,
+                        idToken.getClaims()))
+                .attribute("nested", nested)
+                .build();
+        encoded = encode();
+        System.out.printf("%n%s: %d bytes per authorization%n", format, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return switch (format) {
+            case "codec" -> OAuth2AuthorizationCodec.encode(authorization);
+            case "json" -> toJson(authorization);
+            default -> serialize(authorization);
+        };
+    }
+
+    @Benchmark
+    public OAuth2Authorization decode() {
+        return switch (format) {
+            case "codec" -> OAuth2AuthorizationCodec.decode(encoded);
+            case "json" -> fromJson(encoded);
+            default -> deserialize(encoded);
+        };
+    }
+
+    private byte[] toJson(OAuth2Authorization authorization) {
+        try {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", authorization.getId());
+            row.put("registeredClientId", authorization.getRegisteredClientId());
+            row.put("principalName", authorization.getPrincipalName());
+            row.put("authorizationGrantType", authorization.getAuthorizationGrantType().getValue());
+            row.put("authorizedScopes", StringUtils.collectionToCommaDelimitedString(authorization.getAuthorizedScopes()));
+            row.put("attributes", columnMapper.writeValueAsString(authorization.getAttributes()));
+            List<Map<String, Object>> tokens = new ArrayList<>();
+            for (Class<? extends OAuth2Token> type : List.of(OAuth2AuthorizationCode.class, OAuth2AccessToken.class,
+                    OAuth2RefreshToken.class, OidcIdToken.class)) {
+                OAuth2Authorization.Token<? extends OAuth2Token> token = authorization.getToken(type);
+                if (token != null) {
+                    Map<String, Object> column = new LinkedHashMap<>();
+                    column.put("type", type.getSimpleName());
+                    column.put("value", token.getToken().getTokenValue());
+                    column.put("issuedAt", token.getToken().getIssuedAt().toEpochMilli());
+                    column.put("expiresAt", token.getToken().getExpiresAt().toEpochMilli());
+                    column.put("metadata", columnMapper.writeValueAsString(token.getMetadata()));
+                    if (token.getToken() instanceof OAuth2AccessToken accessToken) {
+                        column.put("scopes", StringUtils.collectionToCommaDelimitedString(accessToken.getScopes()));
+                    }
+                    tokens.add(column);
+                }
+            }
+            row.put("tokens", tokens);
+            return rowMapper.writeValueAsBytes(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private OAuth2Authorization fromJson(byte[] bytes) {
+        try {
+            Map<String, Object> row = rowMapper.readValue(bytes, new TypeReference<Map<String, Object>>() {
+            });
+            Map<String, Object> attributes = readColumn((String) row.get("attributes"));
+            OAuth2Authorization.Builder builder = OAuth2Authorization.withRegisteredClient(client)
+                    .id((String) row.get("id"))
+                    .principalName((String) row.get("principalName"))
+                    .authorizationGrantType(authorization.getAuthorizationGrantType())
+                    .authorizedScopes(StringUtils.commaDelimitedListToSet((String) row.get("authorizedScopes")))
+                    .attributes(map -> map.putAll(attributes));
+            for (Map<String, Object> column : (List<Map<String, Object>>) row.get("tokens")) {
+                String value = (String) column.get("value");
+                Instant issuedAt = Instant.ofEpochMilli(((Number) column.get("issuedAt")).longValue());
+                Instant expiresAt = Instant.ofEpochMilli(((Number) column.get("expiresAt")).longValue());
+                Map<String, Object> metadata = readColumn((String) column.get("metadata"));
+                OAuth2Token token = switch ((String) column.get("type")) {
+                    case "OAuth2AuthorizationCode" -> new OAuth2AuthorizationCode(value, issuedAt, expiresAt);
+                    case "OAuth2AccessToken" -> new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, value,
+                            issuedAt, expiresAt, StringUtils.commaDelimitedListToSet((String) column.get("scopes")));
+                    case "OAuth2RefreshToken" -> new OAuth2RefreshToken(value, issuedAt, expiresAt);
+                    default -> new OidcIdToken(value, issuedAt, expiresAt,
+                            (Map<String, Object>) metadata.get(OAuth2Authorization.Token.CLAIMS_METADATA_NAME));
+                };
+                builder.token(token, tokenMetadata -> tokenMetadata.putAll(metadata));
+            }
+            return builder.build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Object> readColumn(String json) throws IOException {
+        return columnMapper.readValue(json, new TypeReference<Map<String, Object>>() {
+        });
+    }
+
+    private static byte[] serialize(OAuth2Authorization authorization) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(authorization);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static OAuth2Authorization deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (OAuth2Authorization) in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Round trips of {@link OAuth2AuthorizationCodec}, alone and as a stream sharing a dictionary.
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+class OAuth2AuthorizationCodecTest {
+
+    @Test
+    void roundTripsTokensAttributesAndMetadata() {
+        OAuth2Authorization authorization = fullAuthorization("authorization-1");
+
+        OAuth2Authorization decoded = OAuth2AuthorizationCodec.decode(OAuth2AuthorizationCodec.encode(authorization));
+
+        assertRoundTripped(authorization, decoded);
+    }
+
+    @Test
+    void streamStaysInStepWithTheDictionaryAfterAFailedEncode() {
+        OAuth2AuthorizationCodec.Encoder encoder = new OAuth2AuthorizationCodec.Encoder();
+        OAuth2AuthorizationCodec.Decoder decoder = new OAuth2AuthorizationCodec.Decoder();
+        OAuth2Authorization first = fullAuthorization("authorization-1");
+        OAuth2Authorization unencodable = OAuth2Authorization.from(AuthorizationJournalTest.authorization(
+                        AuthorizationJournalTest.client("client-2"), "authorization-2", "user"))
+                .attribute("unserializable", new Object())
+                .build();
+        OAuth2Authorization second = AuthorizationJournalTest.authorization(
+                AuthorizationJournalTest.client("client-2"), "authorization-3", "user");
+
+        byte[] firstBytes = encoder.encode(first);
+        assertThrows(RuntimeException.class, () -> encoder.encode(unencodable));
+        byte[] secondBytes = encoder.encode(second);
+
+        assertRoundTripped(first, decoder.decode(firstBytes));
+        assertRoundTripped(second, decoder.decode(secondBytes));
+    }
+
+    static OAuth2Authorization fullAuthorization(String id) {
+        Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        OidcIdToken idToken = OidcIdToken.withTokenValue("id-" + id)
+                .issuedAt(issuedAt)
+                .expiresAt(issuedAt.plusSeconds(900))
+                .subject("user")
+                .audience(List.of("client-1"))
+                .claim("roles", List.of("admin", "user"))
+                .build();
+        return OAuth2Authorization.from(AuthorizationJournalTest.authorization(
+                        AuthorizationJournalTest.client("client-1"), id, "user"))
+                .token(new OAuth2AuthorizationCode("code-" + id, issuedAt, issuedAt.plusSeconds(300)),
+                        metadata -> metadata.put(OAuth2Authorization.Token.INVALIDATED_METADATA_NAME, true))
+                .token(idToken, metadata -> metadata.put(OAuth2Authorization.Token.CLAIMS_METADATA_NAME,
+                        idToken.getClaims()))
+                .attribute(OAuth2ParameterNames.STATE, "state-" + id)
+                .attribute("nested", Map.of("count", 3, "values", List.of("a", "b")))
+                .build();
+    }
+
+    private static void assertRoundTripped(OAuth2Authorization expected, OAuth2Authorization actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getRegisteredClientId(), actual.getRegisteredClientId());
+        assertEquals(expected.getPrincipalName(), actual.getPrincipalName());
+        assertEquals(expected.getAuthorizationGrantType(), actual.getAuthorizationGrantType());
+        assertEquals(expected.getAuthorizedScopes(), actual.getAuthorizedScopes());
+        assertEquals(expected.getAttributes(), actual.getAttributes());
+        OAuth2AccessToken accessToken = expected.getAccessToken().getToken();
+        assertEquals(accessToken.getTokenValue(), actual.getAccessToken().getToken().getTokenValue());
+        assertEquals(accessToken.getScopes(), actual.getAccessToken().getToken().getScopes());
+        assertEquals(accessToken.getExpiresAt(), actual.getAccessToken().getToken().getExpiresAt());
+        assertEquals(expected.getRefreshToken().getToken().getTokenValue(),
+                actual.getRefreshToken().getToken().getTokenValue());
+        for (Class<? extends OAuth2Token> type : List.of(OAuth2AuthorizationCode.class, OidcIdToken.class)) {
+            OAuth2Authorization.Token<?> token = expected.getToken(type);
+            if (token != null) {
+                assertEquals(token.getToken().getTokenValue(), actual.getToken(type).getToken().getTokenValue());
+                assertEquals(token.getMetadata(), actual.getToken(type).getMetadata());
+            }
+        }
+    }
+}
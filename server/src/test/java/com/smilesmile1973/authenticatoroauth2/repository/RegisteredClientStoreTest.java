@@ -0,0 +1,69 @@
+package com.smilesmile1973.authenticatoroauth2.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Durability of {@link RegisteredClientStore}: registrations survive a restart, the last record
+ * of a client wins, and torn bytes left by a crash never hide the registrations appended next.
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+class RegisteredClientStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reloadsTheLastStateOfEachClient() throws Exception {
+        RegisteredClientStore store = new RegisteredClientStore(directory.toString());
+        assertTrue(store.load().isEmpty());
+        store.append(AuthorizationJournalTest.client("client-1"));
+        store.append(AuthorizationJournalTest.client("client-2"));
+        store.append(RegisteredClient.from(AuthorizationJournalTest.client("client-1")).clientName("renamed").build());
+
+        List<RegisteredClient> clients = new RegisteredClientStore(directory.toString()).load();
+
+        assertEquals(List.of("client-1", "client-2"), clients.stream().map(RegisteredClient::getId).toList());
+        assertEquals("renamed", clients.get(0).getClientName());
+        assertEquals(AuthorizationJournalTest.client("client-2").getRedirectUris(), clients.get(1).getRedirectUris());
+    }
+
+    @Test
+    void appendsAfterATornRecordAreKept() throws Exception {
+        RegisteredClientStore store = new RegisteredClientStore(directory.toString());
+        store.load();
+        store.append(AuthorizationJournalTest.client("client-1"));
+        // A crash in the middle of an append: a record header promising more bytes than written.
+        Files.write(directory.resolve("clients.log"), new byte[]{0, 0, 0, 100, 1, 2},
+                StandardOpenOption.APPEND);
+
+        store = new RegisteredClientStore(directory.toString());
+        assertEquals(1, store.load().size());
+        store.append(AuthorizationJournalTest.client("client-2"));
+
+        List<RegisteredClient> clients = new RegisteredClientStore(directory.toString()).load();
+        assertEquals(List.of("client-1", "client-2"), clients.stream().map(RegisteredClient::getId).toList());
+    }
+
+    @Test
+    void logIsOnlyReadableByItsOwner() throws IOException {
+        new RegisteredClientStore(directory.toString()).load();
+        Path log = directory.resolve("clients.log");
+        if (Files.getFileStore(log).supportsFileAttributeView("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(log)));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.model.ClaimXml;
+import com.smilesmile1973.authenticatoroauth2.model.ClientXml;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.MessageFormatter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.endpoint.OidcParameterNames;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.settings.TokenSettings;
+import org.springframework.security.oauth2.server.authorization.token.JwtEncodingContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocation per token of the claim customization: the {@link ClaimTemplate} compiled
+ * once per client ({@code precompiled}) against the same claims resolved from the client
+ * configuration on every token ({@code per-token}), which also pays the reflective token type
+ * check and the formatting of the INFO log line of the former customizer. Both build the
+ * encoding context of the token, as the authorization server does, and read its claims.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="ClaimTemplateBenchmark -prof gc"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ClaimTemplateBenchmark {
+
+    @Param({"precompiled", "per-token"})
+    public String mode;
+
+    @Param({"access_token", "id_token"})
+    public String tokenType;
+
+    private final RegisteredClient registeredClient = RegisteredClient.withId("client-id")
+            .clientId("client")
+            .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+            .redirectUri("http://localhost/callback")
+            .tokenSettings(TokenSettings.builder().accessTokenTimeToLive(Duration.ofMinutes(15)).build())
+            .build();
+    private final Authentication principal = new UsernamePasswordAuthenticationToken("user", null,
+            AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER"));
+    private ClientXml clientXml;
+    private ClaimTemplate template;
+    private OAuth2TokenType type;
+    /**
+     * Last formatted log line, kept so that the formatting is not optimized away.
+     */
+    private String logMessage;
+
+    @Setup
+    public void setUp() {
+        clientXml = new ClientXml();
+        clientXml.setClientId("client");
+        clientXml.setClaims(Map.of("tenant", "acme", "department", "sales").entrySet().stream().map(entry -> {
+            ClaimXml claim = new ClaimXml();
+            claim.setName(entry.getKey());
+            claim.setValue(entry.getValue());
+            return claim;
+        }).toList());
+        clientXml.setRolesClaim("roles");
+        clientXml.setRoleMappings("ADMIN=administrator,USER=member");
+        template = ClaimTemplate.compile(registeredClient, clientXml);
+        type = new OAuth2TokenType(tokenType);
+        Map<String, Object> claims = customize();
+        if (!List.of("administrator", "member").equals(claims.get("roles")) || !"acme".equals(claims.get("tenant"))) {
+            throw new IllegalStateException("Unexpected claims " + claims);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> customize() {
+        JwtClaimsSet.Builder claims = JwtClaimsSet.builder().issuer("http://issuer").subject("user");
+        JwtEncodingContext context = JwtEncodingContext.with(JwsHeader.with(SignatureAlgorithm.RS256), claims)
+                .registeredClient(registeredClient)
+                .principal(principal)
+                .tokenType(type)
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .build();
+        if ("precompiled".equals(mode)) {
+            template.apply(context);
+        } else {
+            ClaimTemplate.compile(context.getRegisteredClient(), clientXml).apply(context);
+            if (OidcIdToken.class.isAssignableFrom(context.getTokenType().getValue().getClass())
+                    || OidcParameterNames.ID_TOKEN.equals(context.getTokenType().getValue())) {
+                logMessage = MessageFormatter.format("ID Token customized for client: {} with TTL: {} seconds",
+                        context.getRegisteredClient().getClientId(),
+                        context.getRegisteredClient().getTokenSettings().getAccessTokenTimeToLive().getSeconds())
+                        .getMessage();
+            }
+        }
+        return claims.build().getClaims();
+    }
+}
@@ -0,0 +1,82 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.model.ClaimXml;
+import com.smilesmile1973.authenticatoroauth2.model.ClientXml;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.token.JwtEncodingContext;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Claims added by a {@link ClaimTemplate} compiled from a client configuration.
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+class ClaimTemplateTest {
+
+    @Test
+    void addsStaticClaimsAndMappedRoles() {
+        ClientXml clientXml = clientXml(Map.of("tenant", "acme"), "roles");
+        clientXml.setRoleMappings("ADMIN=administrator");
+
+        Map<String, Object> claims = apply(clientXml);
+
+        assertEquals("acme", claims.get("tenant"));
+        assertEquals(List.of("administrator"), claims.get("roles"));
+    }
+
+    @Test
+    void ignoresReservedClaimNames() {
+        ClientXml clientXml = clientXml(Map.of("sub", "someone-else", "aud", "other-api", "tenant", "acme"), "iss");
+
+        Map<String, Object> claims = apply(clientXml);
+
+        assertEquals("user", claims.get("sub"));
+        assertEquals("http://issuer", String.valueOf(claims.get("iss")));
+        assertNull(claims.get("aud"));
+        assertEquals("acme", claims.get("tenant"));
+    }
+
+    private static Map<String, Object> apply(ClientXml clientXml) {
+        RegisteredClient registeredClient = RegisteredClient.withId("client-id")
+                .clientId("client")
+                .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+                .build();
+        JwtClaimsSet.Builder claims = JwtClaimsSet.builder().issuer("http://issuer").subject("user");
+        JwtEncodingContext context = JwtEncodingContext.with(JwsHeader.with(SignatureAlgorithm.RS256), claims)
+                .registeredClient(registeredClient)
+                .principal(new UsernamePasswordAuthenticationToken("user", null,
+                        AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER")))
+                .tokenType(OAuth2TokenType.ACCESS_TOKEN)
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .build();
+        ClaimTemplate.compile(registeredClient, clientXml).apply(context);
+        return claims.build().getClaims();
+    }
+
+    private static ClientXml clientXml(Map<String, String> staticClaims, String rolesClaim) {
+        ClientXml clientXml = new ClientXml();
+        clientXml.setClientId("client");
+        clientXml.setClaims(staticClaims.entrySet().stream().map(entry -> {
+            ClaimXml claim = new ClaimXml();
+            claim.setName(entry.getKey());
+            claim.setValue(entry.getValue());
+            return claim;
+        }).toList());
+        clientXml.setRolesClaim(rolesClaim);
+        return clientXml;
+    }
+}
@@ -0,0 +1,171 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.AuthenticatorOauth2Application;
+import jakarta.servlet.Filter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@code client_credentials} grant for a client whose authorizations are
+ * stored ({@code stored}) and for a client issued stateless access tokens ({@code stateless}),
+ * with the in-memory and the file authorization store.
+ *
+ * <p>{@code token} sends the token requests through the security filter chain, without the
+ * network and Tomcat; the number of authorizations left in the store is printed at the end of
+ * each trial. The client secret, upgraded to bcrypt at its first use, is checked on every
+ * request. {@code save} only saves the authorization of such a token, then removes it as the
+ * eviction of the expired authorizations eventually does, so that the store keeps its size.</p>
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="ClientCredentialsTokenBenchmark -prof gc"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ClientCredentialsTokenBenchmark {
+
+    private static final String CLIENTS = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <clients>
+                <client>
+                    <id>stored-id</id>
+                    <clientId>stored</clientId>
+                    <clientSecret>{noop}secret</clientSecret>
+                    <clientName>Stored</clientName>
+                    <authenticationMethods>client_secret_basic</authenticationMethods>
+                    <grantTypes>client_credentials</grantTypes>
+                    <scopes>articles.read</scopes>
+                    <accessTokenDuration>300</accessTokenDuration>
+                </client>
+                <client>
+                    <id>stateless-id</id>
+                    <clientId>stateless</clientId>
+                    <clientSecret>{noop}secret</clientSecret>
+                    <clientName>Stateless</clientName>
+                    <authenticationMethods>client_secret_basic</authenticationMethods>
+                    <grantTypes>client_credentials</grantTypes>
+                    <scopes>articles.read</scopes>
+                    <accessTokenDuration>300</accessTokenDuration>
+                    <statelessAccessTokens>true</statelessAccessTokens>
+                </client>
+            </clients>
+            """;
+
+    /**
+     * Stands for the header and claims of a signed access token, about as long.
+     */
+    private static final String TOKEN_PREFIX = "eyJ".repeat(250) + ".";
+
+    @Param({"stored", "stateless"})
+    public String client;
+
+    @Param({"memory", "file"})
+    public String store;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private Filter springSecurityFilterChain;
+    private String authorization;
+    private CustomOAuth2AuthorizationService authorizationService;
+    private RegisteredClient registeredClient;
+    private long sequence;
+
+    @Setup
+    public void start() throws IOException {
+        directory = Files.createTempDirectory("client-credentials-benchmark");
+        Path clientsFile = directory.resolve("clients.xml");
+        Files.writeString(clientsFile, CLIENTS);
+        // Command line arguments, which override application.properties.
+        context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .run("--clients.config.path=" + clientsFile,
+                        "--clients.store.path=" + directory.resolve("clients"),
+                        "--config.cache.path=" + directory.resolve("config-cache"),
+                        "--authorization.store.mode=" + store,
+                        "--authorization.store.path=" + directory.resolve("authorizations"));
+        springSecurityFilterChain = context.getBean("springSecurityFilterChain", Filter.class);
+        authorizationService = context.getBean(CustomOAuth2AuthorizationService.class);
+        registeredClient = context.getBean(RegisteredClientRepository.class).findByClientId(client);
+        authorization = "Basic " + Base64.getEncoder()
+                .encodeToString((client + ":secret").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        System.out.printf("%n%s client, %s store: %d authorizations stored%n", client, store,
+                context.getBean(SessionCounters.class).total());
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public byte[] token() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/oauth2/token");
+        request.setServletPath("/oauth2/token");
+        request.setContentType(MediaType.APPLICATION_FORM_URLENCODED_VALUE);
+        request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+        request.addParameter("grant_type", "client_credentials");
+        request.addParameter("scope", "articles.read");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        springSecurityFilterChain.doFilter(request, response, (unused, ignored) -> {
+            throw new IllegalStateException("Token request not answered by the security filter chain");
+        });
+        if (response.getStatus() != HttpServletResponse.SC_OK) {
+            throw new IllegalStateException("Status " + response.getStatus() + ": " + response.getContentAsString());
+        }
+        return response.getContentAsByteArray();
+    }
+
+    @Benchmark
+    public OAuth2Authorization save() {
+        String id = Long.toString(sequence++);
+        Instant issuedAt = Instant.now();
+        OAuth2Authorization authorization = OAuth2Authorization.withRegisteredClient(registeredClient)
+                .id(id)
+                .principalName(registeredClient.getClientId())
+                .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+                .authorizedScopes(registeredClient.getScopes())
+                .token(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, TOKEN_PREFIX + id,
+                        issuedAt, issuedAt.plusSeconds(300), registeredClient.getScopes()))
+                .build();
+        authorizationService.save(authorization);
+        authorizationService.remove(authorization);
+        return authorization;
+    }
+}
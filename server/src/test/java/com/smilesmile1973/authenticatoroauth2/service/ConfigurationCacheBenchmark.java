@@ -0,0 +1,160 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.AuthenticatorOauth2Application;
+import com.smilesmile1973.authenticatoroauth2.model.ClientXml;
+import com.smilesmile1973.authenticatoroauth2.model.UserXml;
+import com.smilesmile1973.authenticatoroauth2.util.StreamingXmlReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restart time of the application with a {@code users.xml} and a {@code clients.xml} of
+ * {@code entries} entries each, unchanged since the previous start: with the compiled
+ * {@link ConfigurationCache} ({@code cache=true}), written before the measurement, and without it
+ * ({@code cache=false}), parsing both files.
+ *
+ * <p>A restart is a new JVM: each measurement starts the whole application context, up to the end
+ * of its refresh, once in its own fork. The contexts are not restarted within a JVM either, since a
+ * closed context stays reachable from the Logback context through its environment until the next
+ * one is started, doubling the heap in use. The tables of the clients are not printed.</p>
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="ConfigurationCacheBenchmark"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 5, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class ConfigurationCacheBenchmark {
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private Path directory;
+    private String[] arguments;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws Exception {
+        directory = Files.createTempDirectory("configuration-cache-benchmark");
+        Path usersFile = writeUsers(directory.resolve("users.xml"));
+        Path clientsFile = writeClients(directory.resolve("clients.xml"));
+        Path cacheDirectory = directory.resolve("config-cache");
+        // Command line arguments, which override application.properties.
+        arguments = new String[]{
+                "--config.cache.enabled=" + cache,
+                "--config.cache.path=" + cacheDirectory,
+                "--users.config.path=" + usersFile,
+                "--clients.config.path=" + clientsFile,
+                "--clients.store.path=" + directory.resolve("clients"),
+                "--clients.print-tables=false"};
+        if (cache) {
+            // Compiled as by a previous start.
+            ConfigurationCache configurationCache = new ConfigurationCache();
+            ReflectionTestUtils.setField(configurationCache, "enabled", true);
+            ReflectionTestUtils.setField(configurationCache, "path", cacheDirectory.toString());
+            configurationCache.loadUsers(usersFile.toFile(), () -> parse(usersFile, "users", "user", UserXml.class));
+            configurationCache.loadClients(clientsFile.toFile(),
+                    () -> parse(clientsFile, "clients", "client", ClientXml.class));
+            if (!Files.isRegularFile(cacheDirectory.resolve("users.bin"))
+                    || !Files.isRegularFile(cacheDirectory.resolve("clients.bin"))) {
+                throw new IllegalStateException("Compiled cache missing in " + cacheDirectory);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext start() {
+        context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .run(arguments);
+        return context;
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        context.close();
+        context = null;
+    }
+
+    private static <T> List<T> parse(Path file, String rootName, String elementName, Class<T> type) throws Exception {
+        List<T> parsed = new ArrayList<>();
+        try (InputStream xmlStream = new BufferedInputStream(Files.newInputStream(file))) {
+            StreamingXmlReader.forEach(xmlStream, rootName, elementName, type, parsed::add);
+        }
+        return parsed;
+    }
+
+    private Path writeUsers(Path usersFile) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(usersFile)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<users>\n");
+            for (int i = 0; i < entries; i++) {
+                writer.write("    <user password=\"{bcrypt}$2a$10$NdYo0qdENwLngzAXy/zh8untABdcHdv/xVORfdeaDeGl1E38IKV3S\""
+                        + " roles=\"USER,AUDITOR\" username=\"user-" + i + "\"/>\n");
+            }
+            writer.write("</users>\n");
+        }
+        return usersFile;
+    }
+
+    private Path writeClients(Path clientsFile) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(clientsFile)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<clients>\n");
+            for (int i = 0; i < entries; i++) {
+                writer.write("""
+                            <client>
+                                <id>client-%1$d-id</id>
+                                <clientId>client-%1$d</clientId>
+                                <clientSecret>{noop}secret</clientSecret>
+                                <clientName>Client %1$d</clientName>
+                                <authenticationMethods>client_secret_basic</authenticationMethods>
+                                <grantTypes>authorization_code,refresh_token</grantTypes>
+                                <redirectUris>http://127.0.0.1:8081/login/oauth2/code/client-%1$d</redirectUris>
+                                <scopes>openid,articles.read</scopes>
+                                <accessTokenDuration>120</accessTokenDuration>
+                                <refreshTokenDuration>180</refreshTokenDuration>
+                            </client>
+                        """.formatted(i));
+            }
+            writer.write("</clients>\n");
+        }
+        return clientsFile;
+    }
+}
@@ -0,0 +1,201 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.AuthenticatorOauth2Application;
+import com.smilesmile1973.authenticatoroauth2.model.UserXml;
+import com.smilesmile1973.authenticatoroauth2.model.UsersXml;
+import com.smilesmile1973.authenticatoroauth2.util.StreamingXmlReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load time and heap use of the XML configuration files with {@code entries} entries, from
+ * 10 thousand to 1 million:
+ * <ul>
+ *   <li>{@code reader}: {@link StreamingXmlReader} over {@code users.xml}, keeping nothing</li>
+ *   <li>{@code document}: the whole {@code users.xml} unmarshalled at once with JAXB, as before the
+ *   files were streamed</li>
+ *   <li>{@code users}: {@link RegisteredUserLoader#loadUsersFromXML}</li>
+ *   <li>{@code clients}: {@link RegisteredClientLoader#loadClientsFromXml}, which also builds the
+ *   registered clients and their claim templates</li>
+ * </ul>
+ * The compiled configuration cache is disabled, so that every load parses the file.
+ *
+ * <p>Each load runs after a full GC. At its end are printed the peak of the old generation, which
+ * holds what survives the young collections during the load, and the heap retained by the loaded
+ * entries after a full GC.</p>
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="ConfigurationLoaderBenchmark -prof gc"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:+UseG1GC"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ConfigurationLoaderBenchmark {
+
+    @Param({"reader", "document", "users", "clients"})
+    public String target;
+
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    private Path directory;
+    private Path file;
+    private ConfigurableApplicationContext context;
+    private RegisteredUserLoader registeredUserLoader;
+    private RegisteredClientLoader registeredClientLoader;
+    private List<MemoryPoolMXBean> oldGeneration;
+    private long baseline;
+    /**
+     * Result of the last load, held until its retained heap is measured.
+     */
+    private Object loaded;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        directory = Files.createTempDirectory("configuration-loader-benchmark");
+        file = "clients".equals(target) ? writeClients(directory.resolve("clients.xml"))
+                : writeUsers(directory.resolve("users.xml"));
+        // Command line arguments, which override application.properties.
+        context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .run("--config.cache.enabled=false", "--clients.print-tables=false");
+        registeredUserLoader = context.getBean(RegisteredUserLoader.class);
+        registeredClientLoader = context.getBean(RegisteredClientLoader.class);
+        oldGeneration = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.getName().contains("Old Gen"))
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Setup(Level.Invocation)
+    public void collect() {
+        loaded = null;
+        System.gc();
+        baseline = usedHeap();
+        oldGeneration.forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    @TearDown(Level.Invocation)
+    public void report() {
+        long oldGenerationPeak = oldGeneration.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        System.gc();
+        long retained = usedHeap() - baseline;
+        System.out.printf("%n%s, %d entries: old generation peak %d MB, retained %d MB%n", target, entries,
+                oldGenerationPeak >> 20, retained >> 20);
+        loaded = null;
+    }
+
+    @Benchmark
+    public int load() throws Exception {
+        int count;
+        switch (target) {
+            case "reader" -> {
+                int[] read = new int[1];
+                try (InputStream xmlStream = new BufferedInputStream(Files.newInputStream(file))) {
+                    StreamingXmlReader.forEach(xmlStream, "users", "user", UserXml.class, userXml -> read[0]++);
+                }
+                count = read[0];
+            }
+            case "document" -> {
+                UsersXml usersXml;
+                try (InputStream xmlStream = new BufferedInputStream(Files.newInputStream(file))) {
+                    usersXml = (UsersXml) StreamingXmlReader.context(UsersXml.class).createUnmarshaller()
+                            .unmarshal(xmlStream);
+                }
+                loaded = usersXml;
+                count = usersXml.getUsers().size();
+            }
+            case "users" -> {
+                var users = registeredUserLoader.loadUsersFromXML(file.toString());
+                loaded = users;
+                count = users.size();
+            }
+            case "clients" -> {
+                var clients = registeredClientLoader.loadClientsFromXml(file.toString());
+                loaded = clients;
+                count = clients.clients().size();
+            }
+            default -> throw new IllegalArgumentException(target);
+        }
+        if (count != entries) {
+            throw new IllegalStateException(count + " entries loaded, " + entries + " expected");
+        }
+        return count;
+    }
+
+    private Path writeUsers(Path usersFile) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(usersFile)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<users>\n");
+            for (int i = 0; i < entries; i++) {
+                writer.write("    <user password=\"{bcrypt}$2a$10$NdYo0qdENwLngzAXy/zh8untABdcHdv/xVORfdeaDeGl1E38IKV3S\""
+                        + " roles=\"USER,AUDITOR\" username=\"user-" + i + "\"/>\n");
+            }
+            writer.write("</users>\n");
+        }
+        return usersFile;
+    }
+
+    private Path writeClients(Path clientsFile) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(clientsFile)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<clients>\n");
+            for (int i = 0; i < entries; i++) {
+                writer.write("""
+                            <client>
+                                <id>client-%1$d-id</id>
+                                <clientId>client-%1$d</clientId>
+                                <clientSecret>{noop}secret</clientSecret>
+                                <clientName>Client %1$d</clientName>
+                                <authenticationMethods>client_secret_basic</authenticationMethods>
+                                <grantTypes>authorization_code,refresh_token</grantTypes>
+                                <redirectUris>http://127.0.0.1:8081/login/oauth2/code/client-%1$d</redirectUris>
+                                <scopes>openid,articles.read</scopes>
+                                <accessTokenDuration>120</accessTokenDuration>
+                                <refreshTokenDuration>180</refreshTokenDuration>
+                            </client>
+                        """.formatted(i));
+            }
+            writer.write("</clients>\n");
+        }
+        return clientsFile;
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,196 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.AuthenticatorOauth2Application;
+import com.smilesmile1973.authenticatoroauth2.model.CursorPageDTO;
+import com.smilesmile1973.authenticatoroauth2.model.SessionDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session queries and index maintenance of {@link CustomOAuth2AuthorizationService}, with
+ * {@code sessions} active sessions spread over 20 clients and 10 scopes, expiring within the hour.
+ *
+ * <p>{@code indexedQuery} answers one page of 50 sessions with
+ * {@link CustomOAuth2AuthorizationService#querySessions}, {@code scanQuery} answers it by scanning
+ * every session, as without the secondary indexes. {@code indexedSaveRemove} saves then removes
+ * one session through the service, which maintains the indexes; {@code mapSaveRemove} puts then
+ * removes it in a plain map, as a store without indexes.</p>
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="CustomOAuth2AuthorizationServiceBenchmark -prof gc"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CustomOAuth2AuthorizationServiceBenchmark {
+
+    private static final int CLIENTS = 20;
+    private static final int SCOPES = 10;
+    private static final int LIMIT = 50;
+
+    @Param({"10000", "100000"})
+    public int sessions;
+
+    private final List<RegisteredClient> clients = new ArrayList<>();
+    private final Map<String, OAuth2Authorization> store = new ConcurrentHashMap<>();
+    private ConfigurableApplicationContext context;
+    private CustomOAuth2AuthorizationService service;
+    private long sequence;
+
+    /**
+     * Filters of the query: {@code client-scope-expiry} asks for the sessions of a client with a
+     * scope expiring in the next 10 minutes, {@code expiry} for every session expiring in the next
+     * 10 minutes.
+     */
+    @State(Scope.Benchmark)
+    public static class Query {
+        @Param({"client-scope-expiry", "expiry"})
+        public String filters;
+
+        String registeredClientId;
+        String scope;
+        final Duration expiresWithin = Duration.ofMinutes(10);
+
+        @Setup
+        public void setUp() {
+            registeredClientId = "client-7-id";
+            scope = "scope-3";
+            if ("expiry".equals(filters)) {
+                registeredClientId = null;
+                scope = null;
+            }
+        }
+    }
+
+    @Setup
+    public void start() {
+        context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .run("--authorization.store.mode=memory");
+        service = context.getBean(CustomOAuth2AuthorizationService.class);
+        for (int i = 0; i < CLIENTS; i++) {
+            clients.add(RegisteredClient.withId("client-" + i + "-id")
+                    .clientId("client-" + i)
+                    .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                    .redirectUri("http://localhost/callback")
+                    .build());
+        }
+        for (int i = 0; i < sessions; i++) {
+            OAuth2Authorization authorization = authorization();
+            service.save(authorization);
+            store.put(authorization.getId(), authorization);
+        }
+        for (String filters : List.of("client-scope-expiry", "expiry")) {
+            Query query = new Query();
+            query.filters = filters;
+            query.setUp();
+            List<String> indexed = indexedQuery(query).getItems().stream().map(SessionDTO::getAuthorizationId).toList();
+            List<String> scanned = scanQuery(query).getItems().stream().map(SessionDTO::getAuthorizationId).toList();
+            if (indexed.isEmpty() || !indexed.equals(scanned)) {
+                throw new IllegalStateException(filters + ": indexed " + indexed + ", scanned " + scanned);
+            }
+        }
+    }
+
+    @TearDown
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public CursorPageDTO<SessionDTO> indexedQuery(Query query) {
+        return service.querySessions(query.registeredClientId, query.scope, query.expiresWithin, null, LIMIT);
+    }
+
+    @Benchmark
+    public CursorPageDTO<SessionDTO> scanQuery(Query query) {
+        Instant now = Instant.now();
+        Instant expiresBefore = now.plus(query.expiresWithin);
+        List<OAuth2Authorization> matches = new ArrayList<>();
+        for (OAuth2Authorization authorization : store.values()) {
+            Instant expiresAt = AuthorizationExpiryIndex.expiresAt(authorization);
+            if ((query.registeredClientId == null || query.registeredClientId.equals(authorization.getRegisteredClientId()))
+                    && (query.scope == null || authorization.getAuthorizedScopes().contains(query.scope))
+                    && expiresAt != null && expiresAt.isAfter(now) && !expiresAt.isAfter(expiresBefore)) {
+                matches.add(authorization);
+            }
+        }
+        // Same order as the query engine: by id when driven by a client or scope, else by expiry.
+        Comparator<OAuth2Authorization> byId = Comparator.comparing(OAuth2Authorization::getId);
+        matches.sort(query.registeredClientId != null || query.scope != null ? byId
+                : Comparator.comparing(AuthorizationExpiryIndex::expiresAt).thenComparing(byId));
+        CursorPageDTO<SessionDTO> page = new CursorPageDTO<>();
+        for (int i = 0; i < Math.min(LIMIT, matches.size()); i++) {
+            page.getItems().add(service.toSessionDTO(matches.get(i)));
+        }
+        if (matches.size() > LIMIT) {
+            page.setNextCursor(matches.get(LIMIT - 1).getId());
+        }
+        return page;
+    }
+
+    @Benchmark
+    public OAuth2Authorization indexedSaveRemove() {
+        OAuth2Authorization authorization = authorization();
+        service.save(authorization);
+        service.remove(authorization);
+        return authorization;
+    }
+
+    @Benchmark
+    public OAuth2Authorization mapSaveRemove() {
+        OAuth2Authorization authorization = authorization();
+        store.put(authorization.getId(), authorization);
+        store.remove(authorization.getId());
+        return authorization;
+    }
+
+    private OAuth2Authorization authorization() {
+        long n = sequence++;
+        RegisteredClient client = clients.get((int) (n % CLIENTS));
+        Instant issuedAt = Instant.now();
+        Instant expiresAt = issuedAt.plusSeconds(60 + (n * 7919) % 3540);
+        int scope = (int) (n % SCOPES);
+        return OAuth2Authorization.withRegisteredClient(client)
+                .id(String.format("%012d", n))
+                .principalName("user-" + n % 1000)
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .authorizedScopes(Set.of("scope-" + scope, "scope-" + (scope + 1 + n / CLIENTS % (SCOPES - 1)) % SCOPES))
+                .accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "access-" + n, issuedAt,
+                        expiresAt, Set.of("scope-" + scope)))
+                .refreshToken(new OAuth2RefreshToken("refresh-" + n, issuedAt, expiresAt))
+                .build();
+    }
+}
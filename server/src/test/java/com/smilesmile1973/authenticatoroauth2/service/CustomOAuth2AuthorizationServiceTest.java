@@ -0,0 +1,341 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.AuthenticatorOauth2Application;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.server.authorization.OAuth2Authorization;
+import org.springframework.security.oauth2.server.authorization.OAuth2AuthorizationCode;
+import org.springframework.security.oauth2.server.authorization.OAuth2TokenType;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClient;
+import org.springframework.security.oauth2.server.authorization.client.RegisteredClientRepository;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress test of the principal index of {@link CustomOAuth2AuthorizationService}: parallel
+ * saves, refreshes, lookups and removals for the same principals must neither lose an
+ * authorization nor leak an index entry. A removed authorization must not come back after a
+ * restart of the durable store.
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CustomOAuth2AuthorizationServiceTest {
+    private static final int THREADS = 8;
+    private static final int AUTHORIZATIONS_PER_THREAD = 512;
+    private static final int PRINCIPALS = 4;
+
+    @Autowired
+    private CustomOAuth2AuthorizationService authorizationService;
+    @Autowired
+    private SessionCounters sessionCounters;
+    @Autowired
+    private RegisteredClientRepository registeredClientRepository;
+
+    @Test
+    void concurrentSaveFindRemoveKeepsIndexesExact() throws Exception {
+        RegisteredClient client = registeredClientRepository.findByClientId("articles-client");
+        assertNotNull(client);
+        String run = Long.toString(System.nanoTime());
+        long totalBefore = sessionCounters.total();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<OAuth2Authorization>>> results = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int threadNumber = thread;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return saveRefreshAndRemove(client, run, threadNumber);
+                }));
+            }
+            start.countDown();
+            List<OAuth2Authorization> kept = new ArrayList<>();
+            for (Future<List<OAuth2Authorization>> result : results) {
+                kept.addAll(result.get(2, TimeUnit.MINUTES));
+            }
+
+            int expectedPerPrincipal = THREADS * AUTHORIZATIONS_PER_THREAD / 2 / PRINCIPALS;
+            for (int principal = 0; principal < PRINCIPALS; principal++) {
+                String principalName = principalName(run, principal);
+                assertEquals(expectedPerPrincipal, authorizationService.findByPrincipalName(principalName).size());
+                assertEquals(expectedPerPrincipal, sessionCounters.principalCount(principalName));
+            }
+            assertEquals(totalBefore + kept.size(), sessionCounters.total());
+            for (OAuth2Authorization authorization : kept) {
+                OAuth2Authorization found = authorizationService.findByToken(
+                        authorization.getAccessToken().getToken().getTokenValue(), OAuth2TokenType.ACCESS_TOKEN);
+                assertNotNull(found, authorization.getId());
+                assertEquals(authorization.getId(), found.getId());
+            }
+
+            CountDownLatch cleanup = new CountDownLatch(1);
+            List<Future<?>> removals = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                List<OAuth2Authorization> slice = kept.subList(thread * kept.size() / THREADS,
+                        (thread + 1) * kept.size() / THREADS);
+                removals.add(executor.submit(() -> {
+                    cleanup.await();
+                    slice.forEach(authorizationService::remove);
+                    return null;
+                }));
+            }
+            cleanup.countDown();
+            for (Future<?> removal : removals) {
+                removal.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int principal = 0; principal < PRINCIPALS; principal++) {
+            String principalName = principalName(run, principal);
+            assertTrue(authorizationService.findByPrincipalName(principalName).isEmpty());
+            assertEquals(0, sessionCounters.principalCount(principalName));
+        }
+        assertEquals(totalBefore, sessionCounters.total());
+    }
+
+    @Test
+    void removingAStaleCopyRemovesTheStoredState() {
+        RegisteredClient client = registeredClientRepository.findByClientId("articles-client");
+        String run = Long.toString(System.nanoTime());
+        String principalName = principalName(run, 0);
+        OAuth2Authorization authorization = authorization(client, run, principalName, 1);
+        authorizationService.save(authorization);
+        OAuth2Authorization refreshed = authorization(client, run, principalName, 2);
+        authorizationService.save(refreshed);
+
+        authorizationService.remove(authorization);
+
+        assertNull(authorizationService.findById(run));
+        assertNull(authorizationService.findByToken(
+                refreshed.getAccessToken().getToken().getTokenValue(), OAuth2TokenType.ACCESS_TOKEN));
+        assertTrue(authorizationService.findByPrincipalName(principalName).isEmpty());
+        assertEquals(0, sessionCounters.principalCount(principalName));
+    }
+
+    @Test
+    void concurrentSavesOfOneAuthorizationIndexOnlyTheLastState() throws Exception {
+        RegisteredClient client = registeredClientRepository.findByClientId("articles-client");
+        String run = Long.toString(System.nanoTime());
+        String principalName = principalName(run, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> saves = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int threadNumber = thread;
+                saves.add(executor.submit(() -> {
+                    start.await();
+                    for (int generation = 0; generation < AUTHORIZATIONS_PER_THREAD; generation++) {
+                        authorizationService.save(authorization(client, run, principalName,
+                                generation * THREADS + threadNumber));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> save : saves) {
+                save.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        OAuth2Authorization stored = authorizationService.findById(run);
+        int indexedTokens = 0;
+        for (int generation = 0; generation < AUTHORIZATIONS_PER_THREAD * THREADS; generation++) {
+            if (authorizationService.findByToken("access-" + run + "-" + generation, null) != null) {
+                indexedTokens++;
+            }
+        }
+        assertEquals(1, indexedTokens);
+        assertNotNull(authorizationService.findByToken(
+                stored.getAccessToken().getToken().getTokenValue(), OAuth2TokenType.ACCESS_TOKEN));
+        assertEquals(1, sessionCounters.principalCount(principalName));
+
+        authorizationService.remove(stored);
+        assertEquals(0, sessionCounters.principalCount(principalName));
+    }
+
+    @Test
+    void evictsPendingAuthorizationsDroppedByTheDelegate() {
+        RegisteredClient client = registeredClientRepository.findByClientId("articles-client");
+        String run = Long.toString(System.nanoTime());
+        String principalName = principalName(run, 0);
+        long totalBefore = sessionCounters.total();
+        // More pending authorizations than the 100 initialized authorizations kept by the delegate.
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            String id = run + "-" + i;
+            authorizationService.save(OAuth2Authorization.withRegisteredClient(client)
+                    .id(id)
+                    .principalName(principalName)
+                    .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                    .attribute(OAuth2ParameterNames.STATE, "state-" + i)
+                    .build());
+            ids.add(id);
+        }
+        // Pending authorizations are not sessions.
+        assertEquals(totalBefore, sessionCounters.total());
+        assertEquals(0, sessionCounters.principalCount(principalName));
+
+        AuthorizationExpiryIndex expiryIndex = authorizationService.getExpiryIndex();
+        for (String id : ids) {
+            AuthorizationExpiryIndex.Entry entry = new AuthorizationExpiryIndex.Entry(expiryIndex.evictionInstant(id), id);
+            assertTrue(authorizationService.evict(entry), id);
+        }
+
+        assertTrue(authorizationService.findByPrincipalName(principalName).isEmpty());
+        assertTrue(authorizationService.findByRegisteredClientId(client.getId()).stream()
+                .noneMatch(authorization -> authorization.getId().startsWith(run)));
+        assertEquals(totalBefore, sessionCounters.total());
+    }
+
+    @Test
+    void removedCodeFlowIsNotRecoveredAfterRestart() {
+        String[] properties = {"authorization.store.mode=file",
+                "authorization.store.path=target/test-data/authorizations-" + System.nanoTime()};
+        String id = Long.toString(System.nanoTime());
+        try (ConfigurableApplicationContext context = start(properties)) {
+            CustomOAuth2AuthorizationService service = context.getBean(CustomOAuth2AuthorizationService.class);
+            RegisteredClient client = context.getBean(RegisteredClientRepository.class).findByClientId("articles-client");
+            Instant issuedAt = Instant.now();
+            // Authorization request, then authorization code, then token exchange.
+            OAuth2Authorization pending = OAuth2Authorization.withRegisteredClient(client)
+                    .id(id)
+                    .principalName("user1")
+                    .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                    .attribute(OAuth2ParameterNames.STATE, "state")
+                    .build();
+            service.save(pending);
+            OAuth2Authorization authorized = OAuth2Authorization.from(pending)
+                    .authorizedScopes(Set.of("articles.read"))
+                    .token(new OAuth2AuthorizationCode("code-" + id, issuedAt, issuedAt.plus(Duration.ofMinutes(5))))
+                    .build();
+            service.save(authorized);
+            OAuth2Authorization completed = authorization(client, id, "user1", 1);
+            service.save(completed);
+
+            service.remove(completed);
+            assertNull(service.findById(id));
+        }
+
+        try (ConfigurableApplicationContext context = start(properties)) {
+            CustomOAuth2AuthorizationService service = context.getBean(CustomOAuth2AuthorizationService.class);
+            assertNull(service.findById(id));
+            assertNull(service.findByToken("code-" + id, null));
+        }
+    }
+
+    @Test
+    void removingAnUnstoredAuthorizationIsNotJournaled() throws IOException {
+        Path directory = Path.of("target/test-data/authorizations-" + System.nanoTime());
+        try (ConfigurableApplicationContext context = start("authorization.store.mode=file",
+                "authorization.store.path=" + directory, "authorization.store.await-commit=true")) {
+            CustomOAuth2AuthorizationService service = context.getBean(CustomOAuth2AuthorizationService.class);
+            RegisteredClient client = context.getBean(RegisteredClientRepository.class).findByClientId("articles-client");
+            long journalSize = journalSize(directory);
+
+            service.remove(authorization(client, "unstored-" + System.nanoTime(), "user1", 1));
+            assertEquals(journalSize, journalSize(directory));
+        }
+    }
+
+    /**
+     * Starts the application with properties overriding application.properties, passed as
+     * command line arguments: the default properties of the builder would not.
+     */
+    private static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .run(Arrays.stream(properties).map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    /**
+     * Saves the authorizations of one thread, refreshes each of them once, and removes every
+     * other one.
+     *
+     * @return the authorizations left in the store, in their refreshed state
+     */
+    private List<OAuth2Authorization> saveRefreshAndRemove(RegisteredClient client, String run, int thread) {
+        List<OAuth2Authorization> kept = new ArrayList<>();
+        for (int i = 0; i < AUTHORIZATIONS_PER_THREAD; i++) {
+            String id = run + "-" + thread + "-" + i;
+            OAuth2Authorization authorization = authorization(client, id, principalName(run, i / 2 % PRINCIPALS), 1);
+            authorizationService.save(authorization);
+            assertNotNull(authorizationService.findById(id));
+
+            OAuth2Authorization refreshed = authorization(client, id, authorization.getPrincipalName(), 2);
+            authorizationService.save(refreshed);
+            assertNull(authorizationService.findByToken(
+                    authorization.getAccessToken().getToken().getTokenValue(), OAuth2TokenType.ACCESS_TOKEN));
+
+            if (i % 2 == 0) {
+                authorizationService.remove(refreshed);
+                assertNull(authorizationService.findById(id));
+                assertNull(authorizationService.findByToken(
+                        refreshed.getRefreshToken().getToken().getTokenValue(), OAuth2TokenType.REFRESH_TOKEN));
+            } else {
+                kept.add(refreshed);
+            }
+        }
+        return kept;
+    }
+
+    private static OAuth2Authorization authorization(RegisteredClient client, String id, String principalName,
+                                                     int generation) {
+        Instant issuedAt = Instant.now();
+        return OAuth2Authorization.withRegisteredClient(client)
+                .id(id)
+                .principalName(principalName)
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .authorizedScopes(Set.of("articles.read"))
+                .accessToken(new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                        "access-" + id + "-" + generation, issuedAt, issuedAt.plus(Duration.ofHours(1)),
+                        Set.of("articles.read")))
+                .refreshToken(new OAuth2RefreshToken("refresh-" + id + "-" + generation, issuedAt,
+                        issuedAt.plus(Duration.ofDays(1))))
+                .build();
+    }
+
+    private static long journalSize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static String principalName(String run, int principal) {
+        return "stress-" + run + "-" + principal;
+    }
+}
@@ -0,0 +1,115 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.AuthenticatorOauth2Application;
+import com.smilesmile1973.authenticatoroauth2.model.UserXml;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.MessageFormatter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocation of {@link CustomUserDetailsService#loadUserByUsername} with {@code users}
+ * users, each with two roles: the copy of the prebuilt user details ({@code prebuilt}) against
+ * the user details built from the XML entry on every call, roles split and INFO log line
+ * formatted, as before they were prebuilt ({@code per-call}). The usernames are looked up in
+ * turn, so that the lookups do not all hit the same cache lines.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="CustomUserDetailsServiceBenchmark -prof gc"}.</p>
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CustomUserDetailsServiceBenchmark {
+
+    @Param({"prebuilt", "per-call"})
+    public String mode;
+
+    @Param({"1000", "100000"})
+    public int users;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private CustomUserDetailsService service;
+    private Map<String, UserXml> userXmls;
+    private String[] usernames;
+    private int next;
+    /**
+     * Last formatted log line, kept so that the formatting is not optimized away.
+     */
+    private String logMessage;
+
+    @Setup
+    public void start() throws Exception {
+        directory = Files.createTempDirectory("users-benchmark");
+        Path usersFile = directory.resolve("users.xml");
+        usernames = new String[users];
+        try (Writer writer = Files.newBufferedWriter(usersFile)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<users>\n");
+            for (int i = 0; i < users; i++) {
+                usernames[i] = "user-" + i;
+                writer.write("    <user password=\"{bcrypt}$2a$10$NdYo0qdENwLngzAXy/zh8untABdcHdv/xVORfdeaDeGl1E38IKV3S\""
+                        + " roles=\"USER,AUDITOR\" username=\"" + usernames[i] + "\"/>\n");
+            }
+            writer.write("</users>\n");
+        }
+        // Command line arguments, which override application.properties.
+        context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .run("--users.config.path=" + usersFile);
+        service = context.getBean(CustomUserDetailsService.class);
+        userXmls = context.getBean(RegisteredUserLoader.class).loadUsersFromXML(usersFile.toString());
+        UserDetails loaded = loadUserByUsername();
+        if (loaded.getAuthorities().size() != 2 || !loaded.getPassword().startsWith("{bcrypt}")) {
+            throw new IllegalStateException("Unexpected user " + loaded);
+        }
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        String username = usernames[next];
+        next = next + 1 == usernames.length ? 0 : next + 1;
+        if ("prebuilt".equals(mode)) {
+            return service.loadUserByUsername(username);
+        }
+        logMessage = MessageFormatter.format("Loading user: {}", username).getMessage();
+        UserXml userXml = userXmls.get(username);
+        return User.builder()
+                .username(userXml.getUsername())
+                .password(userXml.getPassword())
+                .roles(userXml.getRoles().split(","))
+                .build();
+    }
+}
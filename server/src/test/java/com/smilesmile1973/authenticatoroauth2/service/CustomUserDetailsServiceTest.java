@@ -0,0 +1,65 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import com.smilesmile1973.authenticatoroauth2.AuthenticatorOauth2Application;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Re-hashed passwords of {@link CustomUserDetailsService}: the deferred write of the new hashes
+ * must not overwrite the edits made to the users file in the meantime.
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+class CustomUserDetailsServiceTest {
+
+    private static final String USERS = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <users>
+                <user password="{bcrypt}$2a$10$NdYo0qdENwLngzAXy/zh8untABdcHdv/xVORfdeaDeGl1E38IKV3S" roles="ADMIN" username="admin"/>
+                <user password="{noop}password" roles="USER" username="gmarechal"/>
+                <user password="{noop}password" roles="USER" username="user1"/>
+            </users>
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void passwordUpgradeKeepsTheEditsMadeToTheFileMeanwhile() throws Exception {
+        Path usersFile = directory.resolve("users.xml");
+        Files.writeString(usersFile, USERS);
+        // Command line arguments, so that the delay overrides the one of application.properties.
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(AuthenticatorOauth2Application.class)
+                .profiles("test")
+                .run("--users.config.path=" + usersFile, "--users.password.store-delay=PT1H")) {
+            CustomUserDetailsService service = context.getBean(CustomUserDetailsService.class);
+            service.updatePassword(service.loadUserByUsername("user1"), "{bcrypt}user1-hash");
+            service.updatePassword(service.loadUserByUsername("gmarechal"), "{bcrypt}gmarechal-hash");
+            // An administrator changes the password of gmarechal before the hashes are written.
+            Files.writeString(usersFile, USERS.replace(
+                    "{noop}password\" roles=\"USER\" username=\"gmarechal\"",
+                    "{noop}changed\" roles=\"USER\" username=\"gmarechal\""));
+
+            service.reload();
+            assertEquals("{bcrypt}user1-hash", service.loadUserByUsername("user1").getPassword());
+            assertEquals("{noop}changed", service.loadUserByUsername("gmarechal").getPassword());
+        }
+
+        // Closing the context writes the pending hashes.
+        String stored = Files.readString(usersFile);
+        assertTrue(stored.contains("{bcrypt}user1-hash"), stored);
+        assertTrue(stored.contains("{noop}changed"), stored);
+        assertFalse(stored.contains("gmarechal-hash"), stored);
+        assertTrue(stored.contains("username=\"admin\""), stored);
+    }
+}
@@ -0,0 +1,63 @@
+package com.smilesmile1973.authenticatoroauth2.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Counts and gauges of {@link SessionCounters}, whose tagged client gauges are bounded.
+ *
+ * @author smilesmile1973
+ * @since 1.0
+ */
+class SessionCountersTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SessionCounters sessionCounters = new SessionCounters(meterRegistry, 2);
+
+    @Test
+    void removesCountersAndGaugesDroppingBackToZero() {
+        sessionCounters.increment("alice", "client-1");
+        sessionCounters.increment("bob", "client-1");
+        assertEquals(2, sessionCounters.clientCount("client-1"));
+        assertEquals(2.0, clientGauge("client-1").value());
+
+        sessionCounters.decrement("alice", "client-1");
+        sessionCounters.decrement("bob", "client-1");
+
+        assertEquals(0, sessionCounters.total());
+        assertEquals(0, sessionCounters.principalCount("alice"));
+        assertEquals(Map.of(), sessionCounters.clientCounts());
+        assertNull(clientGauge("client-1"));
+    }
+
+    @Test
+    void sumsTheClientsBeyondTheTaggedLimit() {
+        sessionCounters.increment("alice", "client-1");
+        sessionCounters.increment("alice", "client-2");
+        sessionCounters.increment("alice", "client-3");
+        sessionCounters.increment("bob", "client-3");
+
+        assertEquals(1.0, clientGauge("client-1").value());
+        assertEquals(1.0, clientGauge("client-2").value());
+        assertNull(clientGauge("client-3"));
+        assertEquals(2.0, clientGauge(SessionCounters.OTHER_CLIENTS).value());
+        assertEquals(Map.of("client-1", 1L, "client-2", 1L, "client-3", 2L), sessionCounters.clientCounts());
+
+        // A freed slot is taken by the next new client.
+        sessionCounters.decrement("alice", "client-1");
+        sessionCounters.increment("alice", "client-4");
+        assertNull(clientGauge("client-1"));
+        assertEquals(1.0, clientGauge("client-4").value());
+        assertEquals(4, sessionCounters.total());
+    }
+
+    private Gauge clientGauge(String registeredClientId) {
+        return meterRegistry.find("oauth2.sessions.active.client").tag("client", registeredClientId).gauge();
+    }
+}